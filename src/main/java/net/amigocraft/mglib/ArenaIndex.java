@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.api.Minigame;
+import net.amigocraft.mglib.api.Round;
+
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The boundaries of all live rounds within a single world, indexed by grid
+ * cell.
+ *
+ * <p>Each round with boundaries is listed in every cell its boundaries
+ * overlap, so that the rounds which might contain a given block are found
+ * with a single lookup instead of checking every round of every minigame.
+ * The table is rebuilt on the first lookup after it has been {@link
+ * #invalidate() invalidated}, which happens whenever a round is created or
+ * destroyed, its boundaries change or it moves to another world.</p>
+ */
+class ArenaIndex {
+
+	// 64 blocks per cell keeps even large arenas down to a few thousand cells
+	private static final int CELL_SHIFT = 6;
+	private static final Round[] NONE = new Round[0];
+
+	private static HashMap<String, ArenaIndex> table = null;
+
+	private final HashMap<Long, Round[]> cells = new HashMap<Long, Round[]>();
+
+	/**
+	 * Retrieves the index of the given world.
+	 *
+	 * @param world the name of the world to retrieve the index of
+	 * @return the index of the given world, or <code>null</code> if no round
+	 * with boundaries takes place in it
+	 */
+	static ArenaIndex get(String world) {
+		if (table == null) {
+			table = build();
+		}
+		return table.get(world);
+	}
+
+	/**
+	 * Marks all indices as stale, so that they are rebuilt on the next
+	 * lookup.
+	 */
+	static void invalidate() {
+		table = null;
+	}
+
+	/**
+	 * Retrieves the rounds whose boundaries may contain the given block. Each
+	 * candidate must still be checked with {@link Round#isWithinBounds(Block)}.
+	 *
+	 * @param block the block to look up
+	 * @return the rounds whose boundaries may contain the block
+	 */
+	static Round[] getCandidates(Block block) {
+		ArenaIndex index = get(block.getWorld().getName());
+		return index != null ? index.getCandidates(block.getX(), block.getZ()) : NONE;
+	}
+
+	/**
+	 * Retrieves the rounds whose boundaries may contain the given location.
+	 * Each candidate must still be checked with {@link
+	 * Round#isWithinBounds(Location)}.
+	 *
+	 * @param location the location to look up
+	 * @return the rounds whose boundaries may contain the location
+	 */
+	static Round[] getCandidates(Location location) {
+		ArenaIndex index = get(location.getWorld().getName());
+		return index != null ? index.getCandidates(location.getBlockX(), location.getBlockZ()) : NONE;
+	}
+
+	private Round[] getCandidates(int x, int z) {
+		Round[] rounds = cells.get(cellKey(x >> CELL_SHIFT, z >> CELL_SHIFT));
+		return rounds != null ? rounds : NONE;
+	}
+
+	private static long cellKey(int cx, int cz) {
+		return (long)cx << 32 | cz & 0xFFFFFFFFL;
+	}
+
+	private static HashMap<String, ArenaIndex> build() {
+		HashMap<String, HashMap<Long, List<Round>>> lists = new HashMap<String, HashMap<Long, List<Round>>>();
+		for (Minigame mg : Minigame.getMinigameInstances()) {
+			for (Round r : mg.getRoundList()) {
+				Location min = r.getMinBound();
+				Location max = r.getMaxBound();
+				if (min == null || max == null) {
+					continue;
+				}
+				HashMap<Long, List<Round>> worldCells = lists.get(r.getWorld());
+				if (worldCells == null) {
+					worldCells = new HashMap<Long, List<Round>>();
+					lists.put(r.getWorld(), worldCells);
+				}
+				int minX = Math.min(min.getBlockX(), max.getBlockX()) >> CELL_SHIFT;
+				int maxX = Math.max(min.getBlockX(), max.getBlockX()) >> CELL_SHIFT;
+				int minZ = Math.min(min.getBlockZ(), max.getBlockZ()) >> CELL_SHIFT;
+				int maxZ = Math.max(min.getBlockZ(), max.getBlockZ()) >> CELL_SHIFT;
+				for (int cx = minX; cx <= maxX; cx++) {
+					for (int cz = minZ; cz <= maxZ; cz++) {
+						List<Round> cell = worldCells.get(cellKey(cx, cz));
+						if (cell == null) {
+							cell = new ArrayList<Round>(1);
+							worldCells.put(cellKey(cx, cz), cell);
+						}
+						cell.add(r);
+					}
+				}
+			}
+		}
+		HashMap<String, ArenaIndex> table = new HashMap<String, ArenaIndex>();
+		for (Map.Entry<String, HashMap<Long, List<Round>>> world : lists.entrySet()) {
+			ArenaIndex index = new ArenaIndex();
+			for (Map.Entry<Long, List<Round>> cell : world.getValue().entrySet()) {
+				index.cells.put(cell.getKey(), cell.getValue().toArray(new Round[cell.getValue().size()]));
+			}
+			table.put(world.getKey(), index);
+		}
+		return table;
+	}
+
+}
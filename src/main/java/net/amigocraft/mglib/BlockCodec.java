@@ -0,0 +1,296 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.rollback.JournalRecord;
+
+import org.bukkit.DyeColor;
+import org.bukkit.Material;
+import org.bukkit.SkullType;
+import org.bukkit.block.Banner;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Sign;
+import org.bukkit.block.Skull;
+import org.bukkit.block.banner.Pattern;
+import org.bukkit.block.banner.PatternType;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Captures the state of a block's tile entity into the payload of a block
+ * record, and restores a block from its logged type, data and payload.
+ *
+ * <p>Every call to {@link Block#getState()} copies the block's tile entity,
+ * so capturing reads a single state and restoring writes a single state.
+ * Blocks without a tile entity are restored without copying any state, and
+ * containers are only emptied (so that their contents don't drop) if they
+ * are replaced by another block.</p>
+ *
+ * <p>Payloads start with a tag identifying the kind of tile entity. The
+ * contents of containers are encoded like those of inventory records, i.e.
+ * as references into the arena's {@link ItemPool} where one is given.</p>
+ */
+class BlockCodec {
+
+	private static final byte SIGN = 0x10;
+	private static final byte CONTAINER = 0x11;
+	private static final byte SKULL = 0x12;
+	private static final byte BANNER = 0x13;
+
+	// type ids of blocks whose tile entity holds an inventory, which can be checked without copying the tile entity
+	private static final boolean[] CONTAINERS = new boolean[4096];
+
+	static {
+		for (Material m : new Material[]{Material.CHEST, Material.TRAPPED_CHEST, Material.FURNACE,
+				Material.BURNING_FURNACE, Material.DISPENSER, Material.DROPPER, Material.HOPPER,
+				Material.BREWING_STAND, Material.BEACON}) {
+			@SuppressWarnings("deprecation")
+			int id = m.getId();
+			CONTAINERS[id] = true;
+		}
+	}
+
+	private BlockCodec() {
+	}
+
+	/**
+	 * Captures the contents of the tile entity of the given state.
+	 *
+	 * @param state       the state to capture
+	 * @param items       the pool of item stacks to encode the contents of a
+	 *                    container against, or <code>null</code> to encode
+	 *                    the stacks themselves
+	 * @param arena       the arena the pool belongs to
+	 * @param definitions the list to add records defining newly pooled stacks
+	 *                    to; these must be journaled before the block
+	 * @return the captured contents, or <code>null</code> if the state has no
+	 * tile entity worth restoring
+	 */
+	static byte[] capture(BlockState state, ItemPool items, String arena, List<JournalRecord> definitions) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			if (state instanceof Sign) {
+				out.writeByte(SIGN);
+				writeLines(out, ((Sign)state).getLines());
+			}
+			else if (state instanceof InventoryHolder) {
+				ItemStack[] contents = ((InventoryHolder)state).getInventory().getContents();
+				out.writeByte(CONTAINER);
+				out.write(items != null ? items.encode(contents, arena, definitions) : RollbackManager.encodeInventory(contents));
+			}
+			else if (state instanceof Skull) {
+				Skull skull = (Skull)state;
+				out.writeByte(SKULL);
+				out.writeUTF(skull.getSkullType().name());
+				out.writeUTF(skull.getRotation().name());
+				out.writeUTF(skull.hasOwner() ? skull.getOwner() : "");
+			}
+			else if (state instanceof Banner) {
+				Banner banner = (Banner)state;
+				out.writeByte(BANNER);
+				out.writeUTF(banner.getBaseColor().name());
+				List<Pattern> patterns = banner.getPatterns();
+				out.writeByte(patterns.size());
+				for (Pattern pattern : patterns) {
+					out.writeUTF(pattern.getPattern().name());
+					out.writeUTF(pattern.getColor().name());
+				}
+			}
+			else {
+				return null;
+			}
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException ex) { // can't happen with an in-memory stream
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Encodes the given sign lines as a payload.
+	 *
+	 * @param lines the lines to encode
+	 * @return the encoded lines
+	 */
+	static byte[] encodeSign(String[] lines) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(SIGN);
+			writeLines(out, lines);
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException ex) { // can't happen with an in-memory stream
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Replaces the references into the given pool held by the given payload
+	 * with the stacks themselves, so that it no longer depends on the pool.
+	 *
+	 * @param payload the payload to detach from the pool, or
+	 *                <code>null</code>
+	 * @param items   the pool of item stacks the payload may reference
+	 * @return the detached payload, which is the given one unless it holds
+	 * the contents of a container
+	 * @throws InvalidConfigurationException if the contents or any stack
+	 *                                       they reference cannot be read
+	 */
+	static byte[] detach(byte[] payload, ItemPool items) throws InvalidConfigurationException {
+		if (payload == null || payload.length == 0 || payload[0] != CONTAINER) {
+			return payload;
+		}
+		byte[] contents = RollbackManager.encodeInventory(items.decode(Arrays.copyOfRange(payload, 1, payload.length)));
+		byte[] detached = new byte[contents.length + 1];
+		detached[0] = CONTAINER;
+		System.arraycopy(contents, 0, detached, 1, contents.length);
+		return detached;
+	}
+
+	/**
+	 * Restores a single block to its logged state.
+	 *
+	 * @param b       the block to restore
+	 * @param type    the logged type id of the block
+	 * @param data    the logged data value of the block
+	 * @param payload the logged contents of the block's tile entity, or
+	 *                <code>null</code>
+	 * @param items   the pool of item stacks the contents of a container may
+	 *                reference, or <code>null</code>
+	 * @throws InvalidConfigurationException if the logged contents of a
+	 *                                       container cannot be read
+	 */
+	@SuppressWarnings("deprecation")
+	static void restore(Block b, int type, byte data, byte[] payload, ItemPool items) throws InvalidConfigurationException {
+		boolean tile = payload != null && payload.length > 0;
+		int current = b.getTypeId();
+		if (current >= 0 && current < CONTAINERS.length && CONTAINERS[current]) {
+			BlockState state = b.getState();
+			if (current == type && tile && payload[0] == CONTAINER) {
+				// the container stays, so its contents can simply be replaced
+				b.setData(data, false);
+				setContents(state, payload, items);
+				return;
+			}
+			if (state instanceof InventoryHolder) {
+				((InventoryHolder)state).getInventory().clear();
+			}
+		}
+		// set type and data at once without physics, since neighboring blocks may not have been restored yet
+		b.setTypeIdAndData(type, data, false);
+		if (!tile) {
+			return;
+		}
+		BlockState state = b.getState();
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+			byte tag = in.readByte();
+			if (tag == SIGN) {
+				if (state instanceof Sign) {
+					setLines((Sign)state, readLines(in));
+				}
+			}
+			else if (tag == CONTAINER) {
+				setContents(state, payload, items);
+			}
+			else if (tag == SKULL) {
+				if (state instanceof Skull) {
+					Skull skull = (Skull)state;
+					skull.setSkullType(SkullType.valueOf(in.readUTF()));
+					skull.setRotation(BlockFace.valueOf(in.readUTF()));
+					String owner = in.readUTF();
+					if (!owner.isEmpty() && !owner.equals(skull.getOwner())) { // setting the owner may look up its profile
+						skull.setOwner(owner);
+					}
+					skull.update(false, false);
+				}
+			}
+			else if (tag == BANNER) {
+				if (state instanceof Banner) {
+					Banner banner = (Banner)state;
+					banner.setBaseColor(DyeColor.valueOf(in.readUTF()));
+					List<Pattern> patterns = new ArrayList<Pattern>();
+					for (int i = in.readByte(); i > 0; i--) {
+						PatternType pattern = PatternType.valueOf(in.readUTF());
+						patterns.add(new Pattern(DyeColor.valueOf(in.readUTF()), pattern));
+					}
+					banner.setPatterns(patterns);
+					banner.update(false, false);
+				}
+			}
+		}
+		catch (IOException ex) {
+			throw new InvalidConfigurationException("Malformed block payload", ex);
+		}
+		catch (IllegalArgumentException ex) { // unknown enum constant
+			throw new InvalidConfigurationException("Malformed block payload", ex);
+		}
+	}
+
+	private static void setContents(BlockState state, byte[] payload, ItemPool items) throws InvalidConfigurationException {
+		if (state instanceof InventoryHolder) {
+			((InventoryHolder)state).getInventory().setContents(
+					ItemPool.decode(Arrays.copyOfRange(payload, 1, payload.length), items));
+		}
+	}
+
+	private static void setLines(Sign sign, String[] lines) {
+		for (int i = 0; i < lines.length && i < 4; i++) {
+			sign.setLine(i, lines[i]);
+		}
+		sign.update(false, false);
+	}
+
+	private static void writeLines(DataOutputStream out, String[] lines) throws IOException {
+		out.writeByte(lines.length);
+		for (String line : lines) {
+			out.writeUTF(line != null ? line : "");
+		}
+	}
+
+	private static String[] readLines(DataInputStream in) throws IOException {
+		String[] lines = new String[in.readByte()];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = in.readUTF();
+		}
+		return lines;
+	}
+
+}
@@ -0,0 +1,387 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.api.ConfigManager;
+import net.amigocraft.mglib.api.LogLevel;
+import net.amigocraft.mglib.api.MGPlayer;
+import net.amigocraft.mglib.api.Minigame;
+import net.amigocraft.mglib.api.Round;
+import net.amigocraft.mglib.api.Stage;
+
+import org.bukkit.Bukkit;
+import org.bukkit.block.Block;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockIgniteEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.EntityTargetEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handlers for frequently fired events which only need to be handled while
+ * a minigame restricts them.
+ *
+ * <p>Unlike {@link MGListener}, this listener is never registered as a
+ * whole. Each handler is registered on its own once the configs, lobby signs
+ * or live rounds of the registered minigames create a {@link Demand demand}
+ * for it, and unregistered again once that demand is gone, so that the
+ * server does not dispatch e.g. block physics events to MGLib when no
+ * minigame restricts them. The demand is reevaluated by {@link #update()}
+ * whenever a minigame's config, lobby signs or rounds change.</p>
+ */
+class EnvironmentListener implements Listener {
+
+	/**
+	 * Demanded while any minigame has a lobby sign.
+	 */
+	static final int LOBBY_SIGNS = 1 << 10;
+	/**
+	 * Demanded while any minigame has a live round.
+	 */
+	static final int ROUNDS = 1 << 11;
+
+	private static final EnvironmentListener INSTANCE = new EnvironmentListener();
+	private static final List<Unit> units = new ArrayList<Unit>();
+
+	static {
+		for (Method m : EnvironmentListener.class.getDeclaredMethods()) {
+			if (m.isAnnotationPresent(EventHandler.class) && m.isAnnotationPresent(Demand.class)) {
+				units.add(new Unit(m));
+			}
+		}
+	}
+
+	private EnvironmentListener() {
+	}
+
+	/**
+	 * Registers each handler which is demanded by any registered minigame but
+	 * not registered yet, and unregisters each registered handler which is no
+	 * longer demanded. This method does nothing while MGLib is not enabled.
+	 */
+	static void update() {
+		Plugin plugin = MGUtil.getPlugin();
+		if (plugin == null || !plugin.isEnabled()) {
+			return;
+		}
+		int demand = getDemand();
+		for (Unit unit : units) {
+			boolean needed = (unit.demand & demand) != 0;
+			if (needed && !unit.registered) {
+				Bukkit.getPluginManager().registerEvent(unit.event, unit, unit.priority, unit, plugin, unit.ignoreCancelled);
+				unit.registered = true;
+				Main.log("Registered handler " + unit.method.getName(), LogLevel.DEBUG);
+			}
+			else if (!needed && unit.registered) {
+				HandlerList.unregisterAll(unit);
+				unit.registered = false;
+				Main.log("Unregistered handler " + unit.method.getName(), LogLevel.DEBUG);
+			}
+		}
+	}
+
+	/**
+	 * Marks all handlers as unregistered. Called when MGLib is disabled, since
+	 * Bukkit unregisters its listeners along with it.
+	 */
+	static void reset() {
+		for (Unit unit : units) {
+			unit.registered = false;
+		}
+	}
+
+	private static int getDemand() {
+		int demand = 0;
+		for (Minigame mg : Minigame.getMinigameInstances()) {
+			ConfigManager cm = mg.getConfigManager();
+			if (cm != null) { // still being constructed
+				demand |= WorldPolicy.getMask(cm);
+			}
+			if (mg.getLobbyManager() != null && !mg.getLobbyManager().signs.isEmpty()) {
+				demand |= LOBBY_SIGNS;
+			}
+			if (!mg.getRounds().isEmpty()) {
+				demand |= ROUNDS;
+			}
+		}
+		return demand;
+	}
+
+	/**
+	 * Determines whether a lobby sign of any minigame is attached to the
+	 * given block. The block's neighbours are only inspected if the lobby sign
+	 * index places a sign next to it.
+	 *
+	 * @param block the block to check
+	 * @return whether a lobby sign is attached to the given block
+	 */
+	private static boolean isLobbySignAttached(Block block) {
+		LobbySignIndex index = LobbySignIndex.get(block.getWorld().getName());
+		if (index == null || !index.isNear(block)) {
+			return false;
+		}
+		Block sign = MGUtil.getAttachedSign(block);
+		return sign != null && index.contains(sign.getX(), sign.getY(), sign.getZ());
+	}
+
+	/**
+	 * Determines whether a change to the given block caused by the
+	 * environment must be cancelled, i.e. whether a minigame with an arena in
+	 * the block's world disallows the given kind of change and the change
+	 * cannot be logged for rollback instead.
+	 *
+	 * @param block the block which is about to change
+	 * @param kind  the kind of change as defined by {@link WorldPolicy}
+	 * @return whether the change must be cancelled
+	 */
+	private static boolean isEnvironmentChangeDenied(Block block, int kind) {
+		WorldPolicy policy = WorldPolicy.get(block.getWorld());
+		if (policy == null || !policy.denies(kind)) {
+			return false;
+		}
+		for (int i = 0; i < policy.size(); i++) {
+			if (policy.denies(i, kind) && !logEnvironmentChange(policy.getPlugin(i), block)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Logs a change to the given block caused by the environment if the given
+	 * minigame permits such changes within its arenas and the block lies
+	 * within the boundaries of one of its rounds.
+	 *
+	 * @param plugin the name of the plugin owning the minigame
+	 * @param block  the block which is about to change
+	 * @return whether the change was logged and may thus be allowed
+	 */
+	private static boolean logEnvironmentChange(String plugin, Block block) {
+		Minigame mg = Minigame.getMinigameInstance(plugin);
+		if (!mg.getConfigManager().isEnvironmentLoggingEnabled()) {
+			return false;
+		}
+		for (Round r : ArenaIndex.getCandidates(block)) {
+			if (r.getPlugin().equals(plugin) && r.isRollbackEnabled() && r.getStage() != Stage.RESETTING &&
+					r.isWithinBounds(block)) {
+				mg.getRollbackManager().logBlockChange(block, r.getArena());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Demand(WorldPolicy.BURN | LOBBY_SIGNS)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockBurn(BlockBurnEvent e) {
+		if (isEnvironmentChangeDenied(e.getBlock(), WorldPolicy.BURN)) {
+			e.setCancelled(true);
+			return;
+		}
+		if (isLobbySignAttached(e.getBlock())) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.FADE | LOBBY_SIGNS)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockFade(BlockFadeEvent e) {
+		if (isEnvironmentChangeDenied(e.getBlock(), WorldPolicy.FADE)) {
+			e.setCancelled(true);
+			return;
+		}
+		if (isLobbySignAttached(e.getBlock())) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.GROW)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockGrow(BlockGrowEvent e) {
+		if (isEnvironmentChangeDenied(e.getBlock(), WorldPolicy.GROW)) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.IGNITE | LOBBY_SIGNS)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockIgnite(BlockIgniteEvent e) {
+		if (isEnvironmentChangeDenied(e.getBlock(), WorldPolicy.IGNITE)) {
+			e.setCancelled(true);
+			return;
+		}
+		if (isLobbySignAttached(e.getBlock())) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.FLOW)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockFlow(BlockFromToEvent e) {
+		if (isEnvironmentChangeDenied(e.getToBlock(), WorldPolicy.FLOW)) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.PHYSICS | LOBBY_SIGNS)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockPhysics(BlockPhysicsEvent e) {
+		if (isEnvironmentChangeDenied(e.getBlock(), WorldPolicy.PHYSICS)) {
+			e.setCancelled(true);
+			return;
+		}
+		if (isLobbySignAttached(e.getBlock())) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.PISTON | LOBBY_SIGNS)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockPistonExtend(BlockPistonExtendEvent e) {
+		WorldPolicy policy = WorldPolicy.get(e.getBlock().getWorld());
+		if (policy != null && policy.denies(WorldPolicy.PISTON)) {
+			e.setCancelled(true);
+			return;
+		}
+		if (isLobbySignAttached(e.getBlock())) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.PISTON | LOBBY_SIGNS)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockPistonRetract(BlockPistonRetractEvent e) {
+		WorldPolicy policy = WorldPolicy.get(e.getBlock().getWorld());
+		if (policy != null && policy.denies(WorldPolicy.PISTON)) {
+			e.setCancelled(true);
+			return;
+		}
+		if (isLobbySignAttached(e.getBlock())) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.SPREAD)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onBlockSpread(BlockSpreadEvent e) {
+		if (isEnvironmentChangeDenied(e.getBlock(), WorldPolicy.SPREAD)) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(WorldPolicy.MOB_SPAWN)
+	@EventHandler
+	public void onCreatureSpawn(CreatureSpawnEvent e) {
+		WorldPolicy policy = WorldPolicy.get(e.getEntity().getWorld());
+		if (policy != null && policy.denies(WorldPolicy.MOB_SPAWN)) {
+			e.setCancelled(true);
+		}
+	}
+
+	@Demand(ROUNDS)
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onEntityTarget(EntityTargetEvent e) {
+		if (e.getTarget() != null && e.getTarget().getType() == EntityType.PLAYER) {
+			MGPlayer mp = Minigame.getRegisteredPlayer(e.getTarget().getUniqueId());
+			if (mp != null && (!mp.getMinigame().getConfigManager().isEntityTargetingEnabled() || mp.isSpectating())) {
+				e.setCancelled(true);
+			}
+		}
+	}
+
+	/**
+	 * The conditions under which a handler is needed, as a mask of {@link
+	 * WorldPolicy} kinds (needed while any minigame disallows them), {@link
+	 * #LOBBY_SIGNS} and {@link #ROUNDS}.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.METHOD)
+	private @interface Demand {
+		int value();
+	}
+
+	/**
+	 * A single handler, registered with Bukkit under its own listener object
+	 * so that it can be unregistered independently of the others.
+	 */
+	private static class Unit implements Listener, EventExecutor {
+
+		private final Method method;
+		private final Class<? extends Event> event;
+		private final EventPriority priority;
+		private final boolean ignoreCancelled;
+		private final int demand;
+		private boolean registered = false;
+
+		private Unit(Method method) {
+			this.method = method;
+			this.event = method.getParameterTypes()[0].asSubclass(Event.class);
+			EventHandler handler = method.getAnnotation(EventHandler.class);
+			this.priority = handler.priority();
+			this.ignoreCancelled = handler.ignoreCancelled();
+			this.demand = method.getAnnotation(Demand.class).value();
+		}
+
+		public void execute(Listener listener, Event e) throws EventException {
+			if (!event.isInstance(e)) { // subclasses of the event may share its handler list
+				return;
+			}
+			try {
+				method.invoke(INSTANCE, e);
+			}
+			catch (InvocationTargetException ex) {
+				throw new EventException(ex.getCause());
+			}
+			catch (IllegalAccessException ex) {
+				throw new EventException(ex);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,442 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.api.LogLevel;
+import net.amigocraft.mglib.api.Minigame;
+import net.amigocraft.mglib.api.ResetMode;
+import net.amigocraft.mglib.api.Round;
+import net.amigocraft.mglib.api.Stage;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.World.Environment;
+import org.bukkit.WorldCreator;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
+import org.bukkit.plugin.java.JavaPlugin;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Manages the disposable copies of arena worlds in which rounds using
+ * {@link ResetMode#TEMPLATE} are played.
+ *
+ * <p>The world an arena is defined in serves as its template. Copies of the
+ * template's folder are made off the main thread one round ahead, so that a
+ * fresh copy is usually waiting on disk by the time a round ends and only
+ * needs to be loaded. The copy a round was played in is unloaded without
+ * saving and deleted asynchronously.</p>
+ *
+ * <p>The server writes chunks to disk asynchronously, so the folder of a
+ * loaded world may be half written at any time. Copies are therefore not
+ * made from the template itself but from a pristine copy of it which is
+ * never loaded. The pristine copy is made once per server run, after the
+ * template has been unloaded with saving, which waits for its chunks to be
+ * written, and the template is loaded again afterwards. Changes made to a
+ * template while the server is running thus only reach its copies after a
+ * restart.</p>
+ *
+ * @since 0.4.3
+ */
+public class InstanceManager {
+
+	private static final String PREFIX = "mglib-instance.";
+	private static final String PRISTINE_PREFIX = "mglib-template.";
+	// a copied uid.dat would make the server reject the copy as a duplicate of its template
+	private static final List<String> EXCLUDED = Arrays.asList("uid.dat", "session.lock");
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_DELAY = 100L; // ticks
+
+	private final JavaPlugin plugin;
+	private final String prefix;
+	private final String pristinePrefix;
+	private final ExecutorService executor;
+
+	private final HashMap<String, Future<File>> spares = new HashMap<String, Future<File>>();
+	private final HashMap<String, World> instances = new HashMap<String, World>();
+	private final HashSet<String> loading = new HashSet<String>();
+	private final HashMap<String, Integer> failures = new HashMap<String, Integer>();
+	private final HashMap<String, File> pristine = new HashMap<String, File>();
+	private int copies = 0;
+
+	/**
+	 * Creates a new instance manager for the given plugin and deletes any
+	 * copies left behind by the plugin the last time the server ran.
+	 *
+	 * <p><strong>This constructor should not be called from your plugin. Use
+	 * {@link net.amigocraft.mglib.api.Minigame#getInstanceManager()}
+	 * instead.</strong></p>
+	 *
+	 * @param plugin the plugin to manage copies for
+	 * @since 0.4.3
+	 */
+	public InstanceManager(final JavaPlugin plugin) {
+		this.plugin = plugin;
+		this.prefix = PREFIX + plugin.getName().toLowerCase() + ".";
+		this.pristinePrefix = PRISTINE_PREFIX + plugin.getName().toLowerCase() + ".";
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MGLib world copier (" + plugin.getName() + ")");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		File[] folders = Bukkit.getWorldContainer().listFiles();
+		if (folders != null) {
+			for (File folder : folders) {
+				if (folder.isDirectory() && (folder.getName().startsWith(prefix) || folder.getName().startsWith(pristinePrefix)) &&
+						Bukkit.getWorld(folder.getName()) == null) {
+					MGUtil.deleteFolderAsync(folder);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the copy of its template world the given arena is currently
+	 * played in.
+	 *
+	 * @param arena the arena to retrieve the copy for
+	 * @return the copy the given arena is played in, or <code>null</code> if
+	 * none is loaded
+	 * @since 0.4.3
+	 */
+	public World getInstance(String arena) {
+		return instances.get(arena.toLowerCase());
+	}
+
+	/**
+	 * Starts copying the template world of the given round's arena off the
+	 * main thread, unless a copy is already being made or waiting on disk.
+	 *
+	 * <p>The copy is made from the pristine copy of the template. If none has
+	 * been made since the server started, the template is unloaded with
+	 * saving first, so that none of its chunks are still being written, and
+	 * loaded again once the pristine copy is made. Rounds still in the
+	 * template are moved into it again at that point. If the template
+	 * cannot be unloaded, e.g. because players are in it, the copy
+	 * fails.</p>
+	 *
+	 * @param round the round to prepare a copy for
+	 * @since 0.4.3
+	 */
+	public void prepare(Round round) {
+		if (spares.containsKey(round.getArena())) {
+			return;
+		}
+		final String name = round.getTemplateWorld();
+		File copy = pristine.get(name);
+		final boolean refresh = copy == null;
+		Environment environment = null;
+		if (refresh) {
+			World template = Bukkit.getWorld(name);
+			if (template != null) {
+				environment = template.getEnvironment();
+				if (!Bukkit.unloadWorld(template, true)) {
+					spares.put(round.getArena(), executor.submit(new Callable<File>() {
+						public File call() throws IOException {
+							throw new IOException("Cannot unload world " + name + " to copy it");
+						}
+					}));
+					return;
+				}
+			}
+			copy = new File(Bukkit.getWorldContainer(), pristinePrefix + name + "." + Long.toString(System.currentTimeMillis(), 36));
+			pristine.put(name, copy);
+		}
+		final File source = new File(Bukkit.getWorldContainer(), name);
+		final File clean = copy;
+		final File target = new File(Bukkit.getWorldContainer(), prefix + round.getArena().replaceAll("[^a-z0-9_-]", "_") +
+				"." + Long.toString(System.currentTimeMillis(), 36) + "." + copies++);
+		spares.put(round.getArena(), executor.submit(new Callable<File>() {
+			public File call() throws IOException {
+				try {
+					if (refresh) {
+						copy(source, clean, true);
+					}
+					copy(clean, target, true);
+					return target;
+				}
+				catch (IOException ex) {
+					MGUtil.deleteFolderAsync(target);
+					throw ex;
+				}
+			}
+		}));
+		if (environment != null) {
+			final Environment env = environment;
+			// queued behind the copy, so this runs once the template has been copied
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						Bukkit.getScheduler().runTask(MGUtil.getPlugin(), new Runnable() {
+							public void run() {
+								reload(name, env);
+							}
+						});
+					}
+					catch (IllegalPluginAccessException ex) {
+						// MGLib was disabled in the meantime, so the template is loaded the next time the server starts
+					}
+				}
+			});
+		}
+	}
+
+	private void reload(String name, Environment environment) {
+		if (Bukkit.getWorld(name) == null && Bukkit.createWorld(new WorldCreator(name).environment(environment)) == null) {
+			return;
+		}
+		for (Minigame mg : Minigame.getMinigameInstances()) {
+			for (Round r : mg.getRoundList()) {
+				if (r.getWorld().equals(name)) { // still bound to the unloaded template
+					r.setInstanceWorld(null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads a fresh copy of the template world of the given round's arena
+	 * and moves the round into it, then prepares the next copy. The round's
+	 * stage is set to {@link Stage#RESETTING} until the copy is loaded, so
+	 * that nobody can join it while it is still in its template world, and
+	 * to {@link Stage#WAITING} afterwards.
+	 *
+	 * <p>If no copy has been prepared yet, one is made first. Either way, the
+	 * main thread does not wait for the copy to finish. A failed copy is
+	 * retried a few times before the round falls back to being played in its
+	 * template world and rolled back by logging.</p>
+	 *
+	 * @param round the round to load a copy for
+	 * @since 0.4.3
+	 */
+	public void load(final Round round) {
+		final String arena = round.getArena();
+		if (instances.containsKey(arena) || !loading.add(arena)) {
+			return;
+		}
+		if (round.getStage() != Stage.RESETTING) {
+			round.setStage(Stage.RESETTING);
+			round.getMinigame().getLobbyManager().update(arena);
+		}
+		prepare(round);
+		final Future<File> spare = spares.remove(arena);
+		// queued behind the copy, so this runs once it's done
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					Bukkit.getScheduler().runTask(MGUtil.getPlugin(), new Runnable() {
+						public void run() {
+							loaded(round, spare);
+						}
+					});
+				}
+				catch (IllegalPluginAccessException ex) {
+					// MGLib was disabled in the meantime, so the copy is deleted the next time the server starts
+				}
+			}
+		});
+	}
+
+	private void loaded(Round round, Future<File> spare) {
+		String arena = round.getArena();
+		loading.remove(arena);
+		File folder;
+		try {
+			folder = spare.get(); // already done
+		}
+		catch (Exception ex) {
+			(ex instanceof ExecutionException ? ex.getCause() : ex).printStackTrace();
+			// the pristine copy may be incomplete, so the next attempt makes a new one (this one is deleted on restart)
+			pristine.remove(round.getTemplateWorld());
+			failed(round);
+			return;
+		}
+		if (!isNeeded(round)) {
+			MGUtil.deleteFolderAsync(folder);
+			return;
+		}
+		World template = Bukkit.getWorld(round.getTemplateWorld());
+		World w = Bukkit.createWorld(new WorldCreator(folder.getName()).environment(template != null ?
+				template.getEnvironment() :
+				MGUtil.getEnvironment(folder.getName())));
+		if (w == null) {
+			MGUtil.deleteFolderAsync(folder);
+			failed(round);
+			return;
+		}
+		failures.remove(arena);
+		w.setAutoSave(false); // it's thrown away anyway
+		instances.put(arena, w);
+		MGListener.addWorld(plugin.getName(), w.getName());
+		round.setInstanceWorld(w);
+		round.setStage(Stage.WAITING);
+		round.getMinigame().getLobbyManager().update(arena);
+		Main.log("Loaded " + w.getName() + " for arena " + arena, LogLevel.DEBUG);
+		prepare(round); // copy the next one while this one is played in
+	}
+
+	private boolean isNeeded(Round round) {
+		return round.getMinigame().getRound(round.getArena()) == round && round.isInstanced();
+	}
+
+	private void failed(final Round round) {
+		String arena = round.getArena();
+		if (!isNeeded(round)) {
+			failures.remove(arena);
+			return;
+		}
+		Integer count = failures.get(arena);
+		int attempt = count != null ? count + 1 : 1;
+		Main.log.severe(Main.locale.getMessage("plugin.alert.instance-fail", round.getTemplateWorld(), arena,
+				Integer.toString(attempt), Integer.toString(MAX_ATTEMPTS)));
+		if (attempt < MAX_ATTEMPTS) {
+			failures.put(arena, attempt);
+			Bukkit.getScheduler().runTaskLater(MGUtil.getPlugin(), new Runnable() {
+				public void run() {
+					if (isNeeded(round)) {
+						load(round);
+					}
+				}
+			}, RETRY_DELAY);
+			return;
+		}
+		// play in the template itself instead, logging changes so that it is rolled back like any other arena
+		failures.remove(arena);
+		Main.log.severe(Main.locale.getMessage("plugin.alert.instance-fallback", round.getTemplateWorld(), arena));
+		round.setResetMode(ResetMode.LOG);
+		round.setInstanceWorld(null);
+		round.setStage(Stage.WAITING);
+		round.getMinigame().getLobbyManager().update(arena);
+	}
+
+	/**
+	 * Moves the given round back into its template world, then unloads the
+	 * copy it was played in and deletes it asynchronously.
+	 *
+	 * @param round the round to release the copy of
+	 * @since 0.4.3
+	 */
+	public void release(Round round) {
+		World w = instances.remove(round.getArena());
+		round.setInstanceWorld(null);
+		if (w == null) {
+			return;
+		}
+		MGListener.removeWorld(plugin.getName(), w.getName());
+		for (Player p : w.getPlayers()) { // e.g. players who wandered in without joining the round
+			p.teleport(Bukkit.getWorlds().get(0).getSpawnLocation());
+		}
+		File folder = w.getWorldFolder();
+		if (Bukkit.unloadWorld(w, false)) {
+			MGUtil.deleteFolderAsync(folder);
+		} // otherwise it's deleted the next time the server starts
+	}
+
+	/**
+	 * Discards the copy the given round was played in and loads a fresh one.
+	 * The round's stage is set to {@link Stage#WAITING} once it is loaded.
+	 *
+	 * @param round the round to reset
+	 * @since 0.4.3
+	 */
+	public void reset(Round round) {
+		release(round);
+		if (!Main.isDisabling()) {
+			load(round);
+		}
+	}
+
+	/**
+	 * Stops preparing copies and unloads all loaded ones. Any copies left on
+	 * disk are deleted the next time the server starts.
+	 *
+	 * <p><strong>This method should not be called from your plugin.</strong></p>
+	 *
+	 * @since 0.4.3
+	 */
+	public void close() {
+		executor.shutdownNow();
+		for (World w : instances.values()) {
+			Bukkit.unloadWorld(w, false);
+		}
+		instances.clear();
+		spares.clear();
+		pristine.clear();
+		loading.clear();
+		failures.clear();
+	}
+
+	private static void copy(File source, File target, boolean root) throws IOException {
+		if (source.isDirectory()) {
+			if (!target.isDirectory() && !target.mkdirs()) {
+				throw new IOException("Cannot create " + target.getPath());
+			}
+			String[] children = source.list();
+			if (children == null) {
+				throw new IOException("Cannot list " + source.getPath());
+			}
+			for (String child : children) {
+				if (!root || !EXCLUDED.contains(child)) {
+					copy(new File(source, child), new File(target, child), false);
+				}
+			}
+		}
+		else {
+			FileInputStream in = new FileInputStream(source);
+			try {
+				FileOutputStream out = new FileOutputStream(target);
+				try {
+					FileChannel channel = in.getChannel();
+					long size = channel.size();
+					long pos = 0;
+					while (pos < size) {
+						pos += channel.transferTo(pos, size - pos, out.getChannel());
+					}
+				}
+				finally {
+					out.close();
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.rollback.JournalRecord;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A pool of the distinct item stacks contained by the logged inventories of
+ * a single arena.
+ *
+ * <p>Inventory payloads encoded against a pool store one reference per slot
+ * rather than the serialized stacks, so identically stocked containers share
+ * their stacks both in memory and in the journal. Each stack entering the
+ * pool is journaled once as an {@link JournalRecord#ITEM} record, and is
+ * only deserialized again when it is first needed.</p>
+ */
+class ItemPool {
+
+	/**
+	 * The leading byte of payloads referencing pooled stacks. Payloads
+	 * containing the stacks themselves are YAML text and thus never start
+	 * with it.
+	 */
+	private static final byte REFERENCES = 0;
+
+	private final List<byte[]> serialized = new ArrayList<byte[]>();
+	private final List<ItemStack> stacks = new ArrayList<ItemStack>();
+	private final HashMap<ItemStack, Integer> ids = new HashMap<ItemStack, Integer>();
+
+	/**
+	 * Encodes the given inventory contents as references into this pool,
+	 * adding any stacks which are not pooled yet.
+	 *
+	 * @param contents    the contents to encode
+	 * @param arena       the arena this pool belongs to
+	 * @param definitions the list to add records defining newly pooled stacks
+	 *                    to; these must be journaled before the inventory
+	 * @return the encoded contents
+	 */
+	byte[] encode(ItemStack[] contents, String arena, List<JournalRecord> definitions) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(5 + contents.length * 4);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(REFERENCES);
+			out.writeInt(contents.length);
+			for (ItemStack stack : contents) {
+				out.writeInt(stack != null ? intern(stack, arena, definitions) : -1);
+			}
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException ex) { // can't happen with a byte array
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private int intern(ItemStack stack, String arena, List<JournalRecord> definitions) {
+		Integer id = ids.get(stack);
+		if (id != null) {
+			return id;
+		}
+		ItemStack copy = stack.clone(); // the original may still be modified
+		YamlConfiguration y = new YamlConfiguration();
+		y.set("item", copy);
+		byte[] data = y.saveToString().getBytes(RollbackManager.UTF8);
+		id = serialized.size();
+		serialized.add(data);
+		stacks.add(copy);
+		ids.put(copy, id);
+		definitions.add(JournalRecord.item(arena, id, data));
+		return id;
+	}
+
+	/**
+	 * Adds a stack read back from the journal to this pool.
+	 *
+	 * @param id   the id of the stack
+	 * @param data the serialized stack
+	 */
+	void define(int id, byte[] data) {
+		while (serialized.size() <= id) {
+			serialized.add(null);
+			stacks.add(null);
+		}
+		serialized.set(id, data);
+		stacks.set(id, null);
+	}
+
+	/**
+	 * Adds records defining every stack in this pool to the given list, so
+	 * that the pool can be journaled anew.
+	 *
+	 * @param arena       the arena this pool belongs to
+	 * @param definitions the list to add the records to
+	 */
+	void addDefinitions(String arena, List<JournalRecord> definitions) {
+		for (int id = 0; id < serialized.size(); id++) {
+			if (serialized.get(id) != null) {
+				definitions.add(JournalRecord.item(arena, id, serialized.get(id)));
+			}
+		}
+	}
+
+	/**
+	 * Decodes the given inventory contents, which may either reference this
+	 * pool or contain the stacks themselves.
+	 *
+	 * @param payload the encoded contents
+	 * @return the decoded contents
+	 * @throws InvalidConfigurationException if the contents or any stack
+	 *                                       they reference cannot be read
+	 */
+	ItemStack[] decode(byte[] payload) throws InvalidConfigurationException {
+		if (payload.length == 0 || payload[0] != REFERENCES) {
+			return RollbackManager.decodeInventory(payload);
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+			ItemStack[] contents = new ItemStack[in.readInt()];
+			for (int i = 0; i < contents.length; i++) {
+				int id = in.readInt();
+				contents[i] = id >= 0 ? get(id) : null;
+			}
+			return contents;
+		}
+		catch (IOException ex) {
+			throw new InvalidConfigurationException("Truncated inventory contents", ex);
+		}
+	}
+
+	private ItemStack get(int id) throws InvalidConfigurationException {
+		if (id >= serialized.size() || serialized.get(id) == null) {
+			throw new InvalidConfigurationException("Undefined item stack " + id);
+		}
+		ItemStack stack = stacks.get(id);
+		if (stack == null) {
+			YamlConfiguration y = new YamlConfiguration();
+			y.loadFromString(new String(serialized.get(id), RollbackManager.UTF8));
+			stack = y.getItemStack("item");
+			stacks.set(id, stack);
+			if (stack != null && !ids.containsKey(stack)) {
+				ids.put(stack, id);
+			}
+		}
+		return stack;
+	}
+
+	/**
+	 * Decodes inventory contents which may reference the given pool.
+	 *
+	 * @param payload the encoded contents
+	 * @param pool    the pool the contents may reference, or
+	 *                <code>null</code> if they are known to contain the
+	 *                stacks themselves
+	 * @return the decoded contents
+	 * @throws InvalidConfigurationException if the contents cannot be read
+	 */
+	static ItemStack[] decode(byte[] payload, ItemPool pool) throws InvalidConfigurationException {
+		return pool != null ? pool.decode(payload) : RollbackManager.decodeInventory(payload);
+	}
+
+}
@@ -125,6 +125,7 @@ public class LobbyManager {
 				}
 				save(ls);
 				signs.put(MGUtil.fromBukkitLocation(l), ls);
+				Main.invalidateLobbySignIndex();
 				update(arena);
 			}
 			else {
@@ -184,6 +185,7 @@ public class LobbyManager {
 			y.set(Integer.toString(s.getIndex()), null);
 			y.save(f);
 			signs.remove(l);
+			Main.invalidateLobbySignIndex();
 		}
 		catch (Exception ex) {
 			ex.printStackTrace();
@@ -286,6 +288,7 @@ public class LobbyManager {
 			ex.printStackTrace();
 			Main.log.warning(Main.locale.getMessage("lobby.alert.load", plugin));
 		}
+		Main.invalidateLobbySignIndex();
 	}
 
 }
@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.api.LobbySign;
+import net.amigocraft.mglib.api.Minigame;
+import net.amigocraft.mglib.rollback.ChangeSet;
+
+import org.bukkit.block.Block;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The positions of all lobby signs within a single world, indexed by chunk.
+ *
+ * <p>Listeners for environmental events use the index to determine whether a
+ * lobby sign could possibly be attached to a block before inspecting the
+ * block's neighbours, which requires a block state to be created for each of
+ * them. The table is rebuilt from the lobby managers of all registered
+ * minigames on the first lookup after it has been {@link #invalidate()
+ * invalidated}, which happens whenever a lobby sign is added or removed or a
+ * minigame is unregistered.</p>
+ */
+class LobbySignIndex {
+
+	private static HashMap<String, LobbySignIndex> table = null;
+
+	private final HashSet<Long> chunks = new HashSet<Long>();
+	private final HashSet<Long> positions = new HashSet<Long>();
+
+	/**
+	 * Retrieves the index of the given world.
+	 *
+	 * @param world the name of the world to retrieve the index of
+	 * @return the index of the given world, or <code>null</code> if it does
+	 * not contain any lobby signs
+	 */
+	static LobbySignIndex get(String world) {
+		if (table == null) {
+			table = build();
+		}
+		return table.get(world);
+	}
+
+	/**
+	 * Marks all indices as stale, so that they are rebuilt on the next
+	 * lookup.
+	 */
+	static void invalidate() {
+		table = null;
+	}
+
+	/**
+	 * Checks whether a lobby sign is located next to or on top of the given
+	 * block, i.e. at any position where it might be attached to it.
+	 *
+	 * @param block the block to check
+	 * @return whether a lobby sign may be attached to the given block
+	 */
+	boolean isNear(Block block) {
+		int x = block.getX();
+		int y = block.getY();
+		int z = block.getZ();
+		int cx = x >> 4;
+		int cz = z >> 4;
+		// a neighbour lies in an adjacent chunk only if the block is on the chunk's edge
+		if (!chunks.contains(chunkKey(cx, cz)) &&
+				!((x & 15) == 0 && chunks.contains(chunkKey(cx - 1, cz))) &&
+				!((x & 15) == 15 && chunks.contains(chunkKey(cx + 1, cz))) &&
+				!((z & 15) == 0 && chunks.contains(chunkKey(cx, cz - 1))) &&
+				!((z & 15) == 15 && chunks.contains(chunkKey(cx, cz + 1)))) {
+			return false;
+		}
+		return contains(x + 1, y, z) || contains(x - 1, y, z) || contains(x, y, z + 1) || contains(x, y, z - 1) ||
+				contains(x, y + 1, z);
+	}
+
+	/**
+	 * Checks whether a lobby sign is located at the given position.
+	 *
+	 * @param x the x-coordinate of the position
+	 * @param y the y-coordinate of the position
+	 * @param z the z-coordinate of the position
+	 * @return whether a lobby sign is located at the given position
+	 */
+	boolean contains(int x, int y, int z) {
+		return positions.contains(ChangeSet.pack(x, y, z));
+	}
+
+	private static long chunkKey(int cx, int cz) {
+		return (long)cx << 32 | cz & 0xFFFFFFFFL;
+	}
+
+	private static HashMap<String, LobbySignIndex> build() {
+		HashMap<String, LobbySignIndex> table = new HashMap<String, LobbySignIndex>();
+		for (Minigame mg : Minigame.getMinigameInstances()) {
+			for (LobbySign sign : mg.getLobbyManager().signs.values()) {
+				LobbySignIndex index = table.get(sign.getWorld());
+				if (index == null) {
+					index = new LobbySignIndex();
+					table.put(sign.getWorld(), index);
+				}
+				index.chunks.add(chunkKey(sign.getX() >> 4, sign.getZ() >> 4));
+				index.positions.add(ChangeSet.pack(sign.getX(), sign.getY(), sign.getZ()));
+			}
+		}
+		return table;
+	}
+
+}
@@ -25,12 +25,14 @@ package net.amigocraft.mglib;
 
 import static net.amigocraft.mglib.Main.locale;
 
+import net.amigocraft.mglib.api.ConfigManager;
 import net.amigocraft.mglib.api.LobbySign;
 import net.amigocraft.mglib.api.LobbyType;
 import net.amigocraft.mglib.api.Location3D;
 import net.amigocraft.mglib.api.MGPlayer;
 import net.amigocraft.mglib.api.Minigame;
 import net.amigocraft.mglib.api.Round;
+import net.amigocraft.mglib.api.Stage;
 import net.amigocraft.mglib.event.player.MGPlayerDeathEvent;
 import net.amigocraft.mglib.event.round.LobbyClickEvent;
 import net.amigocraft.mglib.exception.InvalidLocationException;
@@ -40,6 +42,7 @@ import net.amigocraft.mglib.exception.PlayerOfflineException;
 import net.amigocraft.mglib.exception.PlayerPresentException;
 import net.amigocraft.mglib.exception.RoundFullException;
 import net.amigocraft.mglib.misc.JoinResult;
+import net.amigocraft.mglib.rollback.PositionSet;
 import net.amigocraft.mglib.util.NmsUtil;
 
 import org.bukkit.Bukkit;
@@ -52,6 +55,8 @@ import org.bukkit.block.Sign;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
+import org.bukkit.entity.FallingBlock;
+import org.bukkit.entity.Hanging;
 import org.bukkit.entity.ItemFrame;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.Projectile;
@@ -60,38 +65,37 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.block.BlockBreakEvent;
-import org.bukkit.event.block.BlockBurnEvent;
-import org.bukkit.event.block.BlockFadeEvent;
-import org.bukkit.event.block.BlockFromToEvent;
-import org.bukkit.event.block.BlockGrowEvent;
-import org.bukkit.event.block.BlockIgniteEvent;
-import org.bukkit.event.block.BlockPhysicsEvent;
-import org.bukkit.event.block.BlockPistonExtendEvent;
-import org.bukkit.event.block.BlockPistonRetractEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
-import org.bukkit.event.block.BlockSpreadEvent;
 import org.bukkit.event.block.SignChangeEvent;
-import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.entity.EntityExplodeEvent;
-import org.bukkit.event.entity.EntityTargetEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
 import org.bukkit.event.entity.FoodLevelChangeEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.hanging.HangingBreakByEntityEvent;
+import org.bukkit.event.hanging.HangingBreakEvent;
+import org.bukkit.event.hanging.HangingPlaceEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
@@ -119,6 +123,7 @@ class MGListener implements Listener {
 					}
 				}
 				worlds.put(plugin, worldList);
+				WorldPolicy.invalidate();
 			}
 			catch (Exception ex) {
 				ex.printStackTrace();
@@ -150,18 +155,45 @@ class MGListener implements Listener {
 	 * plugin.
 	 *
 	 * @param plugin the plugin to retrieve worlds for
-	 * @return worlds registered with MGLib's event listener for the given
-	 * plugin
+	 * @return an unmodifiable view of the worlds registered with MGLib's event
+	 * listener for the given plugin
 	 * @since 0.2.0
 	 */
 	public static List<String> getWorlds(String plugin) {
-		if (MGListener.worlds.containsKey(plugin)) {
-			return MGListener.worlds.get(plugin);
-		}
-		else {
-			List<String> l = new ArrayList<String>();
+		List<String> l = MGListener.worlds.get(plugin);
+		return l != null ? Collections.unmodifiableList(l) : Collections.<String>emptyList();
+	}
+
+	/**
+	 * Registers the given world with MGLib's event listener for the given
+	 * plugin if it isn't registered already.
+	 *
+	 * @param plugin the plugin to register the world for
+	 * @param world  the name of the world to register
+	 */
+	static void addWorld(String plugin, String world) {
+		List<String> l = MGListener.worlds.get(plugin);
+		if (l == null) {
+			l = new ArrayList<String>();
 			MGListener.worlds.put(plugin, l);
-			return l;
+		}
+		if (!l.contains(world)) {
+			l.add(world);
+			WorldPolicy.invalidate();
+		}
+	}
+
+	/**
+	 * Unregisters the given world from MGLib's event listener for the given
+	 * plugin.
+	 *
+	 * @param plugin the plugin to unregister the world for
+	 * @param world  the name of the world to unregister
+	 */
+	static void removeWorld(String plugin, String world) {
+		List<String> l = MGListener.worlds.get(plugin);
+		if (l != null && l.remove(world)) {
+			WorldPolicy.invalidate();
 		}
 	}
 
@@ -169,46 +201,43 @@ class MGListener implements Listener {
 	// so that we can prepare everything for the hooking plugins
 	public void onPlayerQuit(PlayerQuitEvent e) {
 		final String p = e.getPlayer().getName();
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			for (Round r : mg.getRoundList()) {
-				MGPlayer mp = r.getMGPlayer(p);
-				if (mp != null) {
-					try {
-						mp.removeFromRound();
-						// this bit is so it won't break when I'm testing, but offline servers will still get screwed up
-						List<String> testAccounts = Arrays.asList("testing123", "testing456", "testing789");
-						if (!testAccounts.contains(e.getPlayer().getName().toLowerCase())) {
-							String pUuid = UUIDFetcher.getUUIDOf(p).toString();
-							UUIDFetcher.removeUUID(p);
-							YamlConfiguration y = new YamlConfiguration();
-							File f = new File(MGUtil.getPlugin().getDataFolder(), "offlineplayers.yml");
-							if (!f.exists()) {
-								f.createNewFile();
-							}
-							y.load(f);
-							Location el = mg.getConfigManager().getDefaultExitLocation();
-							y.set(pUuid + ".w", el.getWorld().getName());
-							y.set(pUuid + ".x", el.getX());
-							y.set(pUuid + ".y", el.getY());
-							y.set(pUuid + ".z", el.getZ());
-							y.save(f);
-						}
-					}
-					catch (Exception ex) {
-						ex.printStackTrace();
-						Main.log.severe(locale.getMessage("plugin.alert.data.save", p));
-					}
+		MGPlayer mp = Minigame.getRegisteredPlayer(e.getPlayer().getUniqueId());
+		if (mp != null) {
+			Minigame mg = mp.getMinigame();
+			try {
+				mp.removeFromRound();
+				// this bit is so it won't break when I'm testing, but offline servers will still get screwed up
+				List<String> testAccounts = Arrays.asList("testing123", "testing456", "testing789");
+				if (!testAccounts.contains(e.getPlayer().getName().toLowerCase())) {
+					String pUuid = UUIDFetcher.getUUIDOf(p).toString();
+					UUIDFetcher.removeUUID(p);
+					YamlConfiguration y = new YamlConfiguration();
+					File f = new File(MGUtil.getPlugin().getDataFolder(), "offlineplayers.yml");
+					if (!f.exists()) {
+						f.createNewFile();
+					}
+					y.load(f);
+					Location el = mg.getConfigManager().getDefaultExitLocation();
+					y.set(pUuid + ".w", el.getWorld().getName());
+					y.set(pUuid + ".x", el.getX());
+					y.set(pUuid + ".y", el.getY());
+					y.set(pUuid + ".z", el.getZ());
+					y.save(f);
 				}
 			}
+			catch (Exception ex) {
+				ex.printStackTrace();
+				Main.log.severe(locale.getMessage("plugin.alert.data.save", p));
+			}
 		}
 	}
 
 	@EventHandler(priority = EventPriority.LOWEST)
 	public void onEntityDamage(EntityDamageEvent e) {
 		Player pl = null;
-		Player p2 = null; // don't ask why it's named like this
+		MGPlayer victim = null;
 		if (e.getEntity() instanceof Player) {
-			p2 = (Player)e.getEntity();
+			victim = Minigame.getRegisteredPlayer(e.getEntity().getUniqueId());
 		}
 		if (e instanceof EntityDamageByEntityEvent) {
 			Entity damager = ((EntityDamageByEntityEvent)e).getDamager();
@@ -222,63 +251,45 @@ class MGListener implements Listener {
 				}
 			}
 
-			//TODO: probably rewrite this bit at some point
-			if (pl != null || p2 != null) {
-				for (Minigame mg : Minigame.getMinigameInstances()) {
-					if (p2 != null) {
-						MGPlayer p = mg.getMGPlayer(p2.getName());
-						if (p != null) {
-							if (p.isSpectating() || !p.getRound().isDamageAllowed()) {
-								e.setCancelled(true); // we don't want any spooky ghosts being harassed by the living
-								return;
-							}
-						}
-					}
-					if (pl != null) {
-						MGPlayer p = mg.getMGPlayer(pl.getName());
-						if (p != null && (p.isSpectating() || !p.getRound().isPvPAllowed())) {
-							e.setCancelled(true); // we don't want any spooky ghosts harassing the living
-							return;
-						}
-						else if (p != null &&
-								!mg.getConfigManager().isItemFrameDamageAllowed() &&
-								e.getEntity() instanceof ItemFrame) {
-							e.setCancelled(true);
-							return;
-						}
+			if (victim != null && (victim.isSpectating() || !victim.getRound().isDamageAllowed())) {
+				e.setCancelled(true); // we don't want any spooky ghosts being harassed by the living
+				return;
+			}
+			if (pl != null) {
+				MGPlayer attacker = Minigame.getRegisteredPlayer(pl.getUniqueId());
+				if (attacker != null) {
+					if (attacker.isSpectating() || !attacker.getRound().isPvPAllowed()) {
+						e.setCancelled(true); // we don't want any spooky ghosts harassing the living
+						return;
 					}
-					if (pl != null && p2 != null) {
-						MGPlayer m1 = mg.getMGPlayer(pl.getName());
-						MGPlayer m2 = mg.getMGPlayer(p2.getName());
-						if (m1 != null &&
-								m2 != null &&
-								!mg.getConfigManager().isTeamDamageAllowed() &&
-								m1.getTeam() != null &&
-								m2.getTeam() != null &&
-								m1.getTeam().equalsIgnoreCase(m2.getTeam())) {
-							e.setCancelled(true);
-							return;
-						}
+					ConfigManager cm = attacker.getMinigame().getConfigManager();
+					if (!cm.isItemFrameDamageAllowed() && e.getEntity() instanceof ItemFrame) {
+						e.setCancelled(true);
+						return;
+					}
+					if (victim != null &&
+							victim.getPlugin().equals(attacker.getPlugin()) &&
+							!cm.isTeamDamageAllowed() &&
+							attacker.getTeam() != null &&
+							victim.getTeam() != null &&
+							attacker.getTeam().equalsIgnoreCase(victim.getTeam())) {
+						e.setCancelled(true);
+						return;
 					}
 				}
 			}
 		}
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			if (p2 != null) {
-				MGPlayer p = mg.getMGPlayer(p2.getName());
-				if (p != null && p.isSpectating()) {
-					e.setCancelled(true);
-					return;
-				}
-			}
+		if (victim != null && victim.isSpectating()) {
+			e.setCancelled(true);
 		}
 	}
 
 	@SuppressWarnings("unchecked")
 	@EventHandler
 	public void onPlayerDeath(PlayerDeathEvent e) {
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			if (mg.getConfigManager().isOverrideDeathEvent() && mg.isPlayer(e.getEntity().getName())) {
+		MGPlayer mp = Minigame.getRegisteredPlayer(e.getEntity().getUniqueId());
+		if (mp != null) {
+			if (mp.getMinigame().getConfigManager().isOverrideDeathEvent()) {
 				e.setDeathMessage(null);
 				e.setKeepLevel(true);
 				e.getDrops().clear();
@@ -289,7 +300,7 @@ class MGListener implements Listener {
 					ex.printStackTrace();
 				}
 				EntityDamageEvent ed = e.getEntity().getLastDamageCause();
-				MGUtil.callEvent(new MGPlayerDeathEvent(mg.getMGPlayer(e.getEntity().getName()), ed.getCause(),
+				MGUtil.callEvent(new MGPlayerDeathEvent(mp, ed.getCause(),
 						ed instanceof EntityDamageByEntityEvent ?
 						((EntityDamageByEntityEvent)ed).getDamager() instanceof Projectile ?
 						(Entity)((Projectile)((EntityDamageByEntityEvent)ed).getDamager())
@@ -302,10 +313,9 @@ class MGListener implements Listener {
 
 	@EventHandler(priority = EventPriority.HIGHEST)
 	public void onPlayerRespawn(PlayerRespawnEvent e) {
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			if (mg.getConfigManager().isOverrideDeathEvent() && mg.isPlayer(e.getPlayer().getName())) {
-				e.setRespawnLocation(e.getPlayer().getLocation());
-			}
+		MGPlayer mp = Minigame.getRegisteredPlayer(e.getPlayer().getUniqueId());
+		if (mp != null && mp.getMinigame().getConfigManager().isOverrideDeathEvent()) {
+			e.setRespawnLocation(e.getPlayer().getLocation());
 		}
 	}
 
@@ -354,119 +364,39 @@ class MGListener implements Listener {
 
 	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
 	public void onPlayerTeleport(final PlayerTeleportEvent e) {
-		boolean found = false;
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			for (Round r : mg.getRoundList()) {
-				if (!found) {
-					MGPlayer p = r.getMGPlayer(e.getPlayer().getName());
-					if (p != null) {
-						Location3D l = MGUtil.fromBukkitLocation(e.getTo());
-						if (!l.getWorld().equals(r.getWorld())) {
-							found = true;
-							try {
-								p.removeFromRound(l);
-							}
-							catch (NoSuchPlayerException ex) { // this can never happen
-								ex.printStackTrace();
-							}
-							catch (PlayerOfflineException ex) { // this can definitely never happen
-								ex.printStackTrace();
-							}
-						}
-						else {
-							Location min = r.getMinBound();
-							Location max = r.getMaxBound();
-							if (min != null && max != null) {
-								if (l.getX() < min.getX() ||
-										l.getY() < min.getY() ||
-										l.getZ() < min.getZ() ||
-										l.getX() > max.getX() ||
-										l.getY() > max.getY() ||
-										l.getZ() > max.getZ()) {
-									found = true;
-									try {
-										p.removeFromRound(l);
-									}
-									catch (NoSuchPlayerException ex) { // this can never happen
-										ex.printStackTrace();
-									}
-									catch (PlayerOfflineException ex) { // this can definitely never happen
-										ex.printStackTrace();
-									}
-								}
-							}
-						}
-					}
+		Round r = getRound(e.getPlayer());
+		if (r != null) {
+			MGPlayer p = Minigame.getRegisteredPlayer(e.getPlayer().getUniqueId());
+			Location3D l = MGUtil.fromBukkitLocation(e.getTo());
+			if (!l.getWorld().equals(r.getWorld())) {
+				try {
+					p.removeFromRound(l);
 				}
-			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onInventoryClick(InventoryClickEvent e) {
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			MGPlayer mp = mg.getMGPlayer(e.getWhoClicked().getName());
-			if (mp != null) {
-				if (mp.isSpectating()) {
-					e.setCancelled(true);
-					return;
+				catch (NoSuchPlayerException ex) { // this can never happen
+					ex.printStackTrace();
 				}
-				if (e.getInventory().getHolder() instanceof BlockState) {
-					mg.getRollbackManager().logInventoryChange(e.getInventory(),
-							((BlockState)e.getInventory().getHolder()).getBlock(), mp.getArena());
-					return;
+				catch (PlayerOfflineException ex) { // this can definitely never happen
+					ex.printStackTrace();
 				}
 			}
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockPlace(BlockPlaceEvent e) {
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			for (Round r : mg.getRoundList()) {
-				if (r.isRollbackEnabled()) {
-					if (r.getPlayers().containsKey(e.getPlayer().getName())) {
-						if (!mg.getConfigManager().isBlockPlaceAllowed()) {
-							e.setCancelled(true);
-						}
-						else if (e.getBlock().getType() == Material.TNT) {
-							List<Location3D> list = new ArrayList<Location3D>();
-							if (r.hasMetadata("tntBlocks")) {
-								list = (List<Location3D>)r.getMetadata("tntBlocks");
-							}
-							list.add(MGUtil.fromBukkitLocation(e.getBlock().getLocation()));
-							r.setMetadata("tntBlocks", list);
-						}
-						else {
-							mg.getRollbackManager().logBlockChange(e.getBlockReplacedState().getBlock(), r.getArena());
+			else {
+				Location min = r.getMinBound();
+				Location max = r.getMaxBound();
+				if (min != null && max != null) {
+					if (l.getX() < min.getX() ||
+							l.getY() < min.getY() ||
+							l.getZ() < min.getZ() ||
+							l.getX() > max.getX() ||
+							l.getY() > max.getY() ||
+							l.getZ() > max.getZ()) {
+						try {
+							p.removeFromRound(l);
 						}
-					}
-				}
-			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockBreak(BlockBreakEvent e) {
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			for (Round r : mg.getRoundList()) {
-				if (r.isRollbackEnabled()) {
-					if (r.getPlayers().containsKey(e.getPlayer().getName())) {
-						if (!mg.getConfigManager().isBlockBreakAllowed()) {
-							e.setCancelled(true);
+						catch (NoSuchPlayerException ex) { // this can never happen
+							ex.printStackTrace();
 						}
-						else {
-							mg.getRollbackManager().logBlockChange(e.getBlock(), r.getArena());
-							//TODO: handle rollback of attached blocks
-							for (int y = 1; e.getBlock().getY() + y < 256; y++) {
-								Material type = e.getBlock().getLocation().add(0, y, 0).getBlock().getType();
-								if (type.hasGravity()) {
-									mg.getRollbackManager().logBlockChange(
-											e.getBlock().getLocation().add(0, y, 0).getBlock(), r.getArena()
-									);
-								}
-							}
+						catch (PlayerOfflineException ex) { // this can definitely never happen
+							ex.printStackTrace();
 						}
 					}
 				}
@@ -475,238 +405,56 @@ class MGListener implements Listener {
 	}
 
 	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockBurn(BlockBurnEvent e) {
-		boolean cancelled = false;
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockBurnAllowed()) {
-						e.setCancelled(true);
-						cancelled = true;
-						break;
-					}
-				}
-			}
-		}
-		if (cancelled) {
-			return;
-		}
-		Block adjBlock = MGUtil.getAttachedSign(e.getBlock());
-		if (adjBlock != null) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				for (LobbySign l : mg.getLobbyManager().signs.values()) {
-					if (l.getX() == adjBlock.getX() && l.getY() == adjBlock.getY() && l.getZ() == adjBlock.getZ() &&
-							l.getWorld().equals(adjBlock.getWorld().getName())) {
-						e.setCancelled(true);
-						break;
-					}
-				}
-			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockFade(BlockFadeEvent e) {
-		boolean cancelled = false;
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockFadeAllowed()) {
-						e.setCancelled(true);
-						cancelled = true;
-						break;
-					}
-				}
-			}
-		}
-		if (cancelled) {
-			return;
-		}
-		Block adjBlock = MGUtil.getAttachedSign(e.getBlock());
-		if (adjBlock != null) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				for (LobbySign l : mg.getLobbyManager().signs.values()) {
-					if (l.getX() == adjBlock.getX() && l.getY() == adjBlock.getY() && l.getZ() == adjBlock.getZ() &&
-							l.getWorld().equals(adjBlock.getWorld().getName())) {
-						e.setCancelled(true);
-						break;
-					}
-				}
-			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockGrow(BlockGrowEvent e) {
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockGrowAllowed()) {
-						e.setCancelled(true);
-						break;
-					}
-				}
-			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockIgnite(BlockIgniteEvent e) {
-		boolean cancelled = false;
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockIgniteAllowed()) {
-						e.setCancelled(true);
-						cancelled = true;
-						break;
-					}
-				}
-			}
-		}
-		if (cancelled) {
-			return;
-		}
-		Block adjBlock = MGUtil.getAttachedSign(e.getBlock());
-		if (adjBlock != null) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				for (LobbySign l : mg.getLobbyManager().signs.values()) {
-					if (l.getX() == adjBlock.getX() && l.getY() == adjBlock.getY() && l.getZ() == adjBlock.getZ() &&
-							l.getWorld().equals(adjBlock.getWorld().getName())) {
-						e.setCancelled(true);
-						break;
-					}
-				}
+	public void onInventoryClick(InventoryClickEvent e) {
+		MGPlayer mp = Minigame.getRegisteredPlayer(e.getWhoClicked().getUniqueId());
+		if (mp != null) {
+			if (mp.isSpectating()) {
+				e.setCancelled(true);
+				return;
 			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockFlow(BlockFromToEvent e) {
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockFlowAllowed()) {
-						e.setCancelled(true);
-						break;
-					}
-				}
+			if (e.getInventory().getHolder() instanceof BlockState) {
+				mp.getMinigame().getRollbackManager().logInventoryChange(e.getInventory(),
+						((BlockState)e.getInventory().getHolder()).getBlock(), mp.getArena());
 			}
 		}
 	}
 
 	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockPhysics(BlockPhysicsEvent e) {
-		boolean cancelled = false;
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().areBlockPhysicsAllowed()) {
-						e.setCancelled(true);
-						cancelled = true;
-						break;
-					}
-				}
+	public void onBlockPlace(BlockPlaceEvent e) {
+		Round r = getRound(e.getPlayer());
+		if (r != null && r.isRollbackEnabled()) {
+			Minigame mg = r.getMinigame();
+			if (!mg.getConfigManager().isBlockPlaceAllowed()) {
+				e.setCancelled(true);
 			}
-		}
-		if (cancelled) {
-			return;
-		}
-		Block adjBlock = MGUtil.getAttachedSign(e.getBlock());
-		if (adjBlock != null) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				for (LobbySign l : mg.getLobbyManager().signs.values()) {
-					if (l.getX() == adjBlock.getX() && l.getY() == adjBlock.getY() && l.getZ() == adjBlock.getZ() &&
-							l.getWorld().equals(adjBlock.getWorld().getName())) {
-						e.setCancelled(true);
-						break;
-					}
+			else if (e.getBlock().getType() == Material.TNT) {
+				PositionSet tnt = (PositionSet)r.getMetadata("tntBlocks");
+				if (tnt == null) {
+					tnt = new PositionSet(false);
+					r.setMetadata("tntBlocks", tnt);
 				}
+				Block b = e.getBlock();
+				tnt.add(b.getWorld().getName(), b.getX(), b.getY(), b.getZ(), (byte)0);
 			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockPistonExtend(BlockPistonExtendEvent e) {
-		boolean cancelled = false;
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockPistonAllowed()) {
-						e.setCancelled(true);
-						cancelled = true;
-						break;
-					}
-				}
-			}
-		}
-		if (cancelled) {
-			return;
-		}
-		Block adjBlock = MGUtil.getAttachedSign(e.getBlock());
-		if (adjBlock != null) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				for (LobbySign l : mg.getLobbyManager().signs.values()) {
-					if (l.getX() == adjBlock.getX() && l.getY() == adjBlock.getY() && l.getZ() == adjBlock.getZ() &&
-							l.getWorld().equals(adjBlock.getWorld().getName())) {
-						e.setCancelled(true);
-						break;
-					}
-				}
+			else {
+				mg.getRollbackManager().logBlockChange(e.getBlockReplacedState().getBlock(), r.getArena());
 			}
 		}
 	}
 
 	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockPistonRetract(BlockPistonRetractEvent e) {
-		boolean cancelled = false;
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockPistonAllowed()) {
-						e.setCancelled(true);
-						cancelled = true;
-						break;
-					}
-				}
+	public void onBlockBreak(BlockBreakEvent e) {
+		Round r = getRound(e.getPlayer());
+		if (r != null && r.isRollbackEnabled()) {
+			Minigame mg = r.getMinigame();
+			if (!mg.getConfigManager().isBlockBreakAllowed()) {
+				e.setCancelled(true);
 			}
-		}
-		if (cancelled) {
-			return;
-		}
-		Block adjBlock = MGUtil.getAttachedSign(e.getBlock());
-		if (adjBlock != null) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				for (LobbySign l : mg.getLobbyManager().signs.values()) {
-					if (l.getX() == adjBlock.getX() && l.getY() == adjBlock.getY() && l.getZ() == adjBlock.getZ() &&
-							l.getWorld().equals(adjBlock.getWorld().getName())) {
-						e.setCancelled(true);
-						break;
-					}
-				}
-			}
-		}
-	}
-
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onBlockSpread(BlockSpreadEvent e) {
-		String w = e.getBlock().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isBlockSpreadAllowed()) {
-						e.setCancelled(true);
-						break;
-					}
-				}
+			else {
+				// log anything which will fall or pop off along with the block
+				List<Block> blocks = MGUtil.getDependentBlocks(e.getBlock());
+				blocks.add(e.getBlock());
+				mg.getRollbackManager().logBlockChanges(blocks, r.getArena());
 			}
 		}
 	}
@@ -762,14 +510,10 @@ class MGListener implements Listener {
 
 	@EventHandler
 	public void onPlayerInteract(PlayerInteractEvent e) {
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			MGPlayer p = mg.getMGPlayer(e.getPlayer().getName());
-			if (p != null) {
-				if (p.isSpectating()) {
-					e.setCancelled(true);
-					return;
-				}
-			}
+		MGPlayer p = Minigame.getRegisteredPlayer(e.getPlayer().getUniqueId());
+		if (p != null && p.isSpectating()) {
+			e.setCancelled(true);
+			return;
 		}
 		if (e.getAction() == Action.LEFT_CLICK_BLOCK || e.getAction() == Action.RIGHT_CLICK_BLOCK) {
 			if (e.getClickedBlock().getState() instanceof Sign) {
@@ -816,27 +560,23 @@ class MGListener implements Listener {
 
 	@EventHandler
 	public void onPlayerCommandPreprocess(PlayerCommandPreprocessEvent e) {
+		MGPlayer mp = Minigame.getRegisteredPlayer(e.getPlayer().getUniqueId());
+		if (mp == null) {
+			return;
+		}
 		if (e.getMessage().startsWith("kit")) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				if (mg.isPlayer(e.getPlayer().getName())) {
-					if (!mg.getConfigManager().areKitsAllowed()) {
-						e.setCancelled(true);
-						e.getPlayer().sendMessage(ChatColor.RED + locale.getMessage("alert.personal.kits"));
-					}
-				}
+			if (!mp.getMinigame().getConfigManager().areKitsAllowed()) {
+				e.setCancelled(true);
+				e.getPlayer().sendMessage(ChatColor.RED + locale.getMessage("alert.personal.kits"));
 			}
 		}
 		else if (e.getMessage().startsWith("msg ") ||
 				e.getMessage().startsWith("tell ") ||
 				e.getMessage().startsWith("r ") ||
 				e.getMessage().startsWith("me ")) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				if (mg.isPlayer(e.getPlayer().getName())) {
-					if (!mg.getConfigManager().arePMsAllowed()) {
-						e.setCancelled(true);
-						e.getPlayer().sendMessage(ChatColor.RED + locale.getMessage("alert.personal.pm"));
-					}
-				}
+			if (!mp.getMinigame().getConfigManager().arePMsAllowed()) {
+				e.setCancelled(true);
+				e.getPlayer().sendMessage(ChatColor.RED + locale.getMessage("alert.personal.pm"));
 			}
 		}
 	}
@@ -844,45 +584,27 @@ class MGListener implements Listener {
 	@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
 	public void onPlayerHungerEvent(FoodLevelChangeEvent e) {
 		if (e.getEntityType() == EntityType.PLAYER) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				if (!mg.getConfigManager().isHungerEnabled() && mg.isPlayer((e.getEntity()).getName())) {
-					e.setCancelled(true);
-				}
+			MGPlayer mp = Minigame.getRegisteredPlayer(e.getEntity().getUniqueId());
+			if (mp != null && !mp.getMinigame().getConfigManager().isHungerEnabled()) {
+				e.setCancelled(true);
 			}
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	@EventHandler
 	public void onEntityExplode(EntityExplodeEvent e) {
-		String w = e.getEntity().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().areEntityExplosionsAllowed()) {
-						e.setCancelled(true);
-						break;
-					}
-				}
-			}
+		WorldPolicy policy = WorldPolicy.get(e.getEntity().getWorld());
+		if (policy != null && policy.denies(WorldPolicy.EXPLODE)) {
+			e.setCancelled(true);
 		}
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			for (Round r : mg.getRoundList()) {
-				if (r.hasMetadata("tntBlocks")) {
-					List<Location3D> list = (List<Location3D>)r.getMetadata("tntBlocks");
-					if (list.contains(new Location3D(
-							e.getLocation().getWorld().getName(),
-							e.getLocation().getBlockX(),
-							e.getLocation().getBlockY(),
-							e.getLocation().getBlockZ()
-					))) {
-						for (Block b : e.blockList()) {
-							mg.getRollbackManager().logBlockChange(b, r.getArena());
-						}
-						mg.getRollbackManager().logBlockChange(e.getLocation().getBlock(), r.getArena());
-						break;
-					}
-				}
+		Location l = e.getLocation();
+		for (Round r : ArenaIndex.getCandidates(l)) {
+			PositionSet tnt = (PositionSet)r.getMetadata("tntBlocks");
+			if (tnt != null && tnt.contains(l.getWorld().getName(), l.getBlockX(), l.getBlockY(), l.getBlockZ(), (byte)0)) {
+				List<Block> blocks = new ArrayList<Block>(e.blockList());
+				blocks.add(l.getBlock());
+				r.getMinigame().getRollbackManager().logBlockChanges(blocks, r.getArena());
+				break;
 			}
 		}
 	}
@@ -890,81 +612,161 @@ class MGListener implements Listener {
 	@EventHandler
 	public void onAsyncPlayerChat(AsyncPlayerChatEvent e) {
 		List<Player> remove = new ArrayList<Player>();
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			if (mg.getConfigManager().isPerRoundChatEnabled()) {
-				MGPlayer sender = mg.getMGPlayer(e.getPlayer().getName());
-				for (Player pl : e.getRecipients()) {
-					MGPlayer recipient = mg.getMGPlayer(pl.getName());
-					if ((sender == null) != (recipient == null)) {
-						remove.add(pl);
-					}
-					else if (sender != null && recipient != null) {
-						if (!sender.getRound().getArena().equals(recipient.getRound().getArena())) {
-							remove.add(pl);
-						}
-						else if (mg.getConfigManager().isTeamChatEnabled() &&
-								(sender.getTeam() != null &&
-										!sender.getTeam().equals(recipient.getTeam()))) {
-							remove.add(pl);
-						}
-						else if (mg.getConfigManager().isSpectatorChatSeparate() &&
-								sender.isSpectating() &&
-								!recipient.isSpectating()) {
-							remove.add(pl);
-						}
-					}
+		MGPlayer sender = Minigame.getRegisteredPlayer(e.getPlayer().getUniqueId());
+		boolean senderSeparated = sender != null && sender.getMinigame().getConfigManager().isPerRoundChatEnabled();
+		for (Player pl : e.getRecipients()) {
+			MGPlayer recipient = Minigame.getRegisteredPlayer(pl.getUniqueId());
+			if (recipient == null && sender == null) {
+				continue;
+			}
+			if (sender == null || recipient == null || !sender.getPlugin().equals(recipient.getPlugin())) {
+				// only one of them is in a round of the minigame separating the chat
+				if (senderSeparated ||
+						(recipient != null && recipient.getMinigame().getConfigManager().isPerRoundChatEnabled())) {
+					remove.add(pl);
+				}
+			}
+			else if (senderSeparated) {
+				ConfigManager cm = sender.getMinigame().getConfigManager();
+				if (!sender.getRound().getArena().equals(recipient.getRound().getArena())) {
+					remove.add(pl);
+				}
+				else if (cm.isTeamChatEnabled() &&
+						(sender.getTeam() != null &&
+								!sender.getTeam().equals(recipient.getTeam()))) {
+					remove.add(pl);
+				}
+				else if (cm.isSpectatorChatSeparate() &&
+						sender.isSpectating() &&
+						!recipient.isSpectating()) {
+					remove.add(pl);
 				}
 			}
 		}
 		e.getRecipients().removeAll(remove);
 	}
 
-	@EventHandler
-	public void onCreatureSpawn(CreatureSpawnEvent e) {
-		String w = e.getEntity().getWorld().getName();
-		for (String p : worlds.keySet()) {
-			for (int i = 0; i < worlds.get(p).size(); i++) {
-				if (worlds.get(p).get(i).equals(w)) {
-					if (!Minigame.getMinigameInstance(p).getConfigManager().isMobSpawningAllowed()) {
-						e.setCancelled(true);
-						break;
-					}
-				}
+	// CreatureSpawnEvent, ItemSpawnEvent and ProjectileLaunchEvent share this event's handler list
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onEntitySpawn(EntitySpawnEvent e) {
+		Entity entity = e.getEntity();
+		if (entity instanceof Projectile && ((Projectile)entity).getShooter() instanceof Player) {
+			Round r = getRound((Player)((Projectile)entity).getShooter());
+			if (r != null) {
+				r.trackEntity(entity);
+				return;
+			}
+		}
+		for (Round r : ArenaIndex.getCandidates(e.getLocation())) {
+			if ((r.getStage() == Stage.PREPARING || r.getStage() == Stage.PLAYING) && r.isWithinBounds(e.getLocation())) {
+				r.trackEntity(entity);
+				return;
 			}
 		}
 	}
 
-	@EventHandler(priority = EventPriority.HIGHEST)
-	public void onEntityTarget(EntityTargetEvent e) {
-		if (e.getTarget() != null && e.getTarget().getType() == EntityType.PLAYER) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				MGPlayer mp = mg.getMGPlayer(((Player)e.getTarget()).getName());
-				if (mp != null && (!mg.getConfigManager().isEntityTargetingEnabled() || mp.isSpectating())) {
-					e.setCancelled(true);
-				}
+	// falling blocks don't fire a spawn event, but do change the block they start from on their first tick
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onEntityChangeBlock(EntityChangeBlockEvent e) {
+		if (!(e.getEntity() instanceof FallingBlock) || e.getTo() != Material.AIR) {
+			return;
+		}
+		for (Round r : ArenaIndex.getCandidates(e.getBlock())) {
+			if ((r.getStage() == Stage.PREPARING || r.getStage() == Stage.PLAYING) && r.isWithinBounds(e.getBlock())) {
+				r.trackEntity(e.getEntity());
+				return;
 			}
 		}
 	}
 
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onPlayerDropItem(PlayerDropItemEvent e) {
+		Round r = getRound(e.getPlayer());
+		if (r != null) {
+			r.trackEntity(e.getItemDrop());
+		}
+	}
+
+	private static Round getRound(Player player) {
+		return Minigame.getRegisteredRound(player.getUniqueId());
+	}
+
 	@EventHandler(priority = EventPriority.HIGHEST)
 	public void onHangingBreak(HangingBreakByEntityEvent e) {
 		if (e.getRemover() instanceof Player ||
 				(e.getRemover() instanceof Projectile &&
 						((Projectile)e.getRemover()).getShooter() instanceof Player)) {
-			for (Minigame mg : Minigame.getMinigameInstances()) {
-				if (!mg.getConfigManager().isHangingBreakAllowed() && mg.isPlayer(e.getRemover() instanceof Player ?
-				                                                                  ((Player)e.getRemover()).getName() :
-				                                                                  ((Player)((Projectile)e.getRemover()).getShooter()).getName())) {
-					e.setCancelled(true);
+			Player remover = e.getRemover() instanceof Player ?
+			                 (Player)e.getRemover() :
+			                 (Player)((Projectile)e.getRemover()).getShooter();
+			MGPlayer mp = Minigame.getRegisteredPlayer(remover.getUniqueId());
+			if (mp != null && !mp.getMinigame().getConfigManager().isHangingBreakAllowed()) {
+				e.setCancelled(true);
+			}
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onHangingBreakMonitor(HangingBreakEvent e) {
+		logHanging(e.getEntity(), false);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onHangingPlace(HangingPlaceEvent e) {
+		logHanging(e.getEntity(), true);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onHangingDamage(EntityDamageEvent e) {
+		if (e.getEntity() instanceof Hanging) { // item frames drop their item when damaged
+			logHanging((Hanging)e.getEntity(), false);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onPlayerInteractEntity(PlayerInteractEntityEvent e) {
+		if (e.getRightClicked() instanceof ItemFrame) { // the item is either placed or rotated
+			logHanging((Hanging)e.getRightClicked(), false);
+		}
+	}
+
+	private static void logHanging(Hanging hanging, boolean placed) {
+		Block block = hanging.getLocation().getBlock();
+		for (Round r : ArenaIndex.getCandidates(block)) {
+			if (r.isRollbackEnabled() && r.getStage() != Stage.RESETTING && r.isWithinBounds(block)) {
+				if (placed) {
+					r.getRollbackManager().logHangingPlacement(hanging, r.getArena());
+				}
+				else {
+					r.getRollbackManager().logHangingChange(hanging, r.getArena());
 				}
+				return;
 			}
 		}
 	}
 
+	@EventHandler
+	public void onChunkLoad(ChunkLoadEvent event) {
+		for (Minigame mg : Minigame.getMinigameInstances()) {
+			mg.getRollbackManager().restoreDeferred(event.getChunk());
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onWorldLoad(WorldLoadEvent event) {
+		WorldPolicy.invalidate(); // policies are keyed by world UUID, which is unknown until the world is loaded
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onWorldUnload(WorldUnloadEvent event) {
+		WorldPolicy.invalidate();
+	}
+
 	@EventHandler
 	public void onPluginDisable(PluginDisableEvent event) {
 		for (Minigame mg : Minigame.getMinigameInstances()) {
 			if (mg.getPlugin().getName().equals(event.getPlugin().getName())) {
+				mg.getRollbackManager().close();
 				Minigame.unregisterPlugin(event.getPlugin().getName());
 			}
 		}
@@ -39,10 +39,15 @@ import org.bukkit.block.Sign;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.event.EventException;
 import org.bukkit.event.HandlerList;
+import org.bukkit.material.Attachable;
+import org.bukkit.material.MaterialData;
+import org.bukkit.material.Rails;
 import org.bukkit.plugin.RegisteredListener;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Utility methods for use within MGLib. Developers are advised not to use them
@@ -53,6 +58,10 @@ import java.io.File;
  */
 public class MGUtil {
 
+	private static final BlockFace[] DEPENDENT_FACES = new BlockFace[]{
+			BlockFace.UP, BlockFace.NORTH, BlockFace.SOUTH, BlockFace.EAST, BlockFace.WEST, BlockFace.DOWN
+	};
+
 	static Main plugin;
 
 	/**
@@ -232,6 +241,50 @@ public class MGUtil {
 		return null;
 	}
 
+	/**
+	 * Retrieves the blocks which will break or fall along with the given
+	 * block: the contiguous column of gravity-affected blocks above it, and
+	 * any torches, signs, ladders, rails or other attachable blocks resting
+	 * on it or on that column.
+	 *
+	 * @param block the block to retrieve the dependent blocks of
+	 * @return the blocks depending on the given block, not including the
+	 *         block itself
+	 * @since 0.4.3
+	 */
+	public static List<Block> getDependentBlocks(Block block) {
+		List<Block> dependents = new ArrayList<Block>();
+		Block support = block;
+		while (true) {
+			for (BlockFace face : DEPENDENT_FACES) {
+				Block adjBlock = support.getRelative(face);
+				if (isAttached(adjBlock, face.getOppositeFace())) {
+					dependents.add(adjBlock);
+				}
+			}
+			if (support.getY() + 1 >= support.getWorld().getMaxHeight()) {
+				break;
+			}
+			Block above = support.getRelative(BlockFace.UP);
+			if (!above.getType().hasGravity()) { // the column ends at the first block which won't fall
+				break;
+			}
+			dependents.add(above);
+			support = above;
+		}
+		return dependents;
+	}
+
+	@SuppressWarnings("deprecation")
+	private static boolean isAttached(Block block, BlockFace face) {
+		// avoid creating a BlockState for every neighbor
+		MaterialData data = block.getType().getNewData(block.getData());
+		if (data instanceof Attachable) {
+			return ((Attachable)data).getAttachedFace() == face;
+		}
+		return data instanceof Rails && face == BlockFace.DOWN;
+	}
+
 	/**
 	 * Determines the environment of the given world based on its folder
 	 * structure.
@@ -263,7 +316,11 @@ public class MGUtil {
 	 *
 	 * @param folder the folder to delete
 	 * @since 0.3.0
+	 * @deprecated Blocks the calling thread for as long as the deletion takes
+	 * and leaves the emptied folder behind. Use {@link
+	 * MGUtil#deleteFolderAsync(File)} instead.
 	 */
+	@Deprecated
 	public static void deleteFolder(File folder) {
 		for (File f : folder.listFiles()) {
 			if (f.isDirectory()) {
@@ -275,6 +332,32 @@ public class MGUtil {
 		}
 	}
 
+	/**
+	 * Deletes a file or folder recursively off the main thread.
+	 *
+	 * @param folder the file or folder to delete
+	 * @since 0.4.3
+	 */
+	public static void deleteFolderAsync(final File folder) {
+		Bukkit.getScheduler().runTaskAsynchronously(getPlugin(), new Runnable() {
+			public void run() {
+				if (!delete(folder)) {
+					Main.log("Failed to delete " + folder.getPath(), LogLevel.WARNING);
+				}
+			}
+		});
+	}
+
+	private static boolean delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		return file.delete() || !file.exists();
+	}
+
 	/**
 	 * Throws an {@link UnsupportedOperationException} if MGLib is not
 	 * disabling.
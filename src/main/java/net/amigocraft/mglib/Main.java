@@ -99,6 +99,7 @@ public class Main extends JavaPlugin {
 		MGUtil.plugin = this;
 		log = getLogger();
 		Bukkit.getPluginManager().registerEvents(new MGListener(), this);
+		EnvironmentListener.update(); // in case minigames hooked in before MGLib was (re)enabled
 		saveDefaultConfig();
 		IMMEDIATE_LOGGING = getConfig().getBoolean("immediate-logging");
 		LOGGING_LEVEL = LogLevel.valueOf(getConfig().getString("logging-level").toUpperCase());
@@ -159,6 +160,8 @@ public class Main extends JavaPlugin {
 			for (Round r : mg.getRoundList()) {
 				r.end(false);
 			}
+			mg.getRollbackManager().close();
+			mg.getInstanceManager().close();
 		}
 		Minigame.uninitialize();
 		MGLibEvent.uninitialize();
@@ -178,9 +181,59 @@ public class Main extends JavaPlugin {
 		MGListener.addWorlds(plugin);
 	}
 
+	/**
+	 * <p>This method should not be called from your plugin. So don't use it.
+	 * Please.</p>
+	 *
+	 * <p>Marks the precomputed per-world policies of MGLib's event listener as
+	 * stale, so that they are rebuilt from the registered worlds and the
+	 * minigames' configs the next time they are needed, and registers or
+	 * unregisters the handlers for environmental events to match the
+	 * minigames' configs.</p>
+	 *
+	 * @since 0.4.3
+	 */
+	public static void invalidateWorldPolicies() {
+		WorldPolicy.invalidate();
+		EnvironmentListener.update();
+	}
+
+	/**
+	 * <p>This method should not be called from your plugin. So don't use it.
+	 * Please.</p>
+	 *
+	 * <p>Marks the lobby sign index of MGLib's event listener as stale, so
+	 * that it is rebuilt from the registered minigames' lobby signs the next
+	 * time it is needed, and registers or unregisters the handlers protecting
+	 * lobby signs depending on whether any remain.</p>
+	 *
+	 * @since 0.4.3
+	 */
+	public static void invalidateLobbySignIndex() {
+		LobbySignIndex.invalidate();
+		EnvironmentListener.update();
+	}
+
+	/**
+	 * <p>This method should not be called from your plugin. So don't use it.
+	 * Please.</p>
+	 *
+	 * <p>Marks the arena index of MGLib's event listener as stale, so that it
+	 * is rebuilt from the boundaries of the live rounds the next time it is
+	 * needed, and registers or unregisters the handlers needed only while a
+	 * round exists.</p>
+	 *
+	 * @since 0.4.3
+	 */
+	public static void invalidateArenaIndex() {
+		ArenaIndex.invalidate();
+		EnvironmentListener.update();
+	}
+
 	private static void uninitialize() {
 		log = null;
 		MGUtil.plugin = null;
+		EnvironmentListener.reset();
 	}
 
 	/**
@@ -210,12 +263,27 @@ public class Main extends JavaPlugin {
 	 * plugin.
 	 *
 	 * @param plugin the plugin to retrieve worlds for
-	 * @return worlds registered with MGLib's event listener for the given
-	 * plugin
+	 * @return an unmodifiable view of the worlds registered with MGLib's event
+	 * listener for the given plugin
 	 * @since 0.4.0
 	 */
 	public static List<String> getWorlds(String plugin) {
-		return MGListener.getWorlds();
+		return MGListener.getWorlds(plugin);
+	}
+
+	/**
+	 * <p>This method should not be called from your plugin. So don't use it.
+	 * Please.</p>
+	 *
+	 * <p>Registers the given world with MGLib's event listener for the given
+	 * plugin if it isn't registered already.</p>
+	 *
+	 * @param plugin the plugin to register the world for
+	 * @param world  the name of the world to register
+	 * @since 0.4.3
+	 */
+	public static void registerWorld(String plugin, String world) {
+		MGListener.addWorld(plugin, world);
 	}
 
 	/**
@@ -23,34 +23,118 @@
  */
 package net.amigocraft.mglib;
 
+import net.amigocraft.mglib.api.LogLevel;
 import net.amigocraft.mglib.api.Minigame;
+import net.amigocraft.mglib.api.ResetMode;
 import net.amigocraft.mglib.api.Round;
 import net.amigocraft.mglib.api.Stage;
 import net.amigocraft.mglib.event.round.MinigameRoundRollbackEvent;
+import net.amigocraft.mglib.event.round.MinigameRoundRollbackProgressEvent;
+import net.amigocraft.mglib.rollback.ChangeSet;
+import net.amigocraft.mglib.rollback.JournalRecord;
+import net.amigocraft.mglib.rollback.JournalWriter;
+import net.amigocraft.mglib.rollback.PositionSet;
+import net.amigocraft.mglib.rollback.RegionSnapshot;
+import net.amigocraft.mglib.rollback.RollbackJournal;
+import net.amigocraft.mglib.rollback.SectionChecksums;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.block.Sign;
+import org.bukkit.block.BlockState;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.entity.Hanging;
+import org.bukkit.entity.ItemFrame;
+import org.bukkit.entity.Painting;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class RollbackManager {
 
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// kinds of hanging entities originally occupying a block
+	static final int NO_HANGING = 0;
+	static final int PAINTING = 1;
+	static final int ITEM_FRAME = 2;
+
 	private static boolean logging;
 	private File f = null;
-	private YamlConfiguration y = null;
+	private JournalWriter journal = null;
+	private JournalWriter deferredJournal = null;
+	private long reportedStalls = 0;
+	private boolean recovered = false;
+	private boolean checkPending = false;
 	private JavaPlugin plugin = null;
 
+	private HashMap<String, ChangeSet> blockChanges = new HashMap<String, ChangeSet>();
+	private HashMap<String, ChangeSet> inventoryChanges = new HashMap<String, ChangeSet>();
+	private HashMap<String, ItemPool> itemPools = new HashMap<String, ItemPool>();
+	private HashMap<String, ChangeSet> hangingChanges = new HashMap<String, ChangeSet>();
+	// the number of changes dropped from memory per arena, which must be streamed back from its journal
+	private HashMap<String, Integer> spilledChanges = new HashMap<String, Integer>();
+	// positions of the changes dropped from memory per arena, so that their blocks aren't logged again
+	private HashMap<String, PositionSet> spilledBlocks = new HashMap<String, PositionSet>();
+	private HashMap<String, PositionSet> spilledInventories = new HashMap<String, PositionSet>();
+	private HashMap<String, PositionSet> spilledHangings = new HashMap<String, PositionSet>();
+	private long memoryCap;
+
+	// changes which could not be restored because their chunk was unloaded, by world and chunk
+	private HashMap<String, HashMap<Long, List<JournalRecord>>> deferred =
+			new HashMap<String, HashMap<Long, List<JournalRecord>>>();
+
+	// region snapshots of arenas reset by diffing, which may still be in the process of being captured
+	private HashMap<String, Future<RegionSnapshot>> snapshots = new HashMap<String, Future<RegionSnapshot>>();
+	// chunks covered by snapshots which are still being captured, by arena
+	private HashMap<String, Set<Long>> capturingChunks = new HashMap<String, Set<Long>>();
+	// arenas whose rollback waits for their snapshot to finish capturing
+	private HashSet<String> waitingRollbacks = new HashSet<String>();
+	private HashMap<RegionSnapshot, PendingSnapshot> pendingSnapshots = new HashMap<RegionSnapshot, PendingSnapshot>();
+	private HashMap<String, HashMap<Long, List<RegionSnapshot>>> deferredSnapshots =
+			new HashMap<String, HashMap<Long, List<RegionSnapshot>>>();
+
+	private HashMap<String, RollbackTask> tasks = new HashMap<String, RollbackTask>();
+	private int maxChanges;
+	private int maxMicros;
+
 	EntityDamageEvent lastEvent;
 
 	/**
@@ -60,23 +144,40 @@ public class RollbackManager {
 	 * @since 0.1.0
 	 */
 	public RollbackManager(JavaPlugin plugin) {
-		f = new File(plugin.getDataFolder(), "rollback.yml");
+		this.plugin = plugin;
+		f = new File(plugin.getDataFolder(), "rollback");
 		if (!plugin.getDataFolder().exists()) {
 			plugin.getDataFolder().mkdirs();
 		}
+		logging = MGUtil.getPlugin().getConfig().getBoolean("rollback-logging");
+		maxChanges = Math.max(MGUtil.getPlugin().getConfig().getInt("rollback-changes-per-tick", 0), 0);
+		maxMicros = Math.max(MGUtil.getPlugin().getConfig().getInt("rollback-micros-per-tick", 0), 0);
+		int syncInterval = MGUtil.getPlugin().getConfig().getInt("rollback-sync-interval", 64);
+		int capacity = MGUtil.getPlugin().getConfig().getInt("rollback-queue-capacity", 8192);
+		long syncMillis = MGUtil.getPlugin().getConfig().getLong("rollback-sync-millis", 1000L);
+		memoryCap = Math.max(MGUtil.getPlugin().getConfig().getLong("rollback-memory-per-arena", 65536L), 0L) * 1024L;
 		try {
-			if (!f.exists()) {
-				f.createNewFile();
+			// each arena's changes are journaled separately so that clearing them doesn't touch any other arena's
+			journal = new JournalWriter(f, null, syncInterval, capacity, syncMillis, true);
+			journal.start();
+			// deferred changes are replayed in order rather than first-wins, so they mustn't be coalesced
+			deferredJournal = new JournalWriter(plugin.getDataFolder(), "deferred", syncInterval, capacity, syncMillis,
+					false);
+			deferredJournal.start();
+			recover();
+			if (logging) {
+				Bukkit.getScheduler().runTaskTimer(MGUtil.getPlugin(), new Runnable() {
+					public void run() {
+						checkWriters();
+					}
+				}, 20L, 20L);
 			}
-			y = new YamlConfiguration();
-			y.load(f);
 		}
 		catch (Exception ex) {
 			ex.printStackTrace();
 			Main.log.severe("An exception occurred while initializing the rollback manager for plugin " +
 					plugin.getName());
 		}
-		logging = MGUtil.getPlugin().getConfig().getBoolean("rollback-logging");
 	}
 
 	/**
@@ -97,31 +198,88 @@ public class RollbackManager {
 	 * @since 0.1.0
 	 */
 	public void logBlockChange(Block block, String arena) {
-		if (!y.isSet(arena + ".blockChanges." + block.getX() + "," + block.getY() + "," + block.getZ())) {
-			y.createSection(arena + ".blockChanges." + block.getX() + "," + block.getY() + "," + block.getZ());
+		settle(arena, block.getWorld(), block.getX(), block.getZ());
+		if (isInstanced(arena) || isSnapshotted(arena, block)) { // the arena will be reset from a snapshot or copy instead
+			return;
 		}
-		ConfigurationSection cs = y.getConfigurationSection(arena + ".blockChanges." +
-				block.getX() + "," + block.getY() + "," + block.getZ());
-		cs.set("world", block.getWorld().getName());
-		if (!cs.isSet("type")) { // make sure it hasn't already been changed
-			cs.set("type", block.getType().toString());
-			@SuppressWarnings("deprecation")
-			int data = block.getData();
-			cs.set("data", data);
-			if (block.getState() instanceof Sign) {
-				for (int i = 0; i < 4; i++) {
-					cs.set("sign-text-" + i, ((Sign)block.getState()).getLine(i));
-				}
-			}
+		List<JournalRecord> records = new ArrayList<JournalRecord>(1);
+		if (logBlock(block, arena, getChanges(blockChanges, arena, JournalRecord.BLOCK), records)) {
+			appendAll(records, arena);
+			checkMemory(arena);
 		}
-		if (logging) {
-			try {
-				y.save(f);
-			}
-			catch (Exception ex) {
-				Main.log.severe("An exception occurred while saving data for arena " + arena);
+	}
+
+	/**
+	 * Logs changes to multiple blocks at once, e.g. those destroyed by an
+	 * explosion. This is considerably cheaper than logging each block
+	 * individually.
+	 *
+	 * @param blocks the blocks which were changed
+	 * @param arena  the arena in which the blocks are contained
+	 * @since 0.4.3
+	 */
+	public void logBlockChanges(Collection<Block> blocks, String arena) {
+		if (isInstanced(arena)) { // the arena will be reset from a copy instead
+			return;
+		}
+		ChangeSet changes = getChanges(blockChanges, arena, JournalRecord.BLOCK);
+		List<JournalRecord> records = new ArrayList<JournalRecord>(blocks.size());
+		for (Block block : blocks) {
+			settle(arena, block.getWorld(), block.getX(), block.getZ());
+			if (isSnapshotted(arena, block)) { // the block will be reset from a snapshot instead
+				continue;
 			}
+			logBlock(block, arena, changes, records);
+		}
+		appendAll(records, arena);
+		checkMemory(arena);
+	}
+
+	/**
+	 * Adds the original state of the given block to the given change set if
+	 * it hasn't been changed yet.
+	 *
+	 * @param block   the block which was changed
+	 * @param arena   the arena in which the block is contained
+	 * @param changes the changes logged for the arena
+	 * @param records the list to add the records to journal for the change
+	 *                to, i.e. any item stacks it pools and the change itself
+	 * @return whether the change was logged, i.e. the block hadn't been
+	 *         changed yet
+	 */
+	@SuppressWarnings("deprecation")
+	private boolean logBlock(Block block, String arena, ChangeSet changes, List<JournalRecord> records) {
+		String world = block.getWorld().getName();
+		if (changes.contains(world, block.getX(), block.getY(), block.getZ()) ||
+				isSpilled(spilledBlocks, arena, world, block.getX(), block.getY(), block.getZ(), (byte)0)) {
+			return false; // make sure it hasn't already been changed
 		}
+		BlockState state = block.getState(); // read once, since each read copies the block's tile entity
+		JournalRecord record = new JournalRecord(JournalRecord.BLOCK, arena, world, block.getX(), block.getY(),
+				block.getZ(), state.getTypeId(), state.getRawData(), BlockCodec.capture(state, getItemPool(arena), arena, records));
+		changes.add(record);
+		records.add(record);
+		return true;
+	}
+
+	/**
+	 * Retrieves the pool of item stacks the logged contents of the given
+	 * arena's containers are encoded against, creating it if necessary.
+	 *
+	 * @param arena the arena to retrieve the pool for
+	 * @return the arena's pool, or <code>null</code> if its journal hasn't
+	 *         been recovered yet
+	 */
+	private ItemPool getItemPool(String arena) {
+		if (!recovered) {
+			return null; // the arena's pool may yet be recovered from its journal, so it can't be referenced until then
+		}
+		ItemPool items = itemPools.get(arena);
+		if (items == null) {
+			items = new ItemPool();
+			itemPools.put(arena, items);
+		}
+		return items;
 	}
 
 	/**
@@ -133,136 +291,1511 @@ public class RollbackManager {
 	 * @since 0.1.0
 	 */
 	public void logInventoryChange(Inventory inventory, Block block, String arena) {
-		if (!y.isSet(arena + ".inventoryChanges." + block.getX() + "," + block.getY() + "," + block.getZ())) {
-			y.createSection(arena + ".inventoryChanges." + block.getX() + "," + block.getY() + "," + block.getZ());
+		settle(arena, block.getWorld(), block.getX(), block.getZ());
+		if (isInstanced(arena) || isSnapshotted(arena, block)) { // the arena will be reset from a snapshot or copy instead
+			return;
 		}
-		ConfigurationSection cs = y.getConfigurationSection(arena + ".inventoryChanges." +
-				block.getX() + "," + block.getY() + "," + block.getZ());
-		cs.set("world", block.getWorld().getName());
-		if (!cs.isSet("inventory")) { // make sure it hasn't already been changed
-			for (int i = 0; i < inventory.getSize(); i++) {
-				ItemStack is = inventory.getItem(i);
-				if (is != null) {
-					cs.set("inventory." + i, is);
-				}
-			}
+		ChangeSet changes = getChanges(inventoryChanges, arena, JournalRecord.INVENTORY);
+		String world = block.getWorld().getName();
+		if (changes.contains(world, block.getX(), block.getY(), block.getZ()) ||
+				isSpilled(spilledInventories, arena, world, block.getX(), block.getY(), block.getZ(), (byte)0)) {
+			return; // make sure it hasn't already been changed
 		}
-		if (logging) {
-			try {
-				y.save(f);
-			}
-			catch (Exception ex) {
-				Main.log.severe("An exception occurred while saving data for arena " + arena);
+		ChangeSet blocks = blockChanges.get(arena);
+		if ((blocks != null && blocks.contains(world, block.getX(), block.getY(), block.getZ())) ||
+				isSpilled(spilledBlocks, arena, world, block.getX(), block.getY(), block.getZ(), (byte)0)) {
+			return; // the block's logged change already holds the container's original contents
+		}
+		List<JournalRecord> records = new ArrayList<JournalRecord>(2);
+		ItemPool items = getItemPool(arena);
+		byte[] payload = items != null ? items.encode(inventory.getContents(), arena, records) :
+				encodeInventory(inventory.getContents());
+		JournalRecord record = new JournalRecord(JournalRecord.INVENTORY, arena, world,
+				block.getX(), block.getY(), block.getZ(), 0, (byte)0, payload);
+		changes.add(record);
+		records.add(record);
+		appendAll(records, arena);
+		checkMemory(arena);
+	}
+
+	/**
+	 * Logs the state of a hanging entity (i.e. a painting or item frame)
+	 * before it is damaged, broken or otherwise changed, so that it may be
+	 * respawned or reset when its arena is rolled back. Only the first change
+	 * to the entity occupying a given block with a given facing is logged.
+	 *
+	 * @param hanging the hanging entity which is about to change
+	 * @param arena   the arena in which the entity is contained
+	 * @since 0.4.3
+	 */
+	public void logHangingChange(Hanging hanging, String arena) {
+		logHanging(hanging, hanging instanceof ItemFrame ? ITEM_FRAME : PAINTING, arena);
+	}
+
+	/**
+	 * Logs the placement of a hanging entity (i.e. a painting or item frame)
+	 * so that it is removed when its arena is rolled back.
+	 *
+	 * @param hanging the hanging entity which was placed
+	 * @param arena   the arena in which the entity is contained
+	 * @since 0.4.3
+	 */
+	public void logHangingPlacement(Hanging hanging, String arena) {
+		logHanging(hanging, NO_HANGING, arena);
+	}
+
+	private void logHanging(Hanging hanging, int type, String arena) {
+		Location l = hanging.getLocation();
+		settle(arena, l.getWorld(), l.getBlockX(), l.getBlockZ());
+		if (isInstanced(arena)) {
+			return;
+		}
+		ChangeSet changes = getChanges(hangingChanges, arena, JournalRecord.HANGING);
+		String world = l.getWorld().getName();
+		// several hanging entities may share a block, so they're told apart by facing
+		byte facing = RollbackTask.getFacingCode(hanging);
+		if (changes.contains(world, l.getBlockX(), l.getBlockY(), l.getBlockZ(), facing) ||
+				isSpilled(spilledHangings, arena, world, l.getBlockX(), l.getBlockY(), l.getBlockZ(), facing)) {
+			return; // make sure it hasn't already been changed
+		}
+		JournalRecord record = new JournalRecord(JournalRecord.HANGING, arena, world, l.getBlockX(), l.getBlockY(),
+				l.getBlockZ(), type, facing, type != NO_HANGING ? encodeHanging(hanging) : null);
+		changes.add(record);
+		append(record);
+		checkMemory(arena);
+	}
+
+	/**
+	 * Checks whether the given arena is played in a copy of its world, which
+	 * is discarded rather than rolled back.
+	 *
+	 * @param arena the arena to check
+	 * @return whether the given arena is played in a copy of its world
+	 */
+	private boolean isInstanced(String arena) {
+		Minigame mg = Minigame.getMinigameInstance(plugin.getName());
+		Round r = mg != null ? mg.getRound(arena) : null;
+		return r != null && r.isInstanced();
+	}
+
+	/**
+	 * Drops the changes logged for the given arena from memory if they
+	 * exceed the configured limit. Since every change is also journaled,
+	 * they are streamed back from the arena's journal when it is rolled back.
+	 *
+	 * @param arena the arena to check
+	 */
+	private void checkMemory(String arena) {
+		if (memoryCap <= 0 || !logging || journal == null) {
+			return;
+		}
+		RollbackTask task = tasks.get(arena);
+		if (task != null && task.isReopened()) {
+			return; // the changes are journaled anew once the rollback completes, so they mustn't be dropped until then
+		}
+		ChangeSet blocks = blockChanges.get(arena);
+		ChangeSet inventories = inventoryChanges.get(arena);
+		ChangeSet hangings = hangingChanges.get(arena);
+		long usage = (blocks != null ? blocks.getMemoryUsage() : 0) +
+				(inventories != null ? inventories.getMemoryUsage() : 0) +
+				(hangings != null ? hangings.getMemoryUsage() : 0);
+		if (usage <= memoryCap) {
+			return;
+		}
+		// only the positions are kept, so that changes to blocks which have already been logged are still ignored
+		long retained = spill(blockChanges, spilledBlocks, arena, JournalRecord.BLOCK) +
+				spill(inventoryChanges, spilledInventories, arena, JournalRecord.INVENTORY) +
+				spill(hangingChanges, spilledHangings, arena, JournalRecord.HANGING);
+		Integer spilled = spilledChanges.get(arena);
+		spilledChanges.put(arena, (spilled != null ? spilled : 0) + size(blocks) + size(inventories) + size(hangings));
+		Main.log("Dropped " + (usage / 1024) + " KB of logged changes for arena " + arena +
+				" from memory; they will be read back from its journal (" + (retained / 1024) +
+				" KB of logged positions retained)", LogLevel.DEBUG);
+	}
+
+	/**
+	 * Drops the changes of a single kind logged for the given arena from
+	 * memory, retaining only their positions.
+	 *
+	 * @return the approximate memory usage of the retained positions in bytes
+	 */
+	private static long spill(HashMap<String, ChangeSet> changes, HashMap<String, PositionSet> spilled, String arena,
+	                          byte kind) {
+		ChangeSet dropped = changes.remove(arena);
+		PositionSet positions = spilled.get(arena);
+		if (dropped != null) {
+			if (positions == null) {
+				positions = PositionSet.forKind(kind);
+				spilled.put(arena, positions);
 			}
+			positions.addAll(dropped);
 		}
+		return positions != null ? positions.getMemoryUsage() : 0;
+	}
+
+	private static boolean isSpilled(HashMap<String, PositionSet> spilled, String arena, String world, int x, int y,
+	                                 int z, byte data) {
+		PositionSet positions = spilled.get(arena);
+		return positions != null && positions.contains(world, x, y, z, data);
+	}
+
+	private static int size(ChangeSet changes) {
+		return changes != null ? changes.size() : 0;
+	}
+
+	/**
+	 * Retrieves the number of changes logged for the given arena which are
+	 * currently held in memory.
+	 *
+	 * @param arena the arena to check
+	 * @return the number of changes held in memory for the given arena
+	 * @since 0.4.3
+	 */
+	public int getInMemoryChanges(String arena) {
+		return size(blockChanges.get(arena)) + size(inventoryChanges.get(arena)) + size(hangingChanges.get(arena));
+	}
+
+	/**
+	 * Retrieves the number of changes logged for the given arena which have
+	 * been dropped from memory because the arena exceeded the
+	 * <code>rollback-memory-per-arena</code> limit, and which will be
+	 * streamed back from the arena's journal when it is rolled back.
+	 *
+	 * @param arena the arena to check
+	 * @return the number of changes dropped from memory for the given arena
+	 * @since 0.4.3
+	 */
+	public int getSpilledChanges(String arena) {
+		Integer spilled = spilledChanges.get(arena);
+		return spilled != null ? spilled : 0;
 	}
 
 	/**
 	 * Rolls back the given arena.
 	 *
+	 * <p>Depending on the <code>rollback-changes-per-tick</code> and
+	 * <code>rollback-micros-per-tick</code> settings, the arena may be
+	 * restored over multiple ticks. Its round then remains in
+	 * {@link Stage#RESETTING} until the rollback has completed, at which
+	 * point it is set to {@link Stage#WAITING}.</p>
+	 *
+	 * <p>If a spawn restore radius is configured, the round is instead set
+	 * to {@link Stage#WAITING} as soon as the changes near its spawns have
+	 * been restored, and the remaining changes are restored in the
+	 * background.</p>
+	 *
+	 * <p>If the arena's snapshot is still being captured, the rollback waits
+	 * for it a tick at a time, with the round already in
+	 * {@link Stage#RESETTING}.</p>
+	 *
 	 * <p>This method <strong>should not</strong> be called from your plugin unless
 	 * you understand the implications.</p>
 	 *
 	 * @param arena the arena to roll back
 	 * @since 0.1.0
 	 */
-	@SuppressWarnings("deprecation")
 	public void rollback(String arena) {
-		Round r = null;
-		for (Minigame mg : Minigame.getMinigameInstances()) {
-			r = mg.getRound(arena);
+		RollbackTask running = tasks.get(arena);
+		if (running != null) { // don't let two rollbacks of the same arena interleave
+			running.cancel();
+			running.finish();
+			complete(running);
+		}
+		Minigame mg = Minigame.getMinigameInstance(plugin.getName());
+		Round r = mg != null ? mg.getRound(arena) : null;
+		Future<RegionSnapshot> capture = snapshots.get(arena);
+		if (capture != null && !capture.isDone() && plugin.isEnabled() && MGUtil.getPlugin().isEnabled()) {
+			// rather than stall the server until the arena's copy has been captured, try again next tick
+			if (r != null) {
+				r.setStage(Stage.RESETTING);
+			}
+			deferRollback(arena);
+			return;
 		}
+		waitingRollbacks.remove(arena);
 		if (r != null) {
 			r.setStage(Stage.RESETTING);
 			MGUtil.callEvent(new MinigameRoundRollbackEvent(r));
 		}
-		ConfigurationSection cs = y.getConfigurationSection(arena + ".blockChanges");
-		if (cs != null) {
-			for (String k : cs.getKeys(false)) {
-				String[] coords = k.split(",");
-				double x = Double.NaN, y = Double.NaN, z = Double.NaN;
-				if (MGUtil.isInteger(coords[0])) {
-					x = Integer.parseInt(coords[0]);
-				}
-				if (MGUtil.isInteger(coords[1])) {
-					y = Integer.parseInt(coords[1]);
-				}
-				if (MGUtil.isInteger(coords[2])) {
-					z = Integer.parseInt(coords[2]);
-				}
-				World w = Bukkit.getWorld(cs.getString(k + ".world"));
-				if (w != null && x == x && y == y && z == z) {
-					Location l = new Location(w, x, y, z);
-					if (l.getBlock().getState() instanceof InventoryHolder) {
-						((InventoryHolder)l.getBlock().getState()).getInventory().setContents(new ItemStack[0]);
+		ChangeSet blocks = blockChanges.remove(arena);
+		ChangeSet inventories = inventoryChanges.remove(arena);
+		ChangeSet hangings = hangingChanges.remove(arena);
+		File stream = null;
+		int streamed = 0;
+		Integer spilled = spilledChanges.remove(arena);
+		spilledBlocks.remove(arena);
+		spilledInventories.remove(arena);
+		spilledHangings.remove(arena);
+		if (spilled != null && journal != null) {
+			// changes still in memory were journaled as well, so the whole journal is streamed in their place
+			streamed = spilled + size(blocks) + size(inventories) + size(hangings);
+			blocks = null;
+			inventories = null;
+			hangings = null;
+			sync();
+			stream = journal.getFile(arena);
+		}
+		RegionSnapshot snapshot = takeSnapshot(arena);
+		if (snapshot != null) {
+			// signs and containers aren't covered by the snapshot's diff, so restore them unconditionally
+			blocks = blocks != null ? blocks : new ChangeSet();
+			blocks.addAll(snapshot.getTiles());
+			inventories = inventories != null ? inventories : new ChangeSet();
+			inventories.addAll(snapshot.getInventories());
+			pendingSnapshots.put(snapshot, new PendingSnapshot(arena));
+		}
+		RollbackTask task = new RollbackTask(this, arena, r, blocks, inventories, hangings, stream, streamed,
+				itemPools.remove(arena), snapshot, maxChanges, maxMicros,
+				mg != null ? mg.getConfigManager().getSpawnRestoreRadius() : 0);
+		if ((maxChanges > 0 || maxMicros > 0) && plugin.isEnabled() && MGUtil.getPlugin().isEnabled()) {
+			tasks.put(arena, task); // registered first so that the round may be reopened during the first slice
+			if (!task.restore(maxChanges, maxMicros * 1000L)) { // restore the first slice right away
+				task.runTaskTimer(MGUtil.getPlugin(), 1L, 1L);
+				return;
+			}
+		}
+		else {
+			task.finish(); // the scheduler can't be used while disabling, so restore everything now
+		}
+		complete(task);
+	}
+
+	private void deferRollback(final String arena) {
+		if (!waitingRollbacks.add(arena)) {
+			return; // already waiting
+		}
+		Bukkit.getScheduler().runTaskLater(MGUtil.getPlugin(), new Runnable() {
+			public void run() {
+				if (waitingRollbacks.remove(arena)) {
+					rollback(arena);
+				}
+			}
+		}, 1L);
+	}
+
+	/**
+	 * Finalizes a rollback once all of its changes have been restored.
+	 *
+	 * @param task the task which performed the rollback
+	 */
+	void complete(RollbackTask task) {
+		if (tasks.get(task.getArena()) == task) {
+			tasks.remove(task.getArena());
+		}
+		if (task.hasChanges()) {
+			syncDeferred(); // changes deferred by this rollback must be on disk before its arena's journal is deleted
+			if (journal != null) {
+				try {
+					journal.discard(task.getArena());
+					if (task.isReopened()) {
+						// changes logged since the round was reopened went to the discarded journal as well
+						rejournal(task.getArena());
+					}
+				}
+				catch (IOException ex) {
+					ex.printStackTrace();
+					Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", task.getArena()));
+				}
+			}
+		}
+		if (task.getSnapshot() != null) {
+			PendingSnapshot pending = pendingSnapshots.get(task.getSnapshot());
+			pending.restoring = false;
+			finishSnapshot(task.getSnapshot(), pending);
+		}
+		if (task.isReopened()) {
+			checkMemory(task.getArena()); // changes logged since the round was reopened may now be dropped
+		}
+		Round r = task.getRound();
+		if (r != null) {
+			if (!task.isReopened()) { // a reopened round may have moved on already
+				r.setStage(Stage.WAITING);
+			}
+			r.getMinigame().getLobbyManager().update(task.getArena());
+			verify(task);
+		}
+	}
+
+	/**
+	 * Reopens the round of an arena whose rollback has restored all changes
+	 * near the round's spawns.
+	 *
+	 * @param task the task performing the rollback
+	 * @return whether the round was reopened
+	 */
+	boolean reopen(RollbackTask task) {
+		Round r = task.getRound();
+		if (r == null || tasks.get(task.getArena()) != task) {
+			return false; // the rollback is being completed in one go anyway
+		}
+		if (task.getItems() != null && !itemPools.containsKey(task.getArena())) {
+			// inventory changes logged from now on share the journal with the rollback's, so they share its item ids too
+			itemPools.put(task.getArena(), task.getItems());
+		}
+		r.setStage(Stage.WAITING);
+		r.getMinigame().getLobbyManager().update(task.getArena());
+		return true;
+	}
+
+	/**
+	 * Publishes the progress of a rollback which has not yet completed.
+	 *
+	 * @param task   the task performing the rollback
+	 * @param slices the number of slices the task has restored so far
+	 */
+	void progress(RollbackTask task, int slices) {
+		Round r = task.getRound();
+		if (r != null) {
+			MGUtil.callEvent(new MinigameRoundRollbackProgressEvent(r, task.getDone(), task.getTotal(),
+					task.getEstimatedRemainingMillis()));
+			if (slices % 20 == 0) { // refresh lobby signs about once per second
+				r.getMinigame().getLobbyManager().update(task.getArena());
+			}
+		}
+	}
+
+	/**
+	 * Restores the changes still pending within the chunk containing the
+	 * given position ahead of the rest if the arena's round has already been
+	 * reopened, so that no change is logged against a block which has yet to
+	 * be restored.
+	 *
+	 * @param arena the arena about to be changed
+	 * @param w     the world containing the position
+	 * @param x     the x-coordinate of the position
+	 * @param z     the z-coordinate of the position
+	 */
+	private void settle(String arena, World w, int x, int z) {
+		if (tasks.isEmpty()) {
+			return;
+		}
+		RollbackTask task = tasks.get(arena);
+		if (task != null && task.isReopened()) {
+			task.settle(w, x >> 4, z >> 4);
+		}
+	}
+
+	/**
+	 * Journals the changes currently held in memory for the given arena
+	 * anew, along with the item stacks they may reference.
+	 *
+	 * @param arena the arena whose changes should be journaled
+	 * @throws IOException if a previous write failed
+	 */
+	private void rejournal(String arena) throws IOException {
+		List<JournalRecord> records = new ArrayList<JournalRecord>();
+		ItemPool items = itemPools.get(arena);
+		if (items != null) {
+			items.addDefinitions(arena, records);
+		}
+		addRecords(blockChanges.get(arena), JournalRecord.BLOCK, arena, records);
+		addRecords(inventoryChanges.get(arena), JournalRecord.INVENTORY, arena, records);
+		addRecords(hangingChanges.get(arena), JournalRecord.HANGING, arena, records);
+		if (!records.isEmpty()) {
+			journal.writeAll(records);
+		}
+	}
+
+	private static void addRecords(ChangeSet changes, byte kind, String arena, List<JournalRecord> records) {
+		if (changes != null) {
+			for (int i = 0; i < changes.size(); i++) {
+				records.add(changes.toRecord(i, kind, arena));
+			}
+		}
+	}
+
+	/**
+	 * Defers the restoration of a block or inventory change until its chunk
+	 * is loaded.
+	 *
+	 * @param record the change to defer
+	 * @param items  the pool of item stacks the change may reference, or
+	 *               <code>null</code>
+	 */
+	void defer(JournalRecord record, ItemPool items) {
+		if (items != null) {
+			// deferred changes may outlive the arena's item pool, so they mustn't reference it
+			try {
+				byte[] payload = record.getKind() == JournalRecord.BLOCK ? BlockCodec.detach(record.getPayload(), items) :
+						encodeInventory(items.decode(record.getPayload()));
+				if (payload != record.getPayload()) {
+					record = new JournalRecord(record.getKind(), record.getArena(), record.getWorld(), record.getX(),
+							record.getY(), record.getZ(), record.getType(), record.getData(), payload);
+				}
+			}
+			catch (InvalidConfigurationException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", record.getArena()));
+				return;
+			}
+		}
+		defer(record);
+	}
+
+	/**
+	 * Defers the restoration of a change until its chunk is loaded.
+	 *
+	 * @param record the change to defer
+	 */
+	void defer(JournalRecord record) {
+		addDeferred(record);
+		if (logging && deferredJournal != null) {
+			try {
+				deferredJournal.write(record);
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", record.getArena()));
+			}
+		}
+	}
+
+	/**
+	 * Restores any changes which were deferred because the given chunk was
+	 * not loaded at the time its arena was rolled back.
+	 *
+	 * @param chunk the chunk which has been loaded
+	 */
+	void restoreDeferred(Chunk chunk) {
+		restoreDeferredChanges(chunk);
+		HashMap<Long, List<RegionSnapshot>> chunks = deferredSnapshots.get(chunk.getWorld().getName());
+		if (chunks == null) {
+			return;
+		}
+		List<RegionSnapshot> snapshots = chunks.remove(chunkKey(chunk.getX(), chunk.getZ()));
+		if (snapshots == null) {
+			return;
+		}
+		if (chunks.isEmpty()) {
+			deferredSnapshots.remove(chunk.getWorld().getName());
+		}
+		for (RegionSnapshot snapshot : snapshots) {
+			RollbackTask.restoreChunk(snapshot, chunk);
+			PendingSnapshot pending = pendingSnapshots.get(snapshot);
+			pending.chunks--;
+			finishSnapshot(snapshot, pending);
+		}
+	}
+
+	private void restoreDeferredChanges(Chunk chunk) {
+		HashMap<Long, List<JournalRecord>> chunks = deferred.get(chunk.getWorld().getName());
+		if (chunks == null) {
+			return;
+		}
+		List<JournalRecord> records = chunks.remove(chunkKey(chunk.getX(), chunk.getZ()));
+		if (records == null) {
+			return;
+		}
+		if (chunks.isEmpty()) {
+			deferred.remove(chunk.getWorld().getName());
+		}
+		HashMap<Integer, Hanging> hangings = null;
+		for (JournalRecord record : records) {
+			Block b = chunk.getWorld().getBlockAt(record.getX(), record.getY(), record.getZ());
+			if (record.getKind() == JournalRecord.BLOCK) {
+				RollbackTask.restoreBlock(b, record.getType(), record.getData(), record.getPayload(), null, record.getArena());
+			}
+			else if (record.getKind() == JournalRecord.HANGING) {
+				if (hangings == null) {
+					hangings = RollbackTask.getHangings(chunk);
+				}
+				RollbackTask.restoreHanging(chunk.getWorld(), record.getX(), record.getY(), record.getZ(), record.getType(),
+						record.getPayload(), RollbackTask.takeHanging(hangings, record.getX(), record.getY(), record.getZ(),
+								record.getData()), record.getArena());
+			}
+			else {
+				RollbackTask.restoreInventory(b, record.getPayload(), null, record.getArena());
+			}
+		}
+		if (deferredJournal != null) {
+			try {
+				if (deferred.isEmpty()) {
+					deferredJournal.discard("deferred");
+				}
+				else {
+					deferredJournal.write(JournalRecord.restored(chunk.getWorld().getName(), chunk.getX(), chunk.getZ()));
+				}
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", plugin.getName()));
+			}
+		}
+	}
+
+	private void replayDeferred(JournalRecord record) {
+		if (record.getKind() == JournalRecord.RESTORED) {
+			HashMap<Long, List<JournalRecord>> chunks = deferred.get(record.getWorld());
+			if (chunks != null) {
+				chunks.remove(chunkKey(record.getX(), record.getZ()));
+				if (chunks.isEmpty()) {
+					deferred.remove(record.getWorld());
+				}
+			}
+		}
+		else if (record.getKind() == JournalRecord.BLOCK || record.getKind() == JournalRecord.INVENTORY ||
+				record.getKind() == JournalRecord.HANGING) {
+			addDeferred(record);
+		}
+	}
+
+	private void addDeferred(JournalRecord record) {
+		HashMap<Long, List<JournalRecord>> chunks = deferred.get(record.getWorld());
+		if (chunks == null) {
+			chunks = new HashMap<Long, List<JournalRecord>>();
+			deferred.put(record.getWorld(), chunks);
+		}
+		long key = chunkKey(record.getX() >> 4, record.getZ() >> 4);
+		List<JournalRecord> records = chunks.get(key);
+		if (records == null) {
+			records = new ArrayList<JournalRecord>();
+			chunks.put(key, records);
+		}
+		records.add(record);
+	}
+
+	private static long chunkKey(int chunkX, int chunkZ) {
+		return (long)chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+	}
+
+	private void syncDeferred() {
+		if (deferredJournal != null) {
+			try {
+				deferredJournal.flush();
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", plugin.getName()));
+			}
+		}
+	}
+
+	/**
+	 * Copies the bounded region of the given round's arena so that it may
+	 * later be reset by diffing against the copy rather than from logged
+	 * changes. If a copy of the arena already exists (because it is a
+	 * {@link ResetMode#BASELINE baseline} or because its last reset did not
+	 * complete), it is reused instead.
+	 *
+	 * <p>Only chunks which are currently loaded are copied, since loading the
+	 * rest would stall the server. While a copy exists, changes to the chunks
+	 * it covers are not logged; changes to any other chunk are logged as
+	 * usual.</p>
+	 *
+	 * @param round the round whose arena should be copied
+	 * @since 0.4.3
+	 */
+	@SuppressWarnings("deprecation")
+	public void captureSnapshot(Round round) {
+		final String arena = round.getArena();
+		if (snapshots.containsKey(arena) || round.getMinBound() == null || round.getMaxBound() == null) {
+			return;
+		}
+		final File file = getSnapshotFile(arena);
+		FutureTask<RegionSnapshot> future;
+		if (file.exists()) {
+			future = new FutureTask<RegionSnapshot>(new Callable<RegionSnapshot>() {
+				public RegionSnapshot call() throws IOException {
+					InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+					try {
+						return RegionSnapshot.read(in);
+					}
+					finally {
+						in.close();
+					}
+				}
+			});
+		}
+		else {
+			final World w = Bukkit.getWorld(round.getWorld());
+			if (w == null) {
+				return;
+			}
+			int[] bounds = getBounds(round, w);
+			final int minX = bounds[0];
+			final int minY = bounds[1];
+			final int minZ = bounds[2];
+			final int maxX = bounds[3];
+			final int maxY = bounds[4];
+			final int maxZ = bounds[5];
+			final boolean baseline = round.getResetMode() == ResetMode.BASELINE;
+			final HashMap<Long, ChunkSnapshot> chunks = new HashMap<Long, ChunkSnapshot>();
+			final Set<Long> covered = new HashSet<Long>();
+			final ChangeSet tiles = new ChangeSet();
+			final ChangeSet inventories = new ChangeSet();
+			// chunk snapshots are cheap copies, so only they are taken on the main thread
+			for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+				for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+					if (!w.isChunkLoaded(cx, cz)) {
+						continue; // nothing can change in it until it's loaded, at which point changes are logged instead
 					}
-					l.getBlock().setType(Material.getMaterial(cs.getString(k + ".type")));
-					l.getBlock().setData(Byte.parseByte(cs.getString(k + ".data")));
-					if (l.getBlock().getState() instanceof Sign) {
-						for (int i = 0; i < 4; i++) {
-							if (cs.isSet("sign-text-" + i)) {
-								((Sign)l.getBlock().getState()).setLine(i, cs.getString("sign-text-" + i));
+					Chunk c = w.getChunkAt(cx, cz);
+					chunks.put(chunkKey(cx, cz), c.getChunkSnapshot(false, false, false));
+					covered.add(ChangeSet.pack(cx, 0, cz));
+					for (BlockState state : c.getTileEntities()) {
+						if (state.getX() < minX || state.getX() > maxX || state.getY() < minY || state.getY() > maxY ||
+								state.getZ() < minZ || state.getZ() > maxZ) {
+							continue;
+						}
+						if (state instanceof InventoryHolder) {
+							inventories.add(w.getName(), state.getX(), state.getY(), state.getZ(), 0, (byte)0,
+									encodeInventory(((InventoryHolder)state).getInventory().getContents()));
+						}
+						else {
+							byte[] payload = BlockCodec.capture(state, null, null, null);
+							if (payload != null) {
+								tiles.add(w.getName(), state.getX(), state.getY(), state.getZ(), state.getTypeId(),
+										state.getRawData(), payload);
 							}
 						}
 					}
 				}
 			}
+			future = new FutureTask<RegionSnapshot>(new Callable<RegionSnapshot>() {
+				public RegionSnapshot call() {
+					RegionSnapshot snapshot = new RegionSnapshot(w.getName(), minX, minY, minZ, maxX, maxY, maxZ, baseline,
+							getBlockSource(chunks), covered, tiles, inventories);
+					try {
+						file.getParentFile().mkdirs();
+						OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+						try {
+							snapshot.write(out);
+						}
+						finally {
+							out.close();
+						}
+					}
+					catch (IOException ex) {
+						ex.printStackTrace();
+						Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", arena));
+					}
+					return snapshot;
+				}
+			});
+			capturingChunks.put(arena, covered);
+		}
+		snapshots.put(arena, future);
+		if (MGUtil.getPlugin().isEnabled()) {
+			Bukkit.getScheduler().runTaskAsynchronously(MGUtil.getPlugin(), future);
+		}
+		else {
+			future.run();
 		}
-		ConfigurationSection cs2 = y.getConfigurationSection(arena + ".inventoryChanges");
-		if (cs2 != null) {
-			for (String k : cs2.getKeys(false)) {
-				String[] coords = k.split(",");
-				double x = Double.NaN, y = Double.NaN, z = Double.NaN;
-				if (MGUtil.isInteger(coords[0])) {
-					x = Integer.parseInt(coords[0]);
+	}
+
+	/**
+	 * Computes baseline checksums of each chunk section within the bounded
+	 * region of the given round's arena, against which the arena is verified
+	 * after each rollback if verification is enabled. Any existing baseline
+	 * is replaced.
+	 *
+	 * <p>Only snapshots of the arena's chunks are taken on the main thread;
+	 * the checksums are computed and saved asynchronously.</p>
+	 *
+	 * @param round the round whose arena's checksums should be computed
+	 * @since 0.4.3
+	 */
+	public void captureChecksums(Round round) {
+		final World w = Bukkit.getWorld(round.getWorld());
+		if (w == null || round.getMinBound() == null || round.getMaxBound() == null) {
+			return;
+		}
+		final String arena = round.getArena();
+		final int[] bounds = getBounds(round, w);
+		final HashMap<Long, ChunkSnapshot> chunks = getChunkSnapshots(w, bounds, false);
+		Runnable task = new Runnable() {
+			public void run() {
+				SectionChecksums checksums = new SectionChecksums(w.getName(), bounds[0], bounds[1], bounds[2], bounds[3],
+						bounds[4], bounds[5], getBlockSource(chunks));
+				File file = getChecksumFile(arena);
+				try {
+					file.getParentFile().mkdirs();
+					OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+					try {
+						checksums.write(out);
+					}
+					finally {
+						out.close();
+					}
 				}
-				if (MGUtil.isInteger(coords[1])) {
-					y = Integer.parseInt(coords[1]);
+				catch (IOException ex) {
+					ex.printStackTrace();
+					Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", arena));
 				}
-				if (MGUtil.isInteger(coords[2])) {
-					z = Integer.parseInt(coords[2]);
+			}
+		};
+		if (MGUtil.getPlugin().isEnabled()) {
+			Bukkit.getScheduler().runTaskAsynchronously(MGUtil.getPlugin(), task);
+		}
+		else {
+			task.run();
+		}
+	}
+
+	/**
+	 * Retrieves whether baseline checksums have been computed for the given
+	 * arena.
+	 *
+	 * @param arena the arena to check
+	 * @return whether baseline checksums exist for the given arena
+	 * @since 0.4.3
+	 */
+	public boolean hasChecksums(String arena) {
+		return getChecksumFile(arena).exists();
+	}
+
+	/**
+	 * Discards the baseline checksums of the given arena, e.g. because its
+	 * bounds have changed, so that they are computed anew the next time a
+	 * round starts in it.
+	 *
+	 * @param arena the arena to discard the checksums of
+	 * @since 0.4.3
+	 */
+	public void discardChecksums(String arena) {
+		File file = getChecksumFile(arena);
+		if (file.exists()) {
+			Main.log.warning(Main.locale.getMessage("plugin.alert.checksums-stale", arena));
+			if (!file.delete()) {
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", arena));
+			}
+		}
+	}
+
+	private File getChecksumFile(String arena) {
+		return new File(plugin.getDataFolder(), "checksums" + File.separator + arena + ".checksums");
+	}
+
+	/**
+	 * Verifies the loaded chunks of a freshly rolled back arena against its
+	 * baseline checksums and reports any sections which differ. Arenas reset
+	 * from a snapshot have the chunks containing such sections diffed
+	 * against the snapshot again.
+	 *
+	 * @param task the task which performed the rollback
+	 */
+	private void verify(final RollbackTask task) {
+		final Round r = task.getRound();
+		final World w = r != null ? Bukkit.getWorld(r.getWorld()) : null;
+		if (w == null || r.getMinBound() == null || r.getMaxBound() == null || r.getStage() != Stage.WAITING ||
+				!r.getConfigManager().isRollbackVerificationEnabled() || !MGUtil.getPlugin().isEnabled()) {
+			return;
+		}
+		final File file = getChecksumFile(task.getArena());
+		if (!file.exists()) {
+			return;
+		}
+		final int[] bounds = getBounds(r, w);
+		// unloaded chunks may still have deferred changes pending, so only loaded ones can be verified
+		final HashMap<Long, ChunkSnapshot> chunks = getChunkSnapshots(w, bounds, true);
+		// and chunks restored ahead of the rest of a reopened round's arena may well have been changed again since
+		for (Iterator<ChunkSnapshot> it = chunks.values().iterator(); it.hasNext(); ) {
+			ChunkSnapshot chunk = it.next();
+			if (task.isSettled(w.getName(), chunk.getX(), chunk.getZ())) {
+				it.remove();
+			}
+		}
+		Bukkit.getScheduler().runTaskAsynchronously(MGUtil.getPlugin(), new Runnable() {
+			public void run() {
+				SectionChecksums checksums;
+				try {
+					InputStream in = new BufferedInputStream(new FileInputStream(file));
+					try {
+						checksums = SectionChecksums.read(in);
+					}
+					finally {
+						in.close();
+					}
 				}
-				World w = Bukkit.getWorld(cs2.getString(k + ".world"));
-				if (w != null && x == x && y == y && z == z) {
-					Location l = new Location(w, x, y, z);
-					if (l.getBlock().getState() instanceof InventoryHolder) {
-						Inventory inv = ((InventoryHolder)l.getBlock().getState()).getInventory();
-						ConfigurationSection ymlInv = cs2.getConfigurationSection(k + ".inventory");
-						for (String kk : ymlInv.getKeys(false)) {
-							if (MGUtil.isInteger(kk)) {
-								int slot = Integer.parseInt(kk);
-								inv.setItem(slot, ymlInv.getItemStack(kk));
+				catch (IOException ex) {
+					ex.printStackTrace();
+					Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", task.getArena()));
+					return;
+				}
+				if (!checksums.covers(w.getName(), bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5])) {
+					// the arena's bounds have changed since the baseline was computed, so it can't be verified against it
+					discardChecksums(task.getArena());
+					return;
+				}
+				final List<ChunkSnapshot> mismatched = new ArrayList<ChunkSnapshot>();
+				int sections = 0;
+				String first = null;
+				for (ChunkSnapshot chunk : chunks.values()) {
+					int[] sectionYs = checksums.verify(getBlockSource(chunk), chunk.getX(), chunk.getZ());
+					if (sectionYs.length > 0) {
+						mismatched.add(chunk);
+						sections += sectionYs.length;
+						if (first == null) {
+							first = chunk.getX() + ", " + sectionYs[0] + ", " + chunk.getZ();
+						}
+					}
+				}
+				if (sections == 0) {
+					return;
+				}
+				Main.log.warning(Main.locale.getMessage("plugin.alert.rollback-mismatch", Integer.toString(sections),
+						Integer.toString(checksums.getSectionCount()), task.getArena(), first));
+				if (task.getSnapshot() == null) {
+					return; // without a copy of the arena there's nothing to restore the sections from
+				}
+				Bukkit.getScheduler().runTask(MGUtil.getPlugin(), new Runnable() {
+					public void run() {
+						// don't touch the arena if a new round has begun in it since
+						if (r.getStage() != Stage.WAITING || snapshots.containsKey(task.getArena())) {
+							return;
+						}
+						for (ChunkSnapshot chunk : mismatched) {
+							if (w.isChunkLoaded(chunk.getX(), chunk.getZ())) {
+								RollbackTask.restoreChunk(task.getSnapshot(), w.getChunkAt(chunk.getX(), chunk.getZ()));
+								w.refreshChunk(chunk.getX(), chunk.getZ());
 							}
 						}
 					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Checks whether the given block lies within a chunk covered by the
+	 * given arena's snapshot, such that changes to it needn't be logged.
+	 *
+	 * @param arena the arena containing the block
+	 * @param block the block to check
+	 * @return whether the block will be reset from a snapshot
+	 */
+	private boolean isSnapshotted(String arena, Block block) {
+		Future<RegionSnapshot> future = snapshots.get(arena);
+		if (future == null) {
+			return false;
+		}
+		int chunkX = block.getX() >> 4;
+		int chunkZ = block.getZ() >> 4;
+		if (!future.isDone()) {
+			// a copy read back from disk may not cover every chunk, so log changes until it's known which it does
+			Set<Long> chunks = capturingChunks.get(arena);
+			return chunks != null && chunks.contains(ChangeSet.pack(chunkX, 0, chunkZ));
+		}
+		try {
+			return future.get().covers(chunkX, chunkZ);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException ex) {
+			// the capture failed and is reported once the arena is rolled back, so log changes as usual
+		}
+		return false;
+	}
+
+	private RegionSnapshot takeSnapshot(String arena) {
+		Future<RegionSnapshot> future = snapshots.remove(arena);
+		capturingChunks.remove(arena);
+		if (future == null) {
+			return null;
+		}
+		try {
+			// waits for the capture to finish only while disabling, since rollbacks are otherwise deferred until then
+			return future.get();
+		}
+		catch (InterruptedException ex) {
+			ex.printStackTrace();
+		}
+		catch (ExecutionException ex) {
+			ex.getCause().printStackTrace();
+		}
+		Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", arena));
+		return null;
+	}
+
+	/**
+	 * Defers diffing the given chunk against the given snapshot until the
+	 * chunk is loaded.
+	 *
+	 * @param snapshot the snapshot to diff against
+	 * @param chunkX   the x-coordinate of the chunk
+	 * @param chunkZ   the z-coordinate of the chunk
+	 */
+	void deferSnapshot(RegionSnapshot snapshot, int chunkX, int chunkZ) {
+		HashMap<Long, List<RegionSnapshot>> chunks = deferredSnapshots.get(snapshot.getWorld());
+		if (chunks == null) {
+			chunks = new HashMap<Long, List<RegionSnapshot>>();
+			deferredSnapshots.put(snapshot.getWorld(), chunks);
+		}
+		long key = chunkKey(chunkX, chunkZ);
+		List<RegionSnapshot> list = chunks.get(key);
+		if (list == null) {
+			list = new ArrayList<RegionSnapshot>();
+			chunks.put(key, list);
+		}
+		list.add(snapshot);
+		pendingSnapshots.get(snapshot).chunks++;
+	}
+
+	private void finishSnapshot(RegionSnapshot snapshot, PendingSnapshot pending) {
+		if (pending.restoring || pending.chunks > 0) {
+			return;
+		}
+		pendingSnapshots.remove(snapshot);
+		// a round-scoped copy is discarded once fully restored, unless a new round has already picked it up again
+		if (!snapshot.isBaseline() && !snapshots.containsKey(pending.arena)) {
+			getSnapshotFile(pending.arena).delete();
+		}
+	}
+
+	private File getSnapshotFile(String arena) {
+		return new File(plugin.getDataFolder(), "snapshots" + File.separator + arena + ".snapshot");
+	}
+
+	/**
+	 * Computes the bounded region of the given round's arena, clamped to the
+	 * height of the given world.
+	 *
+	 * @param round the round whose arena's bounds should be computed
+	 * @param w     the world containing the arena
+	 * @return the minimum x-, y- and z-coordinates followed by the maximum
+	 *         x-, y- and z-coordinates of the region
+	 */
+	private static int[] getBounds(Round round, World w) {
+		Location min = round.getMinBound();
+		Location max = round.getMaxBound();
+		return new int[]{
+				Math.min(min.getBlockX(), max.getBlockX()),
+				Math.max(Math.min(min.getBlockY(), max.getBlockY()), 0),
+				Math.min(min.getBlockZ(), max.getBlockZ()),
+				Math.max(min.getBlockX(), max.getBlockX()),
+				Math.min(Math.max(min.getBlockY(), max.getBlockY()), w.getMaxHeight() - 1),
+				Math.max(min.getBlockZ(), max.getBlockZ())
+		};
+	}
+
+	/**
+	 * Takes snapshots of the chunks spanned by the given region on the main
+	 * thread, so that the region can be read from another thread.
+	 *
+	 * @param w          the world containing the region
+	 * @param bounds     the bounds of the region as returned by
+	 *                   {@link #getBounds(Round, World)}
+	 * @param loadedOnly whether to skip chunks which are not loaded rather
+	 *                   than load them
+	 * @return the chunk snapshots by chunk key
+	 */
+	private static HashMap<Long, ChunkSnapshot> getChunkSnapshots(World w, int[] bounds, boolean loadedOnly) {
+		HashMap<Long, ChunkSnapshot> chunks = new HashMap<Long, ChunkSnapshot>();
+		for (int cx = bounds[0] >> 4; cx <= bounds[3] >> 4; cx++) {
+			for (int cz = bounds[2] >> 4; cz <= bounds[5] >> 4; cz++) {
+				if (!loadedOnly || w.isChunkLoaded(cx, cz)) {
+					chunks.put(chunkKey(cx, cz), w.getChunkAt(cx, cz).getChunkSnapshot(false, false, false));
+				}
+			}
+		}
+		return chunks;
+	}
+
+	static RegionSnapshot.BlockSource getBlockSource(final HashMap<Long, ChunkSnapshot> chunks) {
+		return new RegionSnapshot.BlockSource() {
+			private long lastKey = 0;
+			private ChunkSnapshot last = null;
+
+			public int getState(int x, int y, int z) {
+				long key = chunkKey(x >> 4, z >> 4);
+				if (last == null || key != lastKey) {
+					last = chunks.get(key);
+					lastKey = key;
 				}
+				return RegionSnapshot.state(last.getBlockTypeId(x & 15, y, z & 15), last.getBlockData(x & 15, y, z & 15));
+			}
+		};
+	}
+
+	static RegionSnapshot.BlockSource getBlockSource(final ChunkSnapshot chunk) {
+		return new RegionSnapshot.BlockSource() {
+			public int getState(int x, int y, int z) {
+				return RegionSnapshot.state(chunk.getBlockTypeId(x & 15, y, z & 15), chunk.getBlockData(x & 15, y, z & 15));
 			}
+		};
+	}
+
+	/**
+	 * Retrieves whether the given arena is currently being rolled back.
+	 *
+	 * @param arena the arena to check
+	 * @return whether the given arena is currently being rolled back
+	 * @since 0.4.3
+	 */
+	public boolean isRollingBack(String arena) {
+		return tasks.containsKey(arena);
+	}
+
+	/**
+	 * Retrieves the fraction of changes restored so far by the rollback of
+	 * the given arena, between <code>0</code> and <code>1</code>. For
+	 * snapshot-based rollbacks, each chunk of the arena counts as a single
+	 * change.
+	 *
+	 * @param arena the arena to check
+	 * @return the fraction of changes restored so far, or <code>-1</code> if
+	 * the arena is not being rolled back
+	 * @since 0.4.3
+	 */
+	public double getRollbackProgress(String arena) {
+		RollbackTask task = tasks.get(arena);
+		if (task == null) {
+			return -1;
 		}
-		y.set(arena, null);
-		if (logging) {
+		return task.getTotal() > 0 ? (double)task.getDone() / task.getTotal() : 1;
+	}
+
+	/**
+	 * Estimates the time remaining until the rollback of the given arena
+	 * completes, based on the rate at which it has progressed so far.
+	 *
+	 * @param arena the arena to check
+	 * @return the estimated time in milliseconds until the rollback
+	 * completes, or <code>-1</code> if the arena is not being rolled back or
+	 * no estimate is available yet
+	 * @since 0.4.3
+	 */
+	public long getEstimatedRollbackTime(String arena) {
+		RollbackTask task = tasks.get(arena);
+		return task != null ? task.getEstimatedRemainingMillis() : -1;
+	}
+
+	/**
+	 * Rolls back arenas which have not been rolled back due to a crash or unclean shutdown.
+	 *
+	 * @since 0.1.0
+	 */
+	public void checkRollbacks() {
+		if (!recovered) {
+			checkPending = true; // arenas will be rolled back once their journals have been read
+			return;
+		}
+		HashMap<String, Object> arenas = new HashMap<String, Object>();
+		for (String arena : blockChanges.keySet()) {
+			arenas.put(arena, null);
+		}
+		for (String arena : inventoryChanges.keySet()) {
+			arenas.put(arena, null);
+		}
+		for (String arena : hangingChanges.keySet()) {
+			arenas.put(arena, null);
+		}
+		for (String arena : spilledChanges.keySet()) {
+			arenas.put(arena, null);
+		}
+		for (String arena : arenas.keySet()) {
+			rollback(arena);
+		}
+	}
+
+	/**
+	 * Forces any buffered journal records to disk.
+	 *
+	 * @since 0.4.3
+	 */
+	public void sync() {
+		syncDeferred();
+		if (journal != null) {
 			try {
-				y.save(f);
+				journal.flush();
 			}
-			catch (Exception ex) {
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", plugin.getName()));
+			}
+		}
+	}
+
+	/**
+	 * Completes any rollbacks in progress, then syncs and closes this
+	 * rollback manager's journal.
+	 *
+	 * <p>This method <strong>should not</strong> be called from your plugin.</p>
+	 *
+	 * @since 0.4.3
+	 */
+	public void close() {
+		for (RollbackTask task : new ArrayList<RollbackTask>(tasks.values())) {
+			task.cancel();
+			task.finish();
+			complete(task);
+		}
+		if (journal != null) {
+			Main.log("Rollback journal for " + plugin.getName() + ": " + journal.getWritten() + " records written, " +
+					journal.getCoalesced() + " coalesced, " + journal.getSyncs() + " syncs, " + journal.getStalls() +
+					" stalls", LogLevel.DEBUG);
+			try {
+				journal.close();
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", plugin.getName()));
+			}
+			journal = null;
+		}
+		if (deferredJournal != null) {
+			try {
+				deferredJournal.close();
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", plugin.getName()));
+			}
+			deferredJournal = null;
+		}
+	}
+
+	// reports failures and backpressure of the journal writers' threads
+	private void checkWriters() {
+		long stalls = 0;
+		for (JournalWriter writer : new JournalWriter[]{journal, deferredJournal}) {
+			if (writer == null) {
+				continue;
+			}
+			try {
+				writer.checkError();
+			}
+			catch (IOException ex) { // the stack trace was already printed by the writer thread
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", plugin.getName()));
+			}
+			stalls += writer.getStalls();
+		}
+		if (stalls > reportedStalls) {
+			Main.log.warning(Main.locale.getMessage("plugin.alert.rollback-backlog", plugin.getName(),
+					Long.toString(stalls - reportedStalls)));
+			reportedStalls = stalls;
+		}
+	}
+
+	private void appendAll(List<JournalRecord> records, String arena) {
+		if (!records.isEmpty() && logging && journal != null) {
+			try {
+				journal.writeAll(records);
+			}
+			catch (IOException ex) {
 				ex.printStackTrace();
 				Main.log.severe(Main.locale.getMessage("plugin.alert.data.save", arena));
 			}
 		}
-		if (r != null) {
-			r.setStage(Stage.WAITING);
-			r.getMinigame().getLobbyManager().update(arena);
+	}
+
+	private void append(JournalRecord record) {
+		if (logging && journal != null) {
+			try {
+				journal.write(record);
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe("An exception occurred while saving data for arena " + record.getArena());
+			}
 		}
 	}
 
 	/**
-	 * Rolls back arenas which have not been rolled back due to a crash or unclean shutdown.
+	 * Reads all existing journals in parallel off the main thread, then
+	 * applies their changes on the main thread.
+	 */
+	private void recover() {
+		List<File> files = new ArrayList<File>();
+		File[] shards = f.listFiles();
+		if (shards != null) {
+			for (File file : shards) {
+				if (file.getName().endsWith(".journal")) {
+					files.add(file);
+				}
+			}
+		}
+		final File deferredFile = deferredJournal.getFile("deferred");
+		if (deferredFile.exists()) {
+			files.add(deferredFile);
+		}
+		final List<Future<Recovery>> results = new ArrayList<Future<Recovery>>();
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(Math.min(files.size(), Runtime.getRuntime().availableProcessors()), 1));
+		for (final File file : files) {
+			results.add(executor.submit(new Callable<Recovery>() {
+				public Recovery call() throws IOException {
+					final Recovery recovery = new Recovery();
+					RollbackJournal.replay(file, new RollbackJournal.RecordHandler() {
+						public void handle(JournalRecord record) {
+							if (file == deferredFile) {
+								recovery.deferred.add(record);
+							}
+							else {
+								recovery.replay(record);
+							}
+						}
+					});
+					return recovery;
+				}
+			}));
+		}
+		executor.shutdown();
+		final Runnable apply = new Runnable() {
+			public void run() {
+				for (Future<Recovery> result : results) {
+					Recovery recovery;
+					try {
+						recovery = result.get(); // already done
+					}
+					catch (Exception ex) {
+						(ex instanceof ExecutionException ? ex.getCause() : ex).printStackTrace();
+						Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", plugin.getName()));
+						continue;
+					}
+					for (JournalRecord record : recovery.deferred) {
+						replayDeferred(record);
+					}
+					itemPools.putAll(recovery.items);
+					applyRecovered(recovery.blocks, blockChanges);
+					applyRecovered(recovery.inventories, inventoryChanges);
+					applyRecovered(recovery.hangings, hangingChanges);
+				}
+				loadLegacyRollbacks(new File(plugin.getDataFolder(), "rollback.yml"));
+				for (String world : new ArrayList<String>(deferred.keySet())) {
+					World w = Bukkit.getWorld(world);
+					if (w != null) {
+						// chunks which are already loaded won't fire a load event
+						for (Chunk c : w.getLoadedChunks()) {
+							restoreDeferred(c);
+						}
+					}
+				}
+				recovered = true;
+				HashMap<String, Object> arenas = new HashMap<String, Object>();
+				for (String arena : blockChanges.keySet()) {
+					arenas.put(arena, null);
+				}
+				for (String arena : inventoryChanges.keySet()) {
+					arenas.put(arena, null);
+				}
+				for (String arena : hangingChanges.keySet()) {
+					arenas.put(arena, null);
+				}
+				for (String arena : arenas.keySet()) {
+					checkMemory(arena); // recovered journals may well exceed the limit
+				}
+				if (checkPending) {
+					checkRollbacks();
+				}
+			}
+		};
+		if (files.isEmpty() || !MGUtil.getPlugin().isEnabled()) {
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			apply.run();
+			return;
+		}
+		Bukkit.getScheduler().runTaskAsynchronously(MGUtil.getPlugin(), new Runnable() {
+			public void run() {
+				try {
+					executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				// only applying the changes needs to happen on the main thread
+				Bukkit.getScheduler().runTask(MGUtil.getPlugin(), apply);
+			}
+		});
+	}
+
+	private void applyRecovered(HashMap<String, ChangeSet> recovered, HashMap<String, ChangeSet> changes) {
+		for (Map.Entry<String, ChangeSet> e : recovered.entrySet()) {
+			ChangeSet existing = changes.get(e.getKey());
+			if (existing != null) {
+				// changes logged since startup are newer than the recovered ones
+				e.getValue().addAll(existing);
+			}
+			changes.put(e.getKey(), e.getValue());
+		}
+	}
+
+	private static ChangeSet getChanges(HashMap<String, ChangeSet> map, String arena, byte kind) {
+		ChangeSet changes = map.get(arena);
+		if (changes == null) {
+			changes = ChangeSet.forKind(kind);
+			map.put(arena, changes);
+		}
+		return changes;
+	}
+
+	/**
+	 * Loads pending changes from the YAML store used by previous versions of
+	 * MGLib so that they are rolled back along with the journal's.
 	 *
-	 * @since 0.1.0
+	 * @param legacy the legacy rollback store
 	 */
-	public void checkRollbacks() {
-		for (String k : y.getKeys(false)) {
-			rollback(k);
+	@SuppressWarnings("deprecation")
+	private void loadLegacyRollbacks(File legacy) {
+		if (!legacy.exists()) {
+			return;
+		}
+		try {
+			YamlConfiguration y = new YamlConfiguration();
+			y.load(legacy);
+			for (String arena : y.getKeys(false)) {
+				ConfigurationSection cs = y.getConfigurationSection(arena + ".blockChanges");
+				if (cs != null) {
+					for (String k : cs.getKeys(false)) {
+						String[] coords = k.split(",");
+						Material m = Material.getMaterial(cs.getString(k + ".type"));
+						if (coords.length == 3 && MGUtil.isInteger(coords[0]) && MGUtil.isInteger(coords[1]) &&
+								MGUtil.isInteger(coords[2]) && m != null) {
+							String[] lines = new String[4];
+							for (int i = 0; i < 4; i++) {
+								lines[i] = cs.getString(k + ".sign-text-" + i, "");
+							}
+							JournalRecord record = new JournalRecord(JournalRecord.BLOCK, arena,
+									cs.getString(k + ".world"), Integer.parseInt(coords[0]),
+									Integer.parseInt(coords[1]), Integer.parseInt(coords[2]), m.getId(),
+									(byte)cs.getInt(k + ".data"),
+									cs.isSet(k + ".sign-text-0") ? BlockCodec.encodeSign(lines) : null);
+							if (getChanges(blockChanges, arena, JournalRecord.BLOCK).add(record)) {
+								append(record); // carry the change over to the journal
+							}
+						}
+					}
+				}
+				ConfigurationSection cs2 = y.getConfigurationSection(arena + ".inventoryChanges");
+				if (cs2 != null) {
+					for (String k : cs2.getKeys(false)) {
+						String[] coords = k.split(",");
+						ConfigurationSection ymlInv = cs2.getConfigurationSection(k + ".inventory");
+						if (coords.length == 3 && MGUtil.isInteger(coords[0]) && MGUtil.isInteger(coords[1]) &&
+								MGUtil.isInteger(coords[2]) && ymlInv != null) {
+							int size = 0;
+							for (String kk : ymlInv.getKeys(false)) {
+								if (MGUtil.isInteger(kk)) {
+									size = Math.max(size, Integer.parseInt(kk) + 1);
+								}
+							}
+							ItemStack[] contents = new ItemStack[size];
+							for (String kk : ymlInv.getKeys(false)) {
+								if (MGUtil.isInteger(kk)) {
+									contents[Integer.parseInt(kk)] = ymlInv.getItemStack(kk);
+								}
+							}
+							JournalRecord record = new JournalRecord(JournalRecord.INVENTORY, arena,
+									cs2.getString(k + ".world"), Integer.parseInt(coords[0]),
+									Integer.parseInt(coords[1]), Integer.parseInt(coords[2]), 0, (byte)0,
+									encodeInventory(contents));
+							if (getChanges(inventoryChanges, arena, JournalRecord.INVENTORY).add(record)) {
+								append(record); // carry the change over to the journal
+							}
+						}
+					}
+				}
+			}
+			sync();
+			legacy.delete();
+		}
+		catch (Exception ex) {
+			ex.printStackTrace();
+			Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", legacy.getName()));
+		}
+	}
+
+	private static byte[] encodeHanging(Hanging hanging) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(hanging.getFacing().name());
+			if (hanging instanceof ItemFrame) {
+				out.writeUTF(((ItemFrame)hanging).getRotation().name());
+				YamlConfiguration y = new YamlConfiguration();
+				y.set("item", ((ItemFrame)hanging).getItem());
+				byte[] item = y.saveToString().getBytes(UTF8);
+				out.writeInt(item.length);
+				out.write(item);
+			}
+			else {
+				out.writeUTF(((Painting)hanging).getArt().name());
+			}
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException ex) { // can't happen with a byte array
+			throw new RuntimeException(ex);
+		}
+	}
+
+	static byte[] encodeInventory(ItemStack[] contents) {
+		YamlConfiguration y = new YamlConfiguration();
+		y.set("size", contents.length);
+		for (int i = 0; i < contents.length; i++) {
+			if (contents[i] != null) {
+				y.set(Integer.toString(i), contents[i]);
+			}
+		}
+		return y.saveToString().getBytes(UTF8);
+	}
+
+	static ItemStack[] decodeInventory(byte[] payload) throws InvalidConfigurationException {
+		YamlConfiguration y = new YamlConfiguration();
+		y.loadFromString(new String(payload, UTF8));
+		ItemStack[] contents = new ItemStack[y.getInt("size")];
+		for (int i = 0; i < contents.length; i++) {
+			contents[i] = y.getItemStack(Integer.toString(i));
 		}
+		return contents;
+	}
+
+	/**
+	 * Tracks the chunks of a snapshot which remain to be restored.
+	 */
+	private static class PendingSnapshot {
+
+		private final String arena;
+		private boolean restoring = true;
+		private int chunks = 0;
+
+		private PendingSnapshot(String arena) {
+			this.arena = arena;
+		}
+
+	}
+
+	/**
+	 * The changes read from a single journal during startup.
+	 */
+	private static class Recovery {
+
+		private final HashMap<String, ChangeSet> blocks = new HashMap<String, ChangeSet>();
+		private final HashMap<String, ChangeSet> inventories = new HashMap<String, ChangeSet>();
+		private final HashMap<String, ItemPool> items = new HashMap<String, ItemPool>();
+		private final HashMap<String, ChangeSet> hangings = new HashMap<String, ChangeSet>();
+		private final List<JournalRecord> deferred = new ArrayList<JournalRecord>();
+
+		private void replay(JournalRecord record) {
+			switch (record.getKind()) {
+				case JournalRecord.BLOCK:
+					getChanges(blocks, record.getArena(), JournalRecord.BLOCK).add(record);
+					break;
+				case JournalRecord.INVENTORY:
+					getChanges(inventories, record.getArena(), JournalRecord.INVENTORY).add(record);
+					break;
+				case JournalRecord.HANGING:
+					getChanges(hangings, record.getArena(), JournalRecord.HANGING).add(record);
+					break;
+				case JournalRecord.ITEM:
+					ItemPool pool = items.get(record.getArena());
+					if (pool == null) {
+						pool = new ItemPool();
+						items.put(record.getArena(), pool);
+					}
+					pool.define(record.getX(), record.getPayload());
+					break;
+				default:
+					break;
+			}
+		}
+
 	}
 
 }
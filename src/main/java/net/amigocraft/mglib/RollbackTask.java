@@ -0,0 +1,980 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.api.Round;
+import net.amigocraft.mglib.rollback.ChangeSet;
+import net.amigocraft.mglib.rollback.JournalRecord;
+import net.amigocraft.mglib.rollback.PositionSet;
+import net.amigocraft.mglib.rollback.RegionSnapshot;
+import net.amigocraft.mglib.rollback.RollbackJournal;
+
+import org.bukkit.Art;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Rotation;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Hanging;
+import org.bukkit.entity.ItemFrame;
+import org.bukkit.entity.Painting;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Restores the logged changes of a single arena chunk by chunk, optionally
+ * spreading the work over multiple ticks.
+ */
+class RollbackTask extends BukkitRunnable {
+
+	private final RollbackManager manager;
+	private final String arena;
+	private final Round round;
+	private final ChangeSet blocks;
+	private final ChangeSet inventories;
+	private final ChangeSet hangings;
+	private final ItemPool items;
+
+	private final int maxChanges;
+	private final long maxNanos;
+
+	private final RegionSnapshot snapshot;
+	private final int[] snapshotChunks;
+	private int snapshotIndex = 0;
+
+	private final int[] blockOrder;
+	private final int[] inventoryOrder;
+	private final int[] hangingOrder;
+	private int blockIndex = 0;
+	private int inventoryIndex = 0;
+	private int hangingIndex = 0;
+
+	// changes near the arena's spawns are ordered first and restored in a pass of their own
+	private final boolean prioritized;
+	private final int nearSnapshotChunks;
+	private final int nearBlocks;
+	private final int nearInventories;
+	private final int nearHangings;
+	private int pass = 0;
+	private boolean reopened = false;
+	// where the changes left once the round was reopened lie in the orderings, by world and chunk, so that a chunk about
+	// to be changed again can be restored ahead of the rest; each range holds the start and end of the chunk's blocks,
+	// inventories and hangings
+	private HashMap<String, HashMap<Long, int[]>> chunkRanges = null;
+	private final HashMap<String, HashSet<Long>> settledChunks = new HashMap<String, HashSet<Long>>();
+
+	// the journal to stream changes dropped from memory back from, one kind of change at a time
+	private static final byte[] STREAM_KINDS = {JournalRecord.BLOCK, JournalRecord.INVENTORY, JournalRecord.HANGING};
+	private final File stream;
+	private RollbackJournal.Reader reader = null;
+	private int streamPhase = 0;
+	// positions of the kind being streamed which have been restored already; this holds every distinct position of the
+	// kind in the journal, i.e. at most as many as the manager retained after spilling, at roughly 24 to 48 bytes each
+	private PositionSet streamed = null;
+	private final HashMap<World, HashSet<Long>> streamedChunks = new HashMap<World, HashSet<Long>>();
+
+	private final int total;
+	private int done = 0;
+	private final long startTime = System.currentTimeMillis();
+	private int slices = 0;
+
+	// the hanging entities of the chunk currently being restored, by position
+	private World hangingWorld = null;
+	private int hangingX;
+	private int hangingZ;
+	private HashMap<Integer, Hanging> hangingEntities = null;
+
+	private String lastWorldName = null;
+	private World lastWorld = null;
+
+	// the chunk whose blocks are currently being restored, which is refreshed once they're done
+	private World dirtyWorld = null;
+	private int dirtyX;
+	private int dirtyZ;
+
+	/**
+	 * Creates a new rollback task.
+	 *
+	 * @param manager     the rollback manager which owns the task
+	 * @param arena       the arena being rolled back
+	 * @param round       the round taking place in the arena, or
+	 *                    <code>null</code> if there is none
+	 * @param blocks      the block changes to restore, or <code>null</code>
+	 * @param inventories the inventory changes to restore, or
+	 *                    <code>null</code>
+	 * @param hangings    the hanging entity changes to restore, or
+	 *                    <code>null</code>
+	 * @param stream      the journal to stream changes which were dropped
+	 *                    from memory back from, or <code>null</code>
+	 * @param streamed    the approximate number of changes in the journal
+	 * @param items       the pool of item stacks referenced by the inventory
+	 *                    changes, or <code>null</code>
+	 * @param snapshot    the snapshot to diff the arena against, or
+	 *                    <code>null</code> if the arena is reset from logged
+	 *                    changes only
+	 * @param maxChanges  the maximum number of changes to restore per tick,
+	 *                    or <code>0</code> for no limit
+	 * @param maxMicros   the maximum time in microseconds to spend per tick,
+	 *                    or <code>0</code> for no limit
+	 * @param radius      the horizontal distance from the round's spawns
+	 *                    within which changes are restored first, or
+	 *                    <code>0</code> to restore changes in no particular
+	 *                    order
+	 */
+	RollbackTask(RollbackManager manager, String arena, Round round, ChangeSet blocks, ChangeSet inventories,
+	             ChangeSet hangings, File stream, int streamed, ItemPool items, RegionSnapshot snapshot, int maxChanges,
+	             int maxMicros, int radius) {
+		this.manager = manager;
+		this.arena = arena;
+		this.round = round;
+		this.blocks = blocks;
+		this.inventories = inventories;
+		this.hangings = hangings;
+		this.stream = stream;
+		this.items = items;
+		this.snapshot = snapshot;
+		if (snapshot != null) {
+			int minX = snapshot.getMinX() >> 4;
+			int minZ = snapshot.getMinZ() >> 4;
+			int maxX = snapshot.getMaxX() >> 4;
+			int maxZ = snapshot.getMaxZ() >> 4;
+			int[] chunks = new int[(maxX - minX + 1) * (maxZ - minZ + 1) * 2];
+			int i = 0;
+			for (int x = minX; x <= maxX; x++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					if (snapshot.covers(x, z)) { // changes to chunks left out of the snapshot were logged instead
+						chunks[i++] = x;
+						chunks[i++] = z;
+					}
+				}
+			}
+			snapshotChunks = Arrays.copyOf(chunks, i);
+		}
+		else {
+			snapshotChunks = null;
+		}
+		this.maxChanges = maxChanges;
+		this.maxNanos = maxMicros * 1000L;
+		// visit each chunk only once rather than jumping back and forth between them
+		this.blockOrder = blocks != null ? blocks.sortByChunk() : null;
+		this.inventoryOrder = inventories != null ? inventories.sortByChunk() : null;
+		this.hangingOrder = hangings != null ? hangings.sortByChunk() : null;
+		// streamed changes come in no particular order, so they can't be prioritized
+		List<Location> spawns = round != null && radius > 0 && stream == null ? round.getSpawns() : null;
+		this.prioritized = spawns != null && !spawns.isEmpty();
+		if (prioritized) {
+			long radiusSquared = (long)radius * radius;
+			nearSnapshotChunks = snapshot != null ? prioritizeChunks(snapshot.getWorld(), spawns, radiusSquared) : 0;
+			nearBlocks = blocks != null ? prioritize(blocks, blockOrder, spawns, radiusSquared) : 0;
+			nearInventories = inventories != null ? prioritize(inventories, inventoryOrder, spawns, radiusSquared) : 0;
+			nearHangings = hangings != null ? prioritize(hangings, hangingOrder, spawns, radiusSquared) : 0;
+		}
+		else {
+			nearSnapshotChunks = snapshotChunks != null ? snapshotChunks.length : 0;
+			nearBlocks = blocks != null ? blocks.size() : 0;
+			nearInventories = inventories != null ? inventories.size() : 0;
+			nearHangings = hangings != null ? hangings.size() : 0;
+		}
+		this.total = (snapshotChunks != null ? snapshotChunks.length / 2 : 0) + (blocks != null ? blocks.size() : 0) +
+				(inventories != null ? inventories.size() : 0) + (hangings != null ? hangings.size() : 0) +
+				(stream != null ? streamed : 0);
+	}
+
+	/**
+	 * Stably moves the changes within the given horizontal distance of any
+	 * spawn to the front of the given ordering.
+	 *
+	 * @return the number of changes moved to the front
+	 */
+	private static int prioritize(ChangeSet changes, int[] order, List<Location> spawns, long radiusSquared) {
+		int[] far = new int[order.length];
+		int near = 0;
+		int farCount = 0;
+		for (int i : order) {
+			long pos = changes.getPosition(i);
+			if (isNear(changes.getWorld(i), ChangeSet.unpackX(pos), ChangeSet.unpackZ(pos), spawns, radiusSquared)) {
+				order[near++] = i;
+			}
+			else {
+				far[farCount++] = i;
+			}
+		}
+		System.arraycopy(far, 0, order, near, farCount);
+		return near;
+	}
+
+	/**
+	 * Stably moves the snapshot chunks any part of which lies within the
+	 * given horizontal distance of a spawn to the front of the chunk list.
+	 *
+	 * @return the number of coordinates moved to the front
+	 */
+	private int prioritizeChunks(String world, List<Location> spawns, long radiusSquared) {
+		int[] far = new int[snapshotChunks.length];
+		int near = 0;
+		int farCount = 0;
+		for (int i = 0; i < snapshotChunks.length; i += 2) {
+			int minX = snapshotChunks[i] << 4;
+			int minZ = snapshotChunks[i + 1] << 4;
+			boolean isNear = false;
+			for (Location spawn : spawns) {
+				// test the block of the chunk closest to the spawn
+				int x = Math.max(minX, Math.min(spawn.getBlockX(), minX + 15));
+				int z = Math.max(minZ, Math.min(spawn.getBlockZ(), minZ + 15));
+				if (isNear(world, x, z, spawns, radiusSquared)) {
+					isNear = true;
+					break;
+				}
+			}
+			if (isNear) {
+				snapshotChunks[near++] = snapshotChunks[i];
+				snapshotChunks[near++] = snapshotChunks[i + 1];
+			}
+			else {
+				far[farCount++] = snapshotChunks[i];
+				far[farCount++] = snapshotChunks[i + 1];
+			}
+		}
+		System.arraycopy(far, 0, snapshotChunks, near, farCount);
+		return near;
+	}
+
+	private static boolean isNear(String world, int x, int z, List<Location> spawns, long radiusSquared) {
+		for (Location spawn : spawns) {
+			long dx = x - spawn.getBlockX();
+			long dz = z - spawn.getBlockZ();
+			if (dx * dx + dz * dz <= radiusSquared && spawn.getWorld().getName().equals(world)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	String getArena() {
+		return arena;
+	}
+
+	Round getRound() {
+		return round;
+	}
+
+	/**
+	 * Retrieves whether any changes were logged for the arena.
+	 *
+	 * @return whether any changes were logged for the arena
+	 */
+	boolean hasChanges() {
+		return blocks != null || inventories != null || hangings != null || stream != null;
+	}
+
+	RegionSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	ItemPool getItems() {
+		return items;
+	}
+
+	/**
+	 * Retrieves whether the arena's round was reopened before the rollback
+	 * completed.
+	 *
+	 * @return whether the arena's round was reopened
+	 */
+	boolean isReopened() {
+		return reopened;
+	}
+
+	/**
+	 * Retrieves the number of changes (or snapshot chunks) processed so far.
+	 *
+	 * @return the number of changes processed so far
+	 */
+	int getDone() {
+		return Math.min(done, total); // the number of streamed changes is only an estimate
+	}
+
+	/**
+	 * Retrieves the total number of changes (or snapshot chunks) to process.
+	 *
+	 * @return the total number of changes to process
+	 */
+	int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Estimates the time remaining until the rollback completes, based on the
+	 * rate at which it has progressed so far.
+	 *
+	 * @return the estimated remaining time in milliseconds, or
+	 * <code>-1</code> if no estimate is available yet
+	 */
+	long getEstimatedRemainingMillis() {
+		if (done == 0) {
+			return -1;
+		}
+		return (System.currentTimeMillis() - startTime) * (total - getDone()) / done;
+	}
+
+	public void run() {
+		if (restore(maxChanges, maxNanos)) {
+			cancel();
+			manager.complete(this);
+		}
+		else {
+			manager.progress(this, ++slices);
+		}
+	}
+
+	/**
+	 * Restores all remaining changes immediately.
+	 */
+	void finish() {
+		restore(0, 0);
+	}
+
+	/**
+	 * Restores the next slice of changes. Changes within chunks which are not
+	 * currently loaded are handed to the rollback manager to be restored once
+	 * the chunk is loaded.
+	 *
+	 * @param limit the maximum number of changes to restore, or
+	 *              <code>0</code> for no limit
+	 * @param nanos the maximum time in nanoseconds to spend, or
+	 *              <code>0</code> for no limit
+	 * @return whether all changes have been restored
+	 */
+	boolean restore(int limit, long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		int restored = 0;
+		for (; pass < 2; pass++) {
+			restored = restorePass(limit, nanos, deadline, restored);
+			if (restored < 0) {
+				return false;
+			}
+			if (pass == 0 && prioritized) {
+				refresh();
+				reopened = manager.reopen(this);
+				if (reopened) {
+					indexChunks();
+				}
+			}
+		}
+		refresh();
+		return true;
+	}
+
+	/**
+	 * Restores changes up to the end of the current pass, which covers only
+	 * the changes near the round's spawns if the rollback is prioritized.
+	 *
+	 * @return the number of changes restored during this slice so far, or
+	 * <code>-1</code> if the slice's budget ran out
+	 */
+	private int restorePass(int limit, long nanos, long deadline, int restored) {
+		int snapshotEnd = snapshot == null ? 0 : pass == 0 ? nearSnapshotChunks : snapshotChunks.length;
+		int blockEnd = blocks == null ? 0 : pass == 0 ? nearBlocks : blocks.size();
+		int inventoryEnd = inventories == null ? 0 : pass == 0 ? nearInventories : inventories.size();
+		int hangingEnd = hangings == null ? 0 : pass == 0 ? nearHangings : hangings.size();
+		while (snapshotIndex < snapshotEnd) {
+			if ((limit > 0 && restored >= limit) || (nanos > 0 && System.nanoTime() - deadline >= 0)) {
+				return -1;
+			}
+			int x = snapshotChunks[snapshotIndex++];
+			int z = snapshotChunks[snapshotIndex++];
+			if (isSettled(snapshot.getWorld(), x, z)) {
+				continue; // restored ahead of the rest
+			}
+			World w = getWorld(snapshot.getWorld());
+			if (w != null) {
+				if (w.isChunkLoaded(x, z)) {
+					int count = restoreChunk(snapshot, w.getChunkAt(x, z));
+					if (count > 0) {
+						touch(w, x, z);
+					}
+					restored += count;
+				}
+				else {
+					manager.deferSnapshot(snapshot, x, z);
+				}
+			}
+			restored++;
+			done++;
+		}
+		restored = stream(0, limit, nanos, deadline, restored);
+		if (restored < 0) {
+			return -1;
+		}
+		while (blockIndex < blockEnd) {
+			if ((limit > 0 && restored >= limit) || (nanos > 0 && System.nanoTime() - deadline >= 0)) {
+				return -1;
+			}
+			int i = blockOrder[blockIndex++];
+			if (isSettled(blocks, i)) {
+				continue; // restored ahead of the rest
+			}
+			World w = getWorld(blocks.getWorld(i));
+			if (w != null) {
+				long pos = blocks.getPosition(i);
+				int x = ChangeSet.unpackX(pos);
+				int z = ChangeSet.unpackZ(pos);
+				if (w.isChunkLoaded(x >> 4, z >> 4)) {
+					touch(w, x >> 4, z >> 4);
+					restoreBlock(w.getBlockAt(x, ChangeSet.unpackY(pos), z), blocks.getType(i), blocks.getData(i),
+							blocks.getPayload(i), items, arena);
+				}
+				else {
+					manager.defer(blocks.toRecord(i, JournalRecord.BLOCK, arena), items);
+				}
+			}
+			restored++;
+			done++;
+		}
+		restored = stream(1, limit, nanos, deadline, restored);
+		if (restored < 0) {
+			return -1;
+		}
+		while (inventoryIndex < inventoryEnd) {
+			if ((limit > 0 && restored >= limit) || (nanos > 0 && System.nanoTime() - deadline >= 0)) {
+				return -1;
+			}
+			int i = inventoryOrder[inventoryIndex++];
+			if (isSettled(inventories, i)) {
+				continue; // restored ahead of the rest
+			}
+			World w = getWorld(inventories.getWorld(i));
+			if (w != null) {
+				long pos = inventories.getPosition(i);
+				int x = ChangeSet.unpackX(pos);
+				int z = ChangeSet.unpackZ(pos);
+				if (w.isChunkLoaded(x >> 4, z >> 4)) {
+					restoreInventory(w.getBlockAt(x, ChangeSet.unpackY(pos), z), inventories.getPayload(i), items, arena);
+				}
+				else {
+					manager.defer(inventories.toRecord(i, JournalRecord.INVENTORY, arena), items);
+				}
+			}
+			restored++;
+			done++;
+		}
+		// hanging entities need the blocks they're attached to, so they go last
+		restored = stream(2, limit, nanos, deadline, restored);
+		if (restored < 0) {
+			return -1;
+		}
+		while (hangingIndex < hangingEnd) {
+			if ((limit > 0 && restored >= limit) || (nanos > 0 && System.nanoTime() - deadline >= 0)) {
+				return -1;
+			}
+			int i = hangingOrder[hangingIndex++];
+			if (isSettled(hangings, i)) {
+				continue; // restored ahead of the rest
+			}
+			World w = getWorld(hangings.getWorld(i));
+			if (w != null) {
+				long pos = hangings.getPosition(i);
+				int x = ChangeSet.unpackX(pos);
+				int z = ChangeSet.unpackZ(pos);
+				if (w.isChunkLoaded(x >> 4, z >> 4)) {
+					int y = ChangeSet.unpackY(pos);
+					restoreHanging(w, x, y, z, hangings.getType(i), hangings.getPayload(i),
+							takeHanging(getHangingEntities(w, x >> 4, z >> 4), x, y, z, hangings.getData(i)), arena);
+				}
+				else {
+					manager.defer(hangings.toRecord(i, JournalRecord.HANGING, arena));
+				}
+			}
+			restored++;
+			done++;
+		}
+		return restored;
+	}
+
+	/**
+	 * Streams the changes of a single kind back from the arena's journal and
+	 * restores them. As in memory, only the first change to each position is
+	 * restored.
+	 *
+	 * @param phase the index of the kind of change to stream in
+	 *              {@link #STREAM_KINDS}
+	 * @return the number of changes restored during this slice so far, or
+	 * <code>-1</code> if the slice's budget ran out
+	 */
+	private int stream(int phase, int limit, long nanos, long deadline, int restored) {
+		while (stream != null && streamPhase == phase) {
+			if ((limit > 0 && restored >= limit) || (nanos > 0 && System.nanoTime() - deadline >= 0)) {
+				return -1;
+			}
+			JournalRecord record = null;
+			try {
+				if (reader == null) {
+					reader = new RollbackJournal.Reader(stream);
+					streamed = PositionSet.forKind(STREAM_KINDS[phase]);
+				}
+				record = reader.next();
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", arena));
+			}
+			if (record == null) { // the kind has been streamed completely
+				closeStream();
+				streamPhase++;
+				for (Map.Entry<World, HashSet<Long>> e : streamedChunks.entrySet()) {
+					for (long chunk : e.getValue()) {
+						e.getKey().refreshChunk(ChangeSet.unpackX(chunk), ChangeSet.unpackZ(chunk));
+					}
+				}
+				streamedChunks.clear();
+				continue;
+			}
+			if (record.getKind() != STREAM_KINDS[phase] || !arena.equals(record.getArena()) ||
+					!streamed.add(record.getWorld(), record.getX(), record.getY(), record.getZ(), record.getData())) {
+				continue;
+			}
+			World w = getWorld(record.getWorld());
+			if (w != null) {
+				int x = record.getX();
+				int y = record.getY();
+				int z = record.getZ();
+				if (!w.isChunkLoaded(x >> 4, z >> 4)) {
+					if (record.getKind() == JournalRecord.HANGING) {
+						manager.defer(record);
+					}
+					else {
+						manager.defer(record, items);
+					}
+				}
+				else if (record.getKind() == JournalRecord.BLOCK) {
+					HashSet<Long> chunks = streamedChunks.get(w);
+					if (chunks == null) {
+						chunks = new HashSet<Long>();
+						streamedChunks.put(w, chunks);
+					}
+					chunks.add(ChangeSet.pack(x >> 4, 0, z >> 4)); // refreshed once the kind has been streamed
+					restoreBlock(w.getBlockAt(x, y, z), record.getType(), record.getData(), record.getPayload(), items, arena);
+				}
+				else if (record.getKind() == JournalRecord.INVENTORY) {
+					restoreInventory(w.getBlockAt(x, y, z), record.getPayload(), items, arena);
+				}
+				else {
+					restoreHanging(w, x, y, z, record.getType(), record.getPayload(),
+							takeHanging(getHangingEntities(w, x >> 4, z >> 4), x, y, z, record.getData()), arena);
+				}
+			}
+			restored++;
+			done++;
+		}
+		return restored;
+	}
+
+	/**
+	 * Indexes the changes which are left once the round has been reopened by
+	 * chunk. Since the changes far from the round's spawns keep their order
+	 * by chunk, the remaining changes of each chunk are contiguous.
+	 */
+	private void indexChunks() {
+		chunkRanges = new HashMap<String, HashMap<Long, int[]>>();
+		indexChunks(blocks, blockOrder, blockIndex, 0);
+		indexChunks(inventories, inventoryOrder, inventoryIndex, 2);
+		indexChunks(hangings, hangingOrder, hangingIndex, 4);
+	}
+
+	private void indexChunks(ChangeSet changes, int[] order, int from, int slot) {
+		if (changes == null) {
+			return;
+		}
+		String lastWorld = null;
+		long lastKey = 0;
+		int[] range = null;
+		for (int j = from; j < order.length; j++) {
+			int i = order[j];
+			String world = changes.getWorld(i);
+			long pos = changes.getPosition(i);
+			long key = ChangeSet.pack(ChangeSet.unpackX(pos) >> 4, 0, ChangeSet.unpackZ(pos) >> 4);
+			if (range == null || key != lastKey || !world.equals(lastWorld)) {
+				HashMap<Long, int[]> chunks = chunkRanges.get(world);
+				if (chunks == null) {
+					chunks = new HashMap<Long, int[]>();
+					chunkRanges.put(world, chunks);
+				}
+				range = chunks.get(key);
+				if (range == null) {
+					range = new int[6];
+					chunks.put(key, range);
+				}
+				range[slot] = j;
+				lastWorld = world;
+				lastKey = key;
+			}
+			range[slot + 1] = j + 1;
+		}
+	}
+
+	/**
+	 * Restores the remaining changes within the given chunk ahead of the
+	 * rest, so that the chunk may be changed again while the rest of the
+	 * arena is still being restored. The task skips the chunk's changes when
+	 * it reaches them.
+	 *
+	 * <p>This is only supported once the round has been reopened.</p>
+	 *
+	 * @param w      the world containing the chunk
+	 * @param chunkX the x-coordinate of the chunk
+	 * @param chunkZ the z-coordinate of the chunk
+	 */
+	void settle(World w, int chunkX, int chunkZ) {
+		String world = w.getName();
+		HashSet<Long> settled = settledChunks.get(world);
+		if (settled == null) {
+			settled = new HashSet<Long>();
+			settledChunks.put(world, settled);
+		}
+		long key = ChangeSet.pack(chunkX, 0, chunkZ);
+		if (!settled.add(key)) {
+			return; // restored already
+		}
+		boolean changed = false;
+		if (snapshot != null && world.equals(snapshot.getWorld())) {
+			for (int i = snapshotIndex; i < snapshotChunks.length; i += 2) {
+				if (snapshotChunks[i] == chunkX && snapshotChunks[i + 1] == chunkZ) {
+					changed = restoreChunk(snapshot, w.getChunkAt(chunkX, chunkZ)) > 0;
+					done++;
+					break;
+				}
+			}
+		}
+		HashMap<Long, int[]> chunks = chunkRanges.get(world);
+		int[] range = chunks != null ? chunks.get(key) : null;
+		if (range != null) {
+			for (int j = Math.max(range[0], blockIndex); j < range[1]; j++) {
+				int i = blockOrder[j];
+				long pos = blocks.getPosition(i);
+				restoreBlock(w.getBlockAt(ChangeSet.unpackX(pos), ChangeSet.unpackY(pos), ChangeSet.unpackZ(pos)),
+						blocks.getType(i), blocks.getData(i), blocks.getPayload(i), items, arena);
+				changed = true;
+				done++;
+			}
+			for (int j = Math.max(range[2], inventoryIndex); j < range[3]; j++) {
+				int i = inventoryOrder[j];
+				long pos = inventories.getPosition(i);
+				restoreInventory(w.getBlockAt(ChangeSet.unpackX(pos), ChangeSet.unpackY(pos), ChangeSet.unpackZ(pos)),
+						inventories.getPayload(i), items, arena);
+				done++;
+			}
+			for (int j = Math.max(range[4], hangingIndex); j < range[5]; j++) {
+				int i = hangingOrder[j];
+				long pos = hangings.getPosition(i);
+				int x = ChangeSet.unpackX(pos);
+				int y = ChangeSet.unpackY(pos);
+				int z = ChangeSet.unpackZ(pos);
+				restoreHanging(w, x, y, z, hangings.getType(i), hangings.getPayload(i),
+						takeHanging(getHangingEntities(w, chunkX, chunkZ), x, y, z, hangings.getData(i)), arena);
+				done++;
+			}
+		}
+		if (changed) {
+			w.refreshChunk(chunkX, chunkZ);
+		}
+	}
+
+	/**
+	 * Checks whether the given chunk was restored ahead of the rest of the
+	 * arena by {@link #settle(World, int, int)}.
+	 *
+	 * @param world  the name of the world containing the chunk
+	 * @param chunkX the x-coordinate of the chunk
+	 * @param chunkZ the z-coordinate of the chunk
+	 * @return whether the chunk was restored ahead of the rest
+	 */
+	boolean isSettled(String world, int chunkX, int chunkZ) {
+		if (settledChunks.isEmpty()) {
+			return false;
+		}
+		HashSet<Long> chunks = settledChunks.get(world);
+		return chunks != null && chunks.contains(ChangeSet.pack(chunkX, 0, chunkZ));
+	}
+
+	private boolean isSettled(ChangeSet changes, int i) {
+		if (settledChunks.isEmpty()) {
+			return false;
+		}
+		long pos = changes.getPosition(i);
+		return isSettled(changes.getWorld(i), ChangeSet.unpackX(pos) >> 4, ChangeSet.unpackZ(pos) >> 4);
+	}
+
+	private HashMap<Integer, Hanging> getHangingEntities(World w, int chunkX, int chunkZ) {
+		if (w != hangingWorld || chunkX != hangingX || chunkZ != hangingZ) {
+			hangingWorld = w;
+			hangingX = chunkX;
+			hangingZ = chunkZ;
+			hangingEntities = getHangings(w.getChunkAt(chunkX, chunkZ));
+		}
+		return hangingEntities;
+	}
+
+	/**
+	 * Closes the journal being streamed, if any.
+	 */
+	private void closeStream() {
+		if (reader != null) {
+			try {
+				reader.close();
+			}
+			catch (IOException ex) {
+				ex.printStackTrace();
+			}
+			reader = null;
+			streamed = null;
+		}
+	}
+
+	/**
+	 * Marks the given chunk as having restored blocks, refreshing the chunk
+	 * previously marked if it differs. Since changes are restored chunk by
+	 * chunk, each chunk is thus refreshed only once.
+	 *
+	 * @param w      the world containing the chunk
+	 * @param chunkX the x-coordinate of the chunk
+	 * @param chunkZ the z-coordinate of the chunk
+	 */
+	private void touch(World w, int chunkX, int chunkZ) {
+		if (dirtyWorld != null && (dirtyWorld != w || dirtyX != chunkX || dirtyZ != chunkZ)) {
+			refresh();
+		}
+		dirtyWorld = w;
+		dirtyX = chunkX;
+		dirtyZ = chunkZ;
+	}
+
+	private void refresh() {
+		if (dirtyWorld != null) {
+			// blocks are restored without updates, so resend the chunk once to bring clients' lighting up to date
+			dirtyWorld.refreshChunk(dirtyX, dirtyZ);
+			dirtyWorld = null;
+		}
+	}
+
+	private World getWorld(String name) {
+		if (!name.equals(lastWorldName)) {
+			lastWorldName = name;
+			lastWorld = Bukkit.getWorld(name);
+		}
+		return lastWorld;
+	}
+
+	/**
+	 * Restores all blocks within the given chunk which differ from the given
+	 * snapshot.
+	 *
+	 * @param snapshot the snapshot to restore blocks from
+	 * @param chunk    the chunk to restore
+	 * @return the number of restored blocks
+	 */
+	static int restoreChunk(RegionSnapshot snapshot, Chunk chunk) {
+		final ChunkSnapshot live = chunk.getChunkSnapshot(false, false, false);
+		ChangeSet diff = new ChangeSet();
+		snapshot.diff(RollbackManager.getBlockSource(live), chunk.getX(), chunk.getZ(), diff);
+		for (int i = 0; i < diff.size(); i++) {
+			long pos = diff.getPosition(i);
+			restoreBlock(chunk.getWorld().getBlockAt(ChangeSet.unpackX(pos), ChangeSet.unpackY(pos), ChangeSet.unpackZ(pos)),
+					diff.getType(i), diff.getData(i), null, null, null);
+		}
+		return diff.size();
+	}
+
+	/**
+	 * Restores a single block to its logged state.
+	 *
+	 * @param b       the block to restore
+	 * @param type    the logged type id of the block
+	 * @param data    the logged data value of the block
+	 * @param payload the logged contents of the block's tile entity, or
+	 *                <code>null</code>
+	 * @param items   the pool of item stacks the contents of a container may
+	 *                reference, or <code>null</code>
+	 * @param arena   the arena the block belongs to
+	 */
+	static void restoreBlock(Block b, int type, byte data, byte[] payload, ItemPool items, String arena) {
+		try {
+			BlockCodec.restore(b, type, data, payload, items);
+		}
+		catch (InvalidConfigurationException ex) {
+			ex.printStackTrace();
+			Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", arena));
+		}
+	}
+
+	/**
+	 * Retrieves the hanging entities within the given chunk by the position
+	 * of the block they occupy and their facing, as computed by
+	 * {@link #getHangingKey(int, int, int, byte)}.
+	 *
+	 * @param chunk the chunk to retrieve the hanging entities of
+	 * @return the hanging entities within the given chunk
+	 */
+	static HashMap<Integer, Hanging> getHangings(Chunk chunk) {
+		HashMap<Integer, Hanging> hangings = new HashMap<Integer, Hanging>();
+		for (Entity e : chunk.getEntities()) {
+			if (e instanceof Hanging) {
+				Location l = e.getLocation();
+				hangings.put(getHangingKey(l.getBlockX(), l.getBlockY(), l.getBlockZ(), getFacingCode((Hanging)e)),
+						(Hanging)e);
+			}
+		}
+		return hangings;
+	}
+
+	/**
+	 * Removes the hanging entity matching a logged change from the given
+	 * entities retrieved by {@link #getHangings(Chunk)}.
+	 *
+	 * @param hangings the hanging entities within the chunk containing the
+	 *                 block
+	 * @param x        the x-coordinate of the block
+	 * @param y        the y-coordinate of the block
+	 * @param z        the z-coordinate of the block
+	 * @param facing   the logged facing code of the entity
+	 * @return the matching hanging entity, or <code>null</code> if there is
+	 * none
+	 */
+	static Hanging takeHanging(HashMap<Integer, Hanging> hangings, int x, int y, int z, byte facing) {
+		return hangings.remove(getHangingKey(x, y, z, facing));
+	}
+
+	/**
+	 * Computes the code stored in the data value of a hanging entity change
+	 * to tell apart entities occupying the same block.
+	 *
+	 * @param hanging the hanging entity
+	 * @return the facing code of the entity
+	 */
+	static byte getFacingCode(Hanging hanging) {
+		return (byte)hanging.getFacing().ordinal();
+	}
+
+	/**
+	 * Computes a key identifying a hanging entity within its chunk by the
+	 * position of the block it occupies and its facing code.
+	 *
+	 * @param x      the x-coordinate of the block
+	 * @param y      the y-coordinate of the block
+	 * @param z      the z-coordinate of the block
+	 * @param facing the facing code of the entity
+	 * @return the key of the entity
+	 */
+	static int getHangingKey(int x, int y, int z, byte facing) {
+		return (y & 0xFFF) << 16 | (x & 0xF) << 12 | (z & 0xF) << 8 | facing & 0xFF;
+	}
+
+	/**
+	 * Restores the hanging entity occupying a single block to its logged
+	 * state, reusing the entity currently occupying the block if possible.
+	 *
+	 * @param w        the world containing the block
+	 * @param x        the x-coordinate of the block
+	 * @param y        the y-coordinate of the block
+	 * @param z        the z-coordinate of the block
+	 * @param type     the logged kind of entity occupying the block
+	 * @param payload  the logged state of the entity
+	 * @param existing the hanging entity currently occupying the block, or
+	 *                 <code>null</code> if there is none
+	 * @param arena    the arena the block belongs to
+	 */
+	static void restoreHanging(World w, int x, int y, int z, int type, byte[] payload, Hanging existing,
+	                           String arena) {
+		Class<? extends Hanging> clazz = type == RollbackManager.ITEM_FRAME ? ItemFrame.class :
+		                                 type == RollbackManager.PAINTING ? Painting.class :
+		                                 null;
+		if (existing != null && (clazz == null || !clazz.isInstance(existing))) {
+			existing.remove();
+			existing = null;
+		}
+		if (clazz == null) {
+			return; // the entity was placed after the arena was last reset
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+			BlockFace facing = BlockFace.valueOf(in.readUTF());
+			Hanging hanging = existing != null ? existing : w.spawn(new Location(w, x, y, z), clazz);
+			hanging.setFacingDirection(facing, true);
+			if (hanging instanceof ItemFrame) {
+				((ItemFrame)hanging).setRotation(Rotation.valueOf(in.readUTF()));
+				byte[] item = new byte[in.readInt()];
+				in.readFully(item);
+				YamlConfiguration yaml = new YamlConfiguration();
+				yaml.loadFromString(new String(item, RollbackManager.UTF8));
+				((ItemFrame)hanging).setItem(yaml.getItemStack("item"));
+			}
+			else {
+				((Painting)hanging).setArt(Art.valueOf(in.readUTF()), true);
+			}
+		}
+		catch (Exception ex) { // malformed payload or no room to spawn the entity
+			ex.printStackTrace();
+			Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", arena));
+		}
+	}
+
+	/**
+	 * Restores the inventory of a single block to its logged state.
+	 *
+	 * @param b       the block containing the inventory
+	 * @param payload the logged contents of the inventory
+	 * @param items   the pool of item stacks the contents may reference, or
+	 *                <code>null</code>
+	 * @param arena   the arena the block belongs to
+	 */
+	static void restoreInventory(Block b, byte[] payload, ItemPool items, String arena) {
+		BlockState state = b.getState();
+		if (state instanceof InventoryHolder) {
+			try {
+				((InventoryHolder)state).getInventory().setContents(ItemPool.decode(payload, items));
+			}
+			catch (InvalidConfigurationException ex) {
+				ex.printStackTrace();
+				Main.log.severe(Main.locale.getMessage("plugin.alert.data.load", arena));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib;
+
+import net.amigocraft.mglib.api.ConfigManager;
+import net.amigocraft.mglib.api.Minigame;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The environmental changes disallowed within a single world by the
+ * minigames with arenas in it.
+ *
+ * <p>Policies are precomputed for all loaded worlds and looked up by world
+ * UUID, so that listeners for events firing many times per tick (e.g. block
+ * physics) can dismiss an event with a single lookup and bit test. The table
+ * is rebuilt on the first lookup after it has been {@link #invalidate()
+ * invalidated}, which happens whenever a world is loaded or unloaded, the
+ * worlds registered with the listener change, or a minigame's config
+ * changes.</p>
+ */
+class WorldPolicy {
+
+	static final int BURN = 1;
+	static final int FADE = 1 << 1;
+	static final int GROW = 1 << 2;
+	static final int IGNITE = 1 << 3;
+	static final int FLOW = 1 << 4;
+	static final int PHYSICS = 1 << 5;
+	static final int PISTON = 1 << 6;
+	static final int SPREAD = 1 << 7;
+	static final int EXPLODE = 1 << 8;
+	static final int MOB_SPAWN = 1 << 9;
+
+	private static HashMap<UUID, WorldPolicy> table = null;
+
+	private final int denied;
+	private final String[] plugins;
+	private final int[] masks;
+
+	private WorldPolicy(List<String> plugins, List<Integer> masks) {
+		this.plugins = plugins.toArray(new String[plugins.size()]);
+		this.masks = new int[masks.size()];
+		int union = 0;
+		for (int i = 0; i < this.masks.length; i++) {
+			this.masks[i] = masks.get(i);
+			union |= this.masks[i];
+		}
+		this.denied = union;
+	}
+
+	/**
+	 * Retrieves the policy of the given world.
+	 *
+	 * @param world the world to retrieve the policy of
+	 * @return the policy of the given world, or <code>null</code> if no
+	 * minigame disallows any changes within it
+	 */
+	static WorldPolicy get(World world) {
+		if (table == null) {
+			table = build();
+		}
+		return table.get(world.getUID());
+	}
+
+	/**
+	 * Marks all policies as stale, so that they are rebuilt on the next
+	 * lookup.
+	 */
+	static void invalidate() {
+		table = null;
+	}
+
+	/**
+	 * Checks whether any minigame disallows the given kind of change within
+	 * this world.
+	 *
+	 * @param kind the kind of change to check
+	 * @return whether any minigame disallows the given kind of change
+	 */
+	boolean denies(int kind) {
+		return (denied & kind) != 0;
+	}
+
+	/**
+	 * Retrieves the number of minigames disallowing changes within this
+	 * world.
+	 *
+	 * @return the number of minigames disallowing changes within this world
+	 */
+	int size() {
+		return plugins.length;
+	}
+
+	/**
+	 * Retrieves the name of the plugin owning the minigame at the given
+	 * index.
+	 *
+	 * @param index the index of the minigame
+	 * @return the name of the plugin owning the minigame
+	 */
+	String getPlugin(int index) {
+		return plugins[index];
+	}
+
+	/**
+	 * Checks whether the minigame at the given index disallows the given kind
+	 * of change within this world.
+	 *
+	 * @param index the index of the minigame
+	 * @param kind  the kind of change to check
+	 * @return whether the minigame disallows the given kind of change
+	 */
+	boolean denies(int index, int kind) {
+		return (masks[index] & kind) != 0;
+	}
+
+	private static HashMap<UUID, WorldPolicy> build() {
+		HashMap<UUID, List<String>> plugins = new HashMap<UUID, List<String>>();
+		HashMap<UUID, List<Integer>> masks = new HashMap<UUID, List<Integer>>();
+		for (Map.Entry<String, List<String>> entry : MGListener.worlds.entrySet()) {
+			Minigame mg = Minigame.getMinigameInstance(entry.getKey());
+			if (mg == null) {
+				continue;
+			}
+			int mask = getMask(mg.getConfigManager());
+			if (mask == 0) {
+				continue;
+			}
+			for (String name : entry.getValue()) {
+				World w = Bukkit.getWorld(name);
+				if (w == null) {
+					continue; // rebuilt once it's loaded
+				}
+				List<String> worldPlugins = plugins.get(w.getUID());
+				if (worldPlugins == null) {
+					worldPlugins = new ArrayList<String>();
+					plugins.put(w.getUID(), worldPlugins);
+					masks.put(w.getUID(), new ArrayList<Integer>());
+				}
+				if (!worldPlugins.contains(entry.getKey())) { // each of a plugin's arenas lists its world
+					worldPlugins.add(entry.getKey());
+					masks.get(w.getUID()).add(mask);
+				}
+			}
+		}
+		HashMap<UUID, WorldPolicy> table = new HashMap<UUID, WorldPolicy>();
+		for (Map.Entry<UUID, List<String>> entry : plugins.entrySet()) {
+			table.put(entry.getKey(), new WorldPolicy(entry.getValue(), masks.get(entry.getKey())));
+		}
+		return table;
+	}
+
+	/**
+	 * Computes the mask of the changes disallowed by the given config.
+	 *
+	 * @param cm the config to compute the mask of
+	 * @return the mask of the changes disallowed by the config
+	 */
+	static int getMask(ConfigManager cm) {
+		int mask = 0;
+		mask |= cm.isBlockBurnAllowed() ? 0 : BURN;
+		mask |= cm.isBlockFadeAllowed() ? 0 : FADE;
+		mask |= cm.isBlockGrowAllowed() ? 0 : GROW;
+		mask |= cm.isBlockIgniteAllowed() ? 0 : IGNITE;
+		mask |= cm.isBlockFlowAllowed() ? 0 : FLOW;
+		mask |= cm.isBlockPhysicsAllowed() ? 0 : PHYSICS;
+		mask |= cm.isBlockPistonAllowed() ? 0 : PISTON;
+		mask |= cm.isBlockSpreadAllowed() ? 0 : SPREAD;
+		mask |= cm.isEntityExplosionsAllowed() ? 0 : EXPLODE;
+		mask |= cm.isMobSpawningAllowed() ? 0 : MOB_SPAWN;
+		return mask;
+	}
+
+}
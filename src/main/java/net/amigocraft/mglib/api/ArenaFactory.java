@@ -65,7 +65,7 @@ public class ArenaFactory {
 		this.world = world;
 		setWorld(world);
 		setDisplayName(arena);
-		Main.getWorlds(plugin).add(world); // register world with event listener
+		Main.registerWorld(plugin, world); // register world with event listener
 	}
 
 	/**
@@ -24,6 +24,7 @@
 package net.amigocraft.mglib.api;
 
 import net.amigocraft.mglib.MGUtil;
+import net.amigocraft.mglib.Main;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -61,6 +62,10 @@ public class ConfigManager {
 	private boolean pvp = true;
 	private boolean damage = true;
 	private boolean rollback = true;
+	private ResetMode resetMode = ResetMode.LOG;
+	private boolean environmentLogging = false;
+	private int spawnRestoreRadius = 0;
+	private boolean rollbackVerification = false;
 	private boolean spectatorsOnSigns = true;
 	private boolean spectatorFlight = true;
 	private boolean teamDamage = true;
@@ -987,6 +992,7 @@ public class ConfigManager {
 	 */
 	public void setBlockBurnAllowed(boolean allowed) {
 		actions.put("block-burn", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1027,6 +1033,7 @@ public class ConfigManager {
 	 */
 	public void setBlockFadeAllowed(boolean allowed) {
 		actions.put("block-fade", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1051,6 +1058,7 @@ public class ConfigManager {
 	 */
 	public void setBlockGrowAllowed(boolean allowed) {
 		actions.put("block-grow", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1075,6 +1083,7 @@ public class ConfigManager {
 	 */
 	public void setBlockIgniteAllowed(boolean allowed) {
 		actions.put("block-ignite", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1099,6 +1108,7 @@ public class ConfigManager {
 	 */
 	public void setBlockFlowAllowed(boolean allowed) {
 		actions.put("block-flow", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1139,6 +1149,7 @@ public class ConfigManager {
 	 */
 	public void setBlockPhysicsAllowed(boolean allowed) {
 		actions.put("block-physics", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1179,6 +1190,7 @@ public class ConfigManager {
 	 */
 	public void setBlockPistonAllowed(boolean allowed) {
 		actions.put("block-piston", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1206,6 +1218,7 @@ public class ConfigManager {
 	 */
 	public void setBlockSpreadAllowed(boolean allowed) {
 		actions.put("block-spread", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1246,6 +1259,7 @@ public class ConfigManager {
 	 */
 	public void setEntityExplosionsAllowed(boolean allowed) {
 		actions.put("entity-explode", allowed);
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
@@ -1403,6 +1417,124 @@ public class ConfigManager {
 		this.rollback = enabled;
 	}
 
+	/**
+	 * Retrieves the {@link ResetMode mode} by which arenas are reset by
+	 * default. (default: {@link ResetMode#LOG})
+	 *
+	 * @return the {@link ResetMode mode} by which arenas are reset by default
+	 * @since 0.4.3
+	 */
+	public ResetMode getResetMode() {
+		return resetMode;
+	}
+
+	/**
+	 * Sets the {@link ResetMode mode} by which arenas are reset by default.
+	 * (default: {@link ResetMode#LOG})
+	 *
+	 * <p>Snapshot-based modes only take effect for arenas which define
+	 * boundaries; other arenas fall back to {@link ResetMode#LOG}.</p>
+	 *
+	 * @param mode the {@link ResetMode mode} by which arenas are reset by
+	 *             default
+	 * @since 0.4.3
+	 */
+	public void setResetMode(ResetMode mode) {
+		this.resetMode = mode;
+	}
+
+	/**
+	 * Retrieves the horizontal distance from an arena's spawns within which
+	 * changes are restored first when the arena is rolled back over multiple
+	 * ticks. (default: <code>0</code>, restoring changes in no particular
+	 * order)
+	 *
+	 * @return the distance from an arena's spawns within which changes are
+	 * restored first, or <code>0</code> if rollbacks are not prioritized
+	 * @since 0.4.3
+	 */
+	public int getSpawnRestoreRadius() {
+		return spawnRestoreRadius;
+	}
+
+	/**
+	 * Sets the horizontal distance from an arena's spawns within which
+	 * changes are restored first when the arena is rolled back over multiple
+	 * ticks. (default: <code>0</code>, restoring changes in no particular
+	 * order)
+	 *
+	 * <p>Once all changes near the spawns have been restored, the arena's
+	 * round is set to {@link Stage#WAITING} and may accept players while the
+	 * remaining changes are restored in the background. Should a change be
+	 * logged for the arena before then, the remaining changes within the
+	 * same chunk are restored right away.</p>
+	 *
+	 * @param radius the distance from an arena's spawns within which changes
+	 *               should be restored first, or <code>0</code> to not
+	 *               prioritize rollbacks
+	 * @since 0.4.3
+	 */
+	public void setSpawnRestoreRadius(int radius) {
+		this.spawnRestoreRadius = Math.max(radius, 0);
+	}
+
+	/**
+	 * Retrieves whether arenas are verified against checksums of their
+	 * original state after each rollback. (default: <code>false</code>)
+	 *
+	 * @return whether arenas are verified after each rollback
+	 * @since 0.4.3
+	 */
+	public boolean isRollbackVerificationEnabled() {
+		return rollbackVerification;
+	}
+
+	/**
+	 * Sets whether arenas are verified against checksums of their original
+	 * state after each rollback. (default: <code>false</code>)
+	 *
+	 * <p>When enabled, checksums of each 16x16x16 section of an arena are
+	 * computed when a round first starts in it, unless they already exist.
+	 * Sections which differ after a rollback are reported and, for arenas
+	 * reset from a snapshot, restored again.</p>
+	 *
+	 * @param enabled whether arenas should be verified after each rollback
+	 * @since 0.4.3
+	 */
+	public void setRollbackVerificationEnabled(boolean enabled) {
+		this.rollbackVerification = enabled;
+	}
+
+	/**
+	 * Retrieves whether environmental block changes (burning, fading,
+	 * growing, igniting, flowing, spreading and physics) which are otherwise
+	 * disallowed are permitted within the boundaries of arenas with rollback
+	 * enabled, in which case they are logged for rollback. (default:
+	 * <code>false</code>)
+	 *
+	 * @return whether disallowed environmental block changes are permitted
+	 * and logged within arena boundaries
+	 * @since 0.4.3
+	 */
+	public boolean isEnvironmentLoggingEnabled() {
+		return environmentLogging;
+	}
+
+	/**
+	 * Sets whether environmental block changes (burning, fading, growing,
+	 * igniting, flowing, spreading and physics) which are otherwise
+	 * disallowed are permitted within the boundaries of arenas with rollback
+	 * enabled, in which case they are logged for rollback. Changes outside
+	 * arena boundaries remain cancelled. (default: <code>false</code>)
+	 *
+	 * @param enabled whether disallowed environmental block changes should
+	 *                be permitted and logged within arena boundaries
+	 * @since 0.4.3
+	 */
+	public void setEnvironmentLoggingEnabled(boolean enabled) {
+		this.environmentLogging = enabled;
+	}
+
 	/**
 	 * Retrieves whether spectators' names are displayed on lobby signs.
 	 * (defualt: true)
@@ -1640,6 +1772,7 @@ public class ConfigManager {
 	 */
 	public void setMobSpawningAllowed(boolean allowed) {
 		this.mobSpawning = allowed;
+		Main.invalidateWorldPolicies();
 	}
 
 	/**
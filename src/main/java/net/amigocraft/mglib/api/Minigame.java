@@ -23,6 +23,7 @@
  */
 package net.amigocraft.mglib.api;
 
+import net.amigocraft.mglib.InstanceManager;
 import net.amigocraft.mglib.LobbyManager;
 import net.amigocraft.mglib.MGUtil;
 import net.amigocraft.mglib.Main;
@@ -35,6 +36,7 @@ import com.google.common.collect.Lists;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.lang.reflect.Constructor;
@@ -62,6 +64,7 @@ public class Minigame {
 
 	private ConfigManager configManager;
 	private RollbackManager rbManager;
+	private InstanceManager instanceManager;
 	private LobbyManager lobbyManager;
 	private Locale locale;
 
@@ -92,6 +95,7 @@ public class Minigame {
 		configManager = new ConfigManager(plugin.getName());
 		rbManager = new RollbackManager(plugin); // register rollback manager
 		rbManager.checkRollbacks(); // roll back any arenas which were left un-rolled back
+		instanceManager = new InstanceManager(plugin);
 		lobbyManager = new LobbyManager(plugin.getName());
 		lobbyManager.loadSigns();
 		Bukkit.getScheduler().runTask(MGUtil.getPlugin(), new Runnable() {
@@ -133,7 +137,11 @@ public class Minigame {
 	 * @since 0.4.3
 	 */
 	public static boolean unregisterPlugin(String plugin) {
-		return registeredInstances.remove(plugin) != null;
+		boolean removed = registeredInstances.remove(plugin) != null;
+		Main.invalidateWorldPolicies();
+		Main.invalidateLobbySignIndex();
+		Main.invalidateArenaIndex();
+		return removed;
 	}
 
 	/**
@@ -445,7 +453,13 @@ public class Minigame {
 	 * @since 0.1.0
 	 */
 	public MGPlayer getMGPlayer(String player) {
-		for (Round r : rounds.values()) { // iterate registered rounds
+		@SuppressWarnings("deprecation")
+		Player p = Bukkit.getPlayerExact(player);
+		if (p != null) {
+			MGPlayer mp = getRegisteredPlayer(p.getUniqueId());
+			return mp != null && mp.getPlugin().equals(plugin.getName()) && mp.getName().equals(player) ? mp : null;
+		}
+		for (Round r : rounds.values()) { // offline players can only be found by searching the rounds
 			if (r.getMGPlayer(player) != null) { // check if the player is in the round
 				return r.getMGPlayer(player);
 			}
@@ -453,6 +467,34 @@ public class Minigame {
 		return null;
 	}
 
+	/**
+	 * Retrieves the {@link MGPlayer} associated with the player with the given
+	 * UUID, regardless of which minigame's round they are in.
+	 *
+	 * @param uuid the UUID of the player
+	 * @return the {@link MGPlayer} associated with the player, or
+	 * <code>null</code> if they are not in a round
+	 * @since 0.4.3
+	 */
+	public static MGPlayer getRegisteredPlayer(UUID uuid) {
+		PlayerRegistry entry = PlayerRegistry.get(uuid);
+		return entry != null ? entry.getPlayer() : null;
+	}
+
+	/**
+	 * Retrieves the {@link Round} the player with the given UUID is in,
+	 * regardless of which minigame it belongs to.
+	 *
+	 * @param uuid the UUID of the player
+	 * @return the round the player is in, or <code>null</code> if they are not
+	 * in a round
+	 * @since 0.4.3
+	 */
+	public static Round getRegisteredRound(UUID uuid) {
+		PlayerRegistry entry = PlayerRegistry.get(uuid);
+		return entry != null ? entry.getRound() : null;
+	}
+
 	/**
 	 * Convenience method for checking if an {@link MGPlayer} is associated with
 	 * the given username.
@@ -499,6 +541,18 @@ public class Minigame {
 		return rbManager;
 	}
 
+	/**
+	 * Retrieves this minigame's instance manager, which manages the copies of
+	 * arena worlds used by rounds with the reset mode {@link
+	 * ResetMode#TEMPLATE}.
+	 *
+	 * @return this minigame's instance manager
+	 * @since 0.4.3
+	 */
+	public InstanceManager getInstanceManager() {
+		return instanceManager;
+	}
+
 	/**
 	 * Retrieves this minigame's lobby manager.
 	 *
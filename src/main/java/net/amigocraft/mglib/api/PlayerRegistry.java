@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.api;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link MGPlayer} and {@link Round} of every player currently in a round
+ * of any minigame, keyed by the player's UUID.
+ *
+ * <p>Entries are added and removed by {@link Round} as players join and
+ * leave, so that listeners can find the player causing an event with a
+ * single lookup instead of searching every round of every minigame. The
+ * registry is read from asynchronous chat events and is therefore backed by
+ * a concurrent map.</p>
+ *
+ * @since 0.4.3
+ */
+class PlayerRegistry {
+
+	private static final ConcurrentHashMap<UUID, PlayerRegistry> entries = new ConcurrentHashMap<UUID, PlayerRegistry>();
+
+	private final MGPlayer player;
+	private final Round round;
+
+	private PlayerRegistry(MGPlayer player, Round round) {
+		this.player = player;
+		this.round = round;
+	}
+
+	/**
+	 * Retrieves the entry of the player with the given UUID.
+	 *
+	 * @param uuid the UUID of the player
+	 * @return the entry of the player, or <code>null</code> if they are not in
+	 * a round
+	 */
+	static PlayerRegistry get(UUID uuid) {
+		return entries.get(uuid);
+	}
+
+	/**
+	 * Registers the given player as being in the given round.
+	 *
+	 * @param uuid   the UUID of the player
+	 * @param player the {@link MGPlayer} representing the player
+	 * @param round  the round the player has joined
+	 */
+	static void register(UUID uuid, MGPlayer player, Round round) {
+		entries.put(uuid, new PlayerRegistry(player, round));
+	}
+
+	/**
+	 * Unregisters the player with the given UUID.
+	 *
+	 * @param uuid the UUID of the player
+	 */
+	static void unregister(UUID uuid) {
+		entries.remove(uuid);
+	}
+
+	/**
+	 * Unregisters all players in the given round.
+	 *
+	 * @param round the round to unregister the players of
+	 */
+	static void unregisterAll(Round round) {
+		Iterator<PlayerRegistry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().round == round) {
+				it.remove();
+			}
+		}
+	}
+
+	MGPlayer getPlayer() {
+		return player;
+	}
+
+	Round getRound() {
+		return round;
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.api;
+
+/**
+ * Enum containing the strategies by which an arena may be reset once a
+ * {@link Round} has ended.
+ *
+ * @since 0.4.3
+ */
+public enum ResetMode {
+
+	/**
+	 * Block changes caused by players in the round are logged as they happen
+	 * and undone once the round ends.
+	 */
+	LOG,
+
+	/**
+	 * The arena's bounded region is copied when the round starts and any
+	 * blocks which differ from the copy are restored once the round ends.
+	 * This catches changes not caused by players (e.g. fire, pistons or other
+	 * plugins), but requires the arena to define boundaries.
+	 */
+	SNAPSHOT,
+
+	/**
+	 * Like {@link ResetMode#SNAPSHOT}, except that the arena's region is
+	 * copied only once and the copy is kept on disk as a baseline for all
+	 * subsequent rounds.
+	 */
+	BASELINE,
+
+	/**
+	 * Each round is played in a fresh copy of the arena's world, which is
+	 * unloaded and deleted once the round ends instead of being rolled back.
+	 * Copies are prepared off the main thread ahead of time, so this is
+	 * cheaper than replaying logged changes for small, heavily modified
+	 * arenas. The arena's world itself serves only as a template.
+	 */
+	TEMPLATE
+
+}
@@ -54,9 +54,14 @@ import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.WorldCreator;
+import org.bukkit.block.Block;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.FallingBlock;
 import org.bukkit.entity.Player;
+import org.bukkit.entity.TNTPrimed;
 import org.bukkit.event.player.PlayerTeleportEvent.TeleportCause;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
@@ -68,7 +73,9 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * Represents a round within a minigame.
@@ -78,6 +85,8 @@ import java.util.List;
  */
 public class Round implements Metadatable {
 
+	private static final int MIN_PRUNE_THRESHOLD = 64;
+
 	HashMap<String, Object> metadata = new HashMap<String, Object>();
 
 	private int minPlayers;
@@ -91,6 +100,7 @@ public class Round implements Metadatable {
 	private Stage stage;
 
 	private String world;
+	private String templateWorld;
 	private String arena;
 	private String displayName;
 	private List<Location> spawns = new ArrayList<Location>();
@@ -99,11 +109,16 @@ public class Round implements Metadatable {
 
 	private HashMap<String, MGPlayer> players = new HashMap<String, MGPlayer>();
 
+	// entities spawned by this round's players and arena, to be removed when it ends
+	private HashMap<UUID, Entity> entities = new HashMap<UUID, Entity>();
+	private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+
 	private int timerHandle = -1;
 
 	private boolean damage;
 	private boolean pvp;
 	private boolean rollback;
+	private ResetMode resetMode;
 
 	/**
 	 * Creates a new {@link Round} with the given parameters.
@@ -122,6 +137,7 @@ public class Round implements Metadatable {
 		}
 		ConfigurationSection cs = y.getConfigurationSection(arena); // make the code easier to read
 		world = cs.getString("world"); // get the name of the world of the arena
+		templateWorld = world;
 		World w = Bukkit.getWorld(world); // convert it to a Bukkit world
 		if (w == null) {
 			w = Bukkit.createWorld(new WorldCreator(world).environment(MGUtil.getEnvironment(cs.getString("world"))));
@@ -164,6 +180,7 @@ public class Round implements Metadatable {
 		this.damage = cm.isDamageAllowed();
 		this.pvp = cm.isPvPAllowed();
 		this.rollback = cm.isRollbackEnabled();
+		this.resetMode = cm.getResetMode();
 		stage = Stage.WAITING; // default to waiting stage
 		String[] defaultKeysA = new String[]{"world", "spawns", "minX", "minY", "minZ", "maxX", "maxY", "maxZ"};
 		List<String> defaultKeys = Arrays.asList(defaultKeysA);
@@ -173,6 +190,11 @@ public class Round implements Metadatable {
 			}
 		}
 		Minigame.getMinigameInstance(plugin).getRounds().put(arena, this); // register round with minigame instance
+		Main.invalidateArenaIndex();
+		if (isInstanced()) { // players may only join once the round has been moved into a copy of its world
+			stage = Stage.RESETTING;
+			getMinigame().getInstanceManager().load(this);
+		}
 	}
 
 	/**
@@ -416,7 +438,11 @@ public class Round implements Metadatable {
 	 * @since 0.1.0
 	 */
 	public void destroy() {
+		removeEntities();
 		Minigame.getMinigameInstance(plugin).getRounds().remove(this.getArena());
+		PlayerRegistry.unregisterAll(this);
+		Main.invalidateArenaIndex();
+		Minigame.getMinigameInstance(plugin).getInstanceManager().release(this);
 	}
 
 	/**
@@ -557,6 +583,7 @@ public class Round implements Metadatable {
 	public void start() {
 		final Round r = this;
 		if (stage == Stage.WAITING || stage == Stage.PREPARING) { // make sure the round isn't already started
+			Stage prevStage = stage;
 			if (r.getPreparationTime() > 0 && stage == Stage.WAITING) {
 				MinigameRoundPrepareEvent event = new MinigameRoundPrepareEvent(r);
 				MGUtil.callEvent(event);
@@ -575,6 +602,15 @@ public class Round implements Metadatable {
 				r.setTime(0); // reset timer
 				r.setStage(Stage.PLAYING);
 			}
+			if (prevStage == Stage.WAITING && getConfigManager().isRollbackEnabled() &&
+					(getResetMode() == ResetMode.SNAPSHOT || getResetMode() == ResetMode.BASELINE) && getMinBound() != null) {
+				getRollbackManager().captureSnapshot(this); // copy the arena before anything can change it
+			}
+			if (prevStage == Stage.WAITING && getConfigManager().isRollbackEnabled() &&
+					getConfigManager().isRollbackVerificationEnabled() && !isInstanced() && getMinBound() != null &&
+					!getRollbackManager().hasChecksums(getArena())) {
+				getRollbackManager().captureChecksums(this); // the arena is assumed to be pristine the first time
+			}
 			if (time != -1) { // I'm pretty sure this is wrong, but I'm also pretty tired
 				timerHandle = Bukkit.getScheduler().runTaskTimer(MGUtil.getPlugin(), new Runnable() {
 					public void run() {
@@ -699,10 +735,19 @@ public class Round implements Metadatable {
 				// I don't care if this happens
 			}
 		}
+		removeEntities();
+		if (isInstanced()) {
+			// discard the copy instead of rolling it back (sets the stage to WAITING once a fresh one is loaded)
+			getMinigame().getInstanceManager().reset(this);
+			return;
+		}
+		getMinigame().getInstanceManager().release(this); // in case the round has stopped being played in a copy
 		if (getConfigManager().isRollbackEnabled()) { // check if rollbacks are enabled
-			getRollbackManager().rollback(getArena()); // roll back arena
+			getRollbackManager().rollback(getArena()); // roll back arena (sets the stage to WAITING once complete)
+		}
+		else {
+			setStage(Stage.WAITING);
 		}
-		setStage(Stage.WAITING);
 	}
 
 	/**
@@ -757,6 +802,169 @@ public class Round implements Metadatable {
 		return maxBound;
 	}
 
+	/**
+	 * Retrieves whether the given block lies within the boundaries of the
+	 * arena this round takes place in.
+	 *
+	 * @param block the block to check
+	 * @return whether the given block lies within the boundaries of the arena
+	 * this round takes place in; always false if the arena does not have
+	 * boundaries
+	 * @since 0.4.3
+	 */
+	public boolean isWithinBounds(Block block) {
+		return isWithinBounds(block.getWorld(), block.getX(), block.getY(), block.getZ());
+	}
+
+	/**
+	 * Retrieves whether the given location lies within the boundaries of the
+	 * arena this round takes place in.
+	 *
+	 * @param location the location to check
+	 * @return whether the given location lies within the boundaries of the
+	 * arena this round takes place in; always false if the arena does not
+	 * have boundaries
+	 * @since 0.4.3
+	 */
+	public boolean isWithinBounds(Location location) {
+		return isWithinBounds(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+	}
+
+	private boolean isWithinBounds(World w, int x, int y, int z) {
+		if (minBound == null || maxBound == null) {
+			return false;
+		}
+		// compare coordinates before the world name, since most blocks will already fail on them
+		return x >= Math.min(minBound.getBlockX(), maxBound.getBlockX()) &&
+				x <= Math.max(minBound.getBlockX(), maxBound.getBlockX()) &&
+				z >= Math.min(minBound.getBlockZ(), maxBound.getBlockZ()) &&
+				z <= Math.max(minBound.getBlockZ(), maxBound.getBlockZ()) &&
+				y >= Math.min(minBound.getBlockY(), maxBound.getBlockY()) &&
+				y <= Math.max(minBound.getBlockY(), maxBound.getBlockY()) &&
+				w.getName().equals(world);
+	}
+
+	/**
+	 * Tracks the given entity as belonging to this round, so that it is
+	 * removed when the round ends. MGLib automatically tracks items dropped
+	 * and projectiles launched by the round's players, as well as any entity
+	 * spawned within the arena's boundaries while the round is in progress.
+	 * Primed TNT and falling blocks, for which no spawn event is fired, are
+	 * instead removed from the arena's loaded chunks when the round ends.
+	 *
+	 * @param entity the entity to track
+	 * @since 0.4.3
+	 */
+	public void trackEntity(Entity entity) {
+		if (entity instanceof Player) {
+			return;
+		}
+		entities.put(entity.getUniqueId(), entity);
+		if (entities.size() >= pruneThreshold) {
+			// forget entities which have since died (e.g. picked up items) so the map doesn't grow unbounded
+			pruneEntities();
+			pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, entities.size() * 2);
+		}
+	}
+
+	/**
+	 * Stops tracking the given entity, so that it is not removed when the
+	 * round ends.
+	 *
+	 * @param entity the entity to stop tracking
+	 * @since 0.4.3
+	 */
+	public void untrackEntity(Entity entity) {
+		entities.remove(entity.getUniqueId());
+	}
+
+	/**
+	 * Retrieves the number of living entities currently tracked by this
+	 * round.
+	 *
+	 * @return the number of living entities currently tracked by this round
+	 * @since 0.4.3
+	 */
+	public int getEntityCount() {
+		pruneEntities();
+		return entities.size();
+	}
+
+	/**
+	 * Retrieves the number of living entities of each type currently tracked
+	 * by this round.
+	 *
+	 * @return a hashmap mapping entity types to the number of living entities
+	 * of each type currently tracked by this round
+	 * @since 0.4.3
+	 */
+	public HashMap<EntityType, Integer> getEntityCounts() {
+		pruneEntities();
+		HashMap<EntityType, Integer> counts = new HashMap<EntityType, Integer>();
+		for (Entity e : entities.values()) {
+			Integer count = counts.get(e.getType());
+			counts.put(e.getType(), count != null ? count + 1 : 1);
+		}
+		return counts;
+	}
+
+	private void pruneEntities() {
+		Iterator<Entity> it = entities.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().isDead()) {
+				it.remove();
+			}
+		}
+	}
+
+	private void removeEntities() {
+		int removed = 0;
+		for (Entity e : entities.values()) {
+			if (!e.isDead()) {
+				e.remove();
+				removed++;
+			}
+		}
+		entities.clear();
+		pruneThreshold = MIN_PRUNE_THRESHOLD;
+		removed += removeUntrackedEntities();
+		if (removed > 0) {
+			Main.log("Removed " + removed + " entities left over from round in arena " + arena, LogLevel.DEBUG);
+		}
+	}
+
+	/**
+	 * Removes primed TNT and falling blocks left within the arena's
+	 * boundaries. Bukkit doesn't fire a spawn event for either, so they can't
+	 * be tracked when they're spawned.
+	 *
+	 * @return the number of entities removed
+	 */
+	private int removeUntrackedEntities() {
+		World w = minBound != null && maxBound != null ? Bukkit.getWorld(world) : null;
+		if (w == null) {
+			return 0;
+		}
+		int removed = 0;
+		for (int x = Math.min(minBound.getBlockX(), maxBound.getBlockX()) >> 4;
+		     x <= Math.max(minBound.getBlockX(), maxBound.getBlockX()) >> 4; x++) {
+			for (int z = Math.min(minBound.getBlockZ(), maxBound.getBlockZ()) >> 4;
+			     z <= Math.max(minBound.getBlockZ(), maxBound.getBlockZ()) >> 4; z++) {
+				if (!w.isChunkLoaded(x, z)) {
+					continue; // not worth loading the chunk for
+				}
+				for (Entity e : w.getChunkAt(x, z).getEntities()) {
+					if ((e instanceof TNTPrimed || e instanceof FallingBlock) && !e.isDead() &&
+							isWithinBounds(e.getLocation())) {
+						e.remove();
+						removed++;
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
 	/**
 	 * Sets the minimum boundary on all three axes of this round object.
 	 *
@@ -767,6 +975,8 @@ public class Round implements Metadatable {
 	 */
 	public void setMinBound(double x, double y, double z) {
 		this.minBound = new Location(this.minBound.getWorld(), x, y, z);
+		Main.invalidateArenaIndex();
+		getRollbackManager().discardChecksums(getArena()); // the baseline no longer covers the arena
 	}
 
 	/**
@@ -778,7 +988,9 @@ public class Round implements Metadatable {
 	 * @since 0.1.0
 	 */
 	public void setMaxBound(double x, double y, double z) {
-		this.minBound = new Location(this.minBound.getWorld(), x, y, z);
+		this.maxBound = new Location(this.maxBound.getWorld(), x, y, z);
+		Main.invalidateArenaIndex();
+		getRollbackManager().discardChecksums(getArena()); // the baseline no longer covers the arena
 	}
 
 	/**
@@ -815,6 +1027,58 @@ public class Round implements Metadatable {
 		return world;
 	}
 
+	/**
+	 * Retrieves the world this arena is defined in. This differs from {@link
+	 * Round#getWorld()} while the round is played in a copy of it.
+	 *
+	 * @return the name of the world this arena is defined in
+	 * @since 0.4.3
+	 */
+	public String getTemplateWorld() {
+		return templateWorld;
+	}
+
+	/**
+	 * Retrieves whether this round is played in a disposable copy of its
+	 * arena's world rather than being rolled back, i.e. whether rollback is
+	 * enabled and its {@link ResetMode reset mode} is {@link
+	 * ResetMode#TEMPLATE}.
+	 *
+	 * @return whether this round is played in a copy of its arena's world
+	 * @since 0.4.3
+	 */
+	public boolean isInstanced() {
+		return resetMode == ResetMode.TEMPLATE && getConfigManager().isRollbackEnabled();
+	}
+
+	/**
+	 * Moves this round's spawns and boundaries into the given world.
+	 *
+	 * <p><strong>This method is called by MGLib when a copy of the arena's
+	 * world is loaded or discarded and should not be called from your
+	 * plugin.</strong></p>
+	 *
+	 * @param instance the copy of the arena's world to move the round into,
+	 *                 or <code>null</code> to move it back into the world the
+	 *                 arena is defined in
+	 * @since 0.4.3
+	 */
+	public void setInstanceWorld(World instance) {
+		World w = instance != null ? instance : Bukkit.getWorld(templateWorld);
+		if (w == null) {
+			return;
+		}
+		world = w.getName();
+		for (Location l : spawns) {
+			l.setWorld(w);
+		}
+		if (minBound != null) {
+			minBound.setWorld(w);
+			maxBound.setWorld(w);
+		}
+		Main.invalidateArenaIndex();
+	}
+
 	/**
 	 * Adds a player by the given name to this {@link Round round}.
 	 *
@@ -853,6 +1117,10 @@ public class Round implements Metadatable {
 		if (p == null) { // check that the specified player is online
 			throw new PlayerOfflineException();
 		}
+		MGPlayer present = Minigame.getRegisteredPlayer(p.getUniqueId());
+		if (present != null && !present.getPlugin().equals(plugin)) { // only one round at a time, even across minigames
+			throw new PlayerPresentException();
+		}
 		MGPlayer mp = Minigame.getMinigameInstance(plugin).getMGPlayer(name);
 		if (mp == null) {
 			if (this.getMinigame().customPlayerClass) {
@@ -899,7 +1167,11 @@ public class Round implements Metadatable {
 		if (getPlayerCount() >= getMaxPlayers() && getMaxPlayers() > 0) {
 			throw new RoundFullException();
 		}
-		if (getStage() == Stage.PREPARING) {
+		if (getStage() == Stage.RESETTING) {
+			p.sendMessage(ChatColor.RED + locale.getMessage("alert.personal.resetting"));
+			return JoinResult.ROUND_RESETTING;
+		}
+		else if (getStage() == Stage.PREPARING) {
 			if (!getConfigManager().getAllowJoinRoundWhilePreparing()) {
 				p.sendMessage(ChatColor.RED + locale.getMessage("alert.personal.already-preparing"));
 				return JoinResult.ROUND_PREPARING;
@@ -959,6 +1231,7 @@ public class Round implements Metadatable {
 		}
 		p.setGameMode(org.bukkit.GameMode.valueOf(getConfigManager().getDefaultGameMode().name()));
 		players.put(name, mp); // register player with round object
+		PlayerRegistry.register(p.getUniqueId(), mp, this);
 		// update everyone's tablist
 		// this needs to be called before the player is teleported
 		List<Player> toAdd = new ArrayList<Player>();
@@ -996,6 +1269,7 @@ public class Round implements Metadatable {
 			}
 			mp.setSpectating(false); // make sure they're not spectating when they join a new round
 			players.remove(name); // remove player from round
+			PlayerRegistry.unregister(p.getUniqueId());
 			p.setGameMode(org.bukkit.GameMode.valueOf(mp.getPrevGameMode().name())); // restore the player's gamemode
 			mp.setArena(null); // they're not in an arena anymore
 			mp.reset(location); // reset the object and send the player to the exit point
@@ -1204,6 +1478,44 @@ public class Round implements Metadatable {
 		this.rollback = enabled;
 	}
 
+	/**
+	 * Retrieves the {@link ResetMode mode} by which this round's arena is
+	 * reset.
+	 *
+	 * @return the {@link ResetMode mode} by which this round's arena is reset
+	 * @since 0.4.3
+	 */
+	public ResetMode getResetMode() {
+		return resetMode;
+	}
+
+	/**
+	 * Sets the {@link ResetMode mode} by which this round's arena is reset.
+	 * This must be set before the round is started to take effect.
+	 *
+	 * <p>Switching an empty waiting round to or from {@link
+	 * ResetMode#TEMPLATE} moves it into a fresh copy of its arena's world or
+	 * back into the world itself right away; otherwise this happens once the
+	 * round ends.</p>
+	 *
+	 * @param mode the {@link ResetMode mode} by which this round's arena is
+	 *             reset
+	 * @since 0.4.3
+	 */
+	public void setResetMode(ResetMode mode) {
+		boolean wasInstanced = isInstanced();
+		this.resetMode = mode;
+		if (isInstanced() != wasInstanced && stage == Stage.WAITING && players.isEmpty()) {
+			if (wasInstanced) {
+				getMinigame().getInstanceManager().release(this);
+			}
+			else {
+				setStage(Stage.RESETTING);
+				getMinigame().getInstanceManager().load(this);
+			}
+		}
+	}
+
 	/**
 	 * Retrieves the {@link ConfigManager} of the plugin owning this round.
 	 *
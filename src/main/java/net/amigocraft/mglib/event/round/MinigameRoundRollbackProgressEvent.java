@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.event.round;
+
+import net.amigocraft.mglib.api.Round;
+
+/**
+ * Called periodically while an {@link Round MGLib round}'s arena is being
+ * rolled back over multiple ticks, after each slice of changes has been
+ * restored.
+ *
+ * @since 0.4.3
+ */
+public class MinigameRoundRollbackProgressEvent extends MGRoundEvent {
+
+	private int restored;
+	private int total;
+	private long remaining;
+
+	/**
+	 * Creates a new instance of this event.
+	 *
+	 * @param round     the round associated with this event
+	 * @param restored  the number of changes restored so far
+	 * @param total     the total number of changes to restore
+	 * @param remaining the estimated time in milliseconds until the rollback
+	 *                  completes, or <code>-1</code> if no estimate is
+	 *                  available
+	 * @since 0.4.3
+	 */
+	public MinigameRoundRollbackProgressEvent(Round round, int restored, int total, long remaining) {
+		super(round);
+		this.restored = restored;
+		this.total = total;
+		this.remaining = remaining;
+	}
+
+	/**
+	 * Retrieves the number of changes restored so far. For snapshot-based
+	 * rollbacks, each chunk of the arena counts as a single change.
+	 *
+	 * @return the number of changes restored so far
+	 * @since 0.4.3
+	 */
+	public int getRestoredChanges() {
+		return restored;
+	}
+
+	/**
+	 * Retrieves the total number of changes to restore.
+	 *
+	 * @return the total number of changes to restore
+	 * @since 0.4.3
+	 */
+	public int getTotalChanges() {
+		return total;
+	}
+
+	/**
+	 * Retrieves the fraction of changes restored so far, between
+	 * <code>0</code> and <code>1</code>.
+	 *
+	 * @return the fraction of changes restored so far
+	 * @since 0.4.3
+	 */
+	public double getProgress() {
+		return total > 0 ? (double)restored / total : 1;
+	}
+
+	/**
+	 * Retrieves the estimated time until the rollback completes, based on the
+	 * rate at which it has progressed so far.
+	 *
+	 * @return the estimated time in milliseconds until the rollback
+	 * completes, or <code>-1</code> if no estimate is available
+	 * @since 0.4.3
+	 */
+	public long getEstimatedTimeRemaining() {
+		return remaining;
+	}
+
+}
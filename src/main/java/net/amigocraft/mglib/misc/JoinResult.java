@@ -29,6 +29,7 @@ public enum JoinResult {
 	ROUND_FULL, // not used, RoundFullException thrown instead
 	ROUND_PREPARING,
 	ROUND_PLAYING,
+	ROUND_RESETTING,
 	INVENTORY_SAVE_ERROR,
 	CANCELLED,
 	INTERNAL_ERROR
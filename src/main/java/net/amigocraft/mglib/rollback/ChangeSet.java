@@ -0,0 +1,427 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The set of changes logged for a single arena, in the order they were
+ * logged.
+ *
+ * <p>Changes are stored in parallel primitive arrays and indexed per world by
+ * packed block position, so that checking whether a block has already been
+ * logged neither allocates nor builds string keys. Only the first change to a
+ * given block is retained.</p>
+ *
+ * <p>Sets of hanging entity changes are additionally keyed by the data value
+ * of each change, which holds the facing of the entity, since several item
+ * frames or a painting and an item frame may occupy a single block.</p>
+ *
+ * @since 0.4.3
+ */
+public class ChangeSet {
+
+	private static final int INITIAL_CAPACITY = 64;
+	// approximate bytes per change for the parallel arrays, the position index and a payload's array header
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private final HashMap<String, Integer> worldIds = new HashMap<String, Integer>();
+	private final List<String> worlds = new ArrayList<String>();
+	// position indices per world, by data value if keyed by it
+	private final List<PositionIndex[]> indices = new ArrayList<PositionIndex[]>();
+	private final boolean keyedByData;
+
+	private int size = 0;
+	private long payloadBytes = 0;
+	private short[] worldArr = new short[INITIAL_CAPACITY];
+	private long[] positions = new long[INITIAL_CAPACITY];
+	private short[] types = new short[INITIAL_CAPACITY];
+	private byte[] dataArr = new byte[INITIAL_CAPACITY];
+	private byte[][] payloads = new byte[INITIAL_CAPACITY][];
+
+	/**
+	 * Constructs an empty set which retains the first change to each block.
+	 *
+	 * @since 0.4.3
+	 */
+	public ChangeSet() {
+		this(false);
+	}
+
+	/**
+	 * Constructs an empty set which, if <code>keyedByData</code> is
+	 * <code>true</code>, retains the first change to each block for each
+	 * distinct data value.
+	 *
+	 * @param keyedByData whether changes with differing data values are
+	 *                    distinct even if they refer to the same block
+	 * @since 0.4.3
+	 */
+	public ChangeSet(boolean keyedByData) {
+		this.keyedByData = keyedByData;
+	}
+
+	/**
+	 * Constructs an empty set suitable for changes of the given kind, i.e.
+	 * one keyed by data value for hanging entity changes.
+	 *
+	 * @param kind the kind of changes the set will hold, as defined by
+	 *             {@link JournalRecord}
+	 * @return the new set
+	 * @since 0.4.3
+	 */
+	public static ChangeSet forKind(byte kind) {
+		return new ChangeSet(kind == JournalRecord.HANGING);
+	}
+
+	/**
+	 * Packs the given block coordinates into a single <code>long</code>.
+	 *
+	 * <p>The x- and z-coordinates occupy 26 bits each and the y-coordinate 12
+	 * bits, which covers the entire area inside the vanilla world border.</p>
+	 *
+	 * @param x the x-coordinate
+	 * @param y the y-coordinate
+	 * @param z the z-coordinate
+	 * @return the packed coordinates
+	 * @since 0.4.3
+	 */
+	public static long pack(int x, int y, int z) {
+		return ((long)x & 0x3FFFFFFL) << 38 | ((long)z & 0x3FFFFFFL) << 12 | (long)y & 0xFFFL;
+	}
+
+	/**
+	 * Unpacks the x-coordinate from the given packed coordinates.
+	 *
+	 * @param packed the packed coordinates
+	 * @return the x-coordinate
+	 * @since 0.4.3
+	 */
+	public static int unpackX(long packed) {
+		return (int)(packed >> 38);
+	}
+
+	/**
+	 * Unpacks the y-coordinate from the given packed coordinates.
+	 *
+	 * @param packed the packed coordinates
+	 * @return the y-coordinate
+	 * @since 0.4.3
+	 */
+	public static int unpackY(long packed) {
+		return (int)(packed & 0xFFFL);
+	}
+
+	/**
+	 * Unpacks the z-coordinate from the given packed coordinates.
+	 *
+	 * @param packed the packed coordinates
+	 * @return the z-coordinate
+	 * @since 0.4.3
+	 */
+	public static int unpackZ(long packed) {
+		return (int)(packed << 26 >> 38);
+	}
+
+	/**
+	 * Checks whether a change has been logged for the given block. If this
+	 * set is keyed by data value, only changes with a data value of
+	 * <code>0</code> are matched.
+	 *
+	 * @param world the name of the world containing the block
+	 * @param x     the x-coordinate of the block
+	 * @param y     the y-coordinate of the block
+	 * @param z     the z-coordinate of the block
+	 * @return whether a change has been logged for the given block
+	 * @since 0.4.3
+	 */
+	public boolean contains(String world, int x, int y, int z) {
+		return contains(world, x, y, z, (byte)0);
+	}
+
+	/**
+	 * Checks whether a change with the given data value has been logged for
+	 * the given block. The data value is ignored unless this set is keyed by
+	 * it.
+	 *
+	 * @param world the name of the world containing the block
+	 * @param x     the x-coordinate of the block
+	 * @param y     the y-coordinate of the block
+	 * @param z     the z-coordinate of the block
+	 * @param data  the data value of the change
+	 * @return whether a matching change has been logged for the given block
+	 * @since 0.4.3
+	 */
+	public boolean contains(String world, int x, int y, int z, byte data) {
+		Integer id = worldIds.get(world);
+		if (id == null) {
+			return false;
+		}
+		PositionIndex index = getIndex(id, data, false);
+		return index != null && index.get(pack(x, y, z)) >= 0;
+	}
+
+	/**
+	 * Logs a change if none has been logged for the same block (and, if this
+	 * set is keyed by it, the same data value) yet.
+	 *
+	 * @param world   the name of the world containing the block
+	 * @param x       the x-coordinate of the block
+	 * @param y       the y-coordinate of the block
+	 * @param z       the z-coordinate of the block
+	 * @param type    the original type id of the block
+	 * @param data    the original data value of the block
+	 * @param payload additional serialized state, or <code>null</code>
+	 * @return whether the change was added
+	 * @since 0.4.3
+	 */
+	public boolean add(String world, int x, int y, int z, int type, byte data, byte[] payload) {
+		int worldId = intern(world);
+		long pos = pack(x, y, z);
+		if (getIndex(worldId, data, true).putIfAbsent(pos, size) >= 0) {
+			return false;
+		}
+		if (size == positions.length) {
+			grow();
+		}
+		worldArr[size] = (short)worldId;
+		positions[size] = pos;
+		types[size] = (short)type;
+		dataArr[size] = data;
+		payloads[size] = payload != null && payload.length > 0 ? payload : null;
+		if (payloads[size] != null) {
+			payloadBytes += payload.length;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Logs the change described by the given record if none has been logged
+	 * for the same block yet.
+	 *
+	 * @param record the record describing the change
+	 * @return whether the change was added
+	 * @since 0.4.3
+	 */
+	public boolean add(JournalRecord record) {
+		return add(record.getWorld(), record.getX(), record.getY(), record.getZ(), record.getType(),
+				record.getData(), record.getPayload());
+	}
+
+	/**
+	 * Adds all changes from the given set for blocks which have not been
+	 * logged in this set yet.
+	 *
+	 * @param other the set to add changes from
+	 * @since 0.4.3
+	 */
+	public void addAll(ChangeSet other) {
+		for (int i = 0; i < other.size; i++) {
+			long pos = other.positions[i];
+			add(other.getWorld(i), unpackX(pos), unpackY(pos), unpackZ(pos), other.getType(i), other.dataArr[i],
+					other.payloads[i]);
+		}
+	}
+
+	/**
+	 * Retrieves the number of changes in this set.
+	 *
+	 * @return the number of changes in this set
+	 * @since 0.4.3
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Estimates the number of bytes of memory occupied by the changes in
+	 * this set.
+	 *
+	 * @return the approximate memory usage of this set in bytes
+	 * @since 0.4.3
+	 */
+	public long getMemoryUsage() {
+		return size * (long)ENTRY_OVERHEAD + payloadBytes;
+	}
+
+	/**
+	 * Retrieves the name of the world containing the block changed by the
+	 * change at the given index.
+	 *
+	 * @param index the index of the change
+	 * @return the name of the world containing the changed block
+	 * @since 0.4.3
+	 */
+	public String getWorld(int index) {
+		return worlds.get(worldArr[index]);
+	}
+
+	/**
+	 * Retrieves the packed coordinates of the block changed by the change at
+	 * the given index.
+	 *
+	 * @param index the index of the change
+	 * @return the packed coordinates of the changed block
+	 * @since 0.4.3
+	 */
+	public long getPosition(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * Retrieves the original type id of the block changed by the change at
+	 * the given index.
+	 *
+	 * @param index the index of the change
+	 * @return the original type id of the changed block
+	 * @since 0.4.3
+	 */
+	public int getType(int index) {
+		return types[index] & 0xFFFF;
+	}
+
+	/**
+	 * Retrieves the original data value of the block changed by the change
+	 * at the given index.
+	 *
+	 * @param index the index of the change
+	 * @return the original data value of the changed block
+	 * @since 0.4.3
+	 */
+	public byte getData(int index) {
+		return dataArr[index];
+	}
+
+	/**
+	 * Retrieves the additional serialized state of the change at the given
+	 * index.
+	 *
+	 * @param index the index of the change
+	 * @return the additional serialized state of the change, or
+	 * <code>null</code> if there is none
+	 * @since 0.4.3
+	 */
+	public byte[] getPayload(int index) {
+		return payloads[index];
+	}
+
+	/**
+	 * Builds a journal record describing the change at the given index.
+	 *
+	 * @param index the index of the change
+	 * @param kind  the kind of record to build
+	 * @param arena the arena this set belongs to
+	 * @return the new record
+	 * @since 0.4.3
+	 */
+	public JournalRecord toRecord(int index, byte kind, String arena) {
+		long pos = positions[index];
+		return new JournalRecord(kind, arena, getWorld(index), unpackX(pos), unpackY(pos), unpackZ(pos),
+				getType(index), dataArr[index], payloads[index]);
+	}
+
+	/**
+	 * Computes an ordering of the changes in this set which groups them by
+	 * world and chunk. Changes within the same chunk retain the order in
+	 * which they were logged.
+	 *
+	 * @return the indices of the changes in this set, grouped by chunk
+	 * @since 0.4.3
+	 */
+	public int[] sortByChunk() {
+		long[] chunks = new long[size];
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			long pos = positions[i];
+			chunks[i] = (long)worldArr[i] << 44 | ((long)(unpackX(pos) >> 4) & 0x3FFFFFL) << 22 |
+					(long)(unpackZ(pos) >> 4) & 0x3FFFFFL;
+			order[i] = i;
+		}
+		// bottom-up merge sort, which unlike a quicksort is stable
+		int[] buffer = new int[size];
+		for (int width = 1; width < size; width <<= 1) {
+			for (int lo = 0; lo < size; lo += width << 1) {
+				int mid = Math.min(lo + width, size);
+				int hi = Math.min(lo + (width << 1), size);
+				int i = lo;
+				int j = mid;
+				int k = lo;
+				while (i < mid && j < hi) {
+					buffer[k++] = chunks[order[j]] < chunks[order[i]] ? order[j++] : order[i++];
+				}
+				while (i < mid) {
+					buffer[k++] = order[i++];
+				}
+				while (j < hi) {
+					buffer[k++] = order[j++];
+				}
+			}
+			int[] swap = order;
+			order = buffer;
+			buffer = swap;
+		}
+		return order;
+	}
+
+	private int intern(String world) {
+		Integer id = worldIds.get(world);
+		if (id == null) {
+			id = worlds.size();
+			worldIds.put(world, id);
+			worlds.add(world);
+			indices.add(new PositionIndex[]{new PositionIndex(INITIAL_CAPACITY)});
+		}
+		return id;
+	}
+
+	private PositionIndex getIndex(int worldId, byte data, boolean create) {
+		PositionIndex[] slots = indices.get(worldId);
+		int slot = keyedByData ? data & 0xFF : 0;
+		if (slot >= slots.length) {
+			if (!create) {
+				return null;
+			}
+			slots = Arrays.copyOf(slots, slot + 1);
+			indices.set(worldId, slots);
+		}
+		if (slots[slot] == null && create) {
+			slots[slot] = new PositionIndex(INITIAL_CAPACITY);
+		}
+		return slots[slot];
+	}
+
+	private void grow() {
+		int capacity = positions.length << 1;
+		worldArr = Arrays.copyOf(worldArr, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		types = Arrays.copyOf(types, capacity);
+		dataArr = Arrays.copyOf(dataArr, capacity);
+		payloads = Arrays.copyOf(payloads, capacity);
+	}
+
+}
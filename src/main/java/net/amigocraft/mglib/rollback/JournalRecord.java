@@ -0,0 +1,239 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+/**
+ * A single change stored in a {@link RollbackJournal}.
+ *
+ * <p>Records are immutable and independent of Bukkit so that journals may be
+ * read without a running server.</p>
+ *
+ * @since 0.4.3
+ */
+public class JournalRecord {
+
+	/**
+	 * Record kind denoting a logged block change.
+	 */
+	public static final byte BLOCK = 1;
+
+	/**
+	 * Record kind denoting a logged inventory change.
+	 */
+	public static final byte INVENTORY = 2;
+
+	/**
+	 * Record kind denoting that all deferred changes within a chunk have been
+	 * restored. The chunk's coordinates are stored as the record's x- and
+	 * z-coordinates.
+	 */
+	public static final byte RESTORED = 6;
+
+	/**
+	 * Record kind defining an item stack pooled for an arena, which inventory
+	 * records of the same arena may reference. The stack's id is stored as
+	 * the record's x-coordinate and its serialized form as the payload.
+	 */
+	public static final byte ITEM = 7;
+
+	/**
+	 * Record kind denoting a logged change to a hanging entity (i.e. a
+	 * painting or item frame) occupying the record's block. The record's type
+	 * denotes the kind of entity originally occupying the block, if any, and
+	 * its payload the entity's serialized state.
+	 */
+	public static final byte HANGING = 8;
+
+	/**
+	 * Record kind binding an arena name to an interned id (internal to the
+	 * journal format).
+	 */
+	static final byte DEFINE_ARENA = 4;
+
+	/**
+	 * Record kind binding a world name to an interned id (internal to the
+	 * journal format).
+	 */
+	static final byte DEFINE_WORLD = 5;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final byte kind;
+	private final String arena;
+	private final String world;
+	private final int x;
+	private final int y;
+	private final int z;
+	private final int type;
+	private final byte data;
+	private final byte[] payload;
+
+	/**
+	 * Creates a new journal record.
+	 *
+	 * @param kind    the kind of this record
+	 * @param arena   the arena this record belongs to
+	 * @param world   the world containing the changed block, or
+	 *                <code>null</code> for {@link JournalRecord#ITEM} records
+	 * @param x       the x-coordinate of the changed block
+	 * @param y       the y-coordinate of the changed block
+	 * @param z       the z-coordinate of the changed block
+	 * @param type    the original type id of the changed block
+	 * @param data    the original data value of the changed block
+	 * @param payload additional serialized state (e.g. sign text or inventory
+	 *                contents), or <code>null</code> if there is none
+	 * @since 0.4.3
+	 */
+	public JournalRecord(byte kind, String arena, String world, int x, int y, int z, int type, byte data,
+	                     byte[] payload) {
+		this.kind = kind;
+		this.arena = arena;
+		this.world = world;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.type = type;
+		this.data = data;
+		this.payload = payload != null ? payload : EMPTY;
+	}
+
+	/**
+	 * Creates a record marking the deferred changes within the given chunk
+	 * as restored.
+	 *
+	 * @param world  the world containing the chunk
+	 * @param chunkX the x-coordinate of the chunk
+	 * @param chunkZ the z-coordinate of the chunk
+	 * @return the new record
+	 * @since 0.4.3
+	 */
+	public static JournalRecord restored(String world, int chunkX, int chunkZ) {
+		return new JournalRecord(RESTORED, "", world, chunkX, 0, chunkZ, 0, (byte)0, null);
+	}
+
+	/**
+	 * Creates a record defining a pooled item stack.
+	 *
+	 * @param arena the arena the stack is pooled for
+	 * @param id    the id of the stack within the arena's pool
+	 * @param data  the serialized stack
+	 * @return the new record
+	 * @since 0.4.3
+	 */
+	public static JournalRecord item(String arena, int id, byte[] data) {
+		return new JournalRecord(ITEM, arena, null, id, 0, 0, 0, (byte)0, data);
+	}
+
+	/**
+	 * Retrieves the kind of this record.
+	 *
+	 * @return the kind of this record
+	 * @since 0.4.3
+	 */
+	public byte getKind() {
+		return kind;
+	}
+
+	/**
+	 * Retrieves the arena this record belongs to.
+	 *
+	 * @return the arena this record belongs to
+	 * @since 0.4.3
+	 */
+	public String getArena() {
+		return arena;
+	}
+
+	/**
+	 * Retrieves the name of the world containing the changed block.
+	 *
+	 * @return the name of the world containing the changed block
+	 * @since 0.4.3
+	 */
+	public String getWorld() {
+		return world;
+	}
+
+	/**
+	 * Retrieves the x-coordinate of the changed block.
+	 *
+	 * @return the x-coordinate of the changed block
+	 * @since 0.4.3
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Retrieves the y-coordinate of the changed block.
+	 *
+	 * @return the y-coordinate of the changed block
+	 * @since 0.4.3
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Retrieves the z-coordinate of the changed block.
+	 *
+	 * @return the z-coordinate of the changed block
+	 * @since 0.4.3
+	 */
+	public int getZ() {
+		return z;
+	}
+
+	/**
+	 * Retrieves the original type id of the changed block.
+	 *
+	 * @return the original type id of the changed block
+	 * @since 0.4.3
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Retrieves the original data value of the changed block.
+	 *
+	 * @return the original data value of the changed block
+	 * @since 0.4.3
+	 */
+	public byte getData() {
+		return data;
+	}
+
+	/**
+	 * Retrieves the additional serialized state attached to this record.
+	 *
+	 * @return the additional serialized state attached to this record (never
+	 * <code>null</code>)
+	 * @since 0.4.3
+	 */
+	public byte[] getPayload() {
+		return payload;
+	}
+
+}
@@ -0,0 +1,463 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A command-line tool for inspecting and maintaining rollback journals
+ * without a running server. It is the entry point of the MGLib jar:
+ *
+ * <pre>java -jar MGLib.jar &lt;command&gt; &lt;arguments&gt;</pre>
+ *
+ * <p>Journals are always streamed record by record, so memory usage does not
+ * grow with the length of a journal or the size of its payloads. Tallies grow
+ * only with the number of distinct chunks, and compaction only with the number
+ * of distinct blocks still pending.</p>
+ *
+ * <p>The tool must not be used to modify the journals of a server which is
+ * running, since the server holds them open for appending.</p>
+ *
+ * @since 0.4.3
+ */
+public class JournalTool {
+
+	private static final String DEFERRED = "deferred.journal";
+
+	// indices into the per-chunk tallies
+	private static final int BLOCKS = 0;
+	private static final int INVENTORIES = 1;
+	private static final int HANGINGS = 2;
+
+	/**
+	 * Runs the tool.
+	 *
+	 * @param args the command followed by its arguments
+	 * @since 0.4.3
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			usage();
+			System.exit(2);
+		}
+		String command = args[0].toLowerCase();
+		boolean ok;
+		try {
+			if (command.equals("list")) {
+				ok = list(expand(args, 1));
+			}
+			else if (command.equals("chunks")) {
+				ok = chunks(expand(args, 1));
+			}
+			else if (command.equals("validate")) {
+				ok = validate(expand(args, 1));
+			}
+			else if (command.equals("compact") && args.length <= 3) {
+				File in = new File(args[1]);
+				compact(in, args.length == 3 ? new File(args[2]) : in, isOrdered(in));
+				ok = true;
+			}
+			else if (command.equals("merge") && args.length >= 3) {
+				ok = merge(new File(args[1]), expand(args, 2));
+			}
+			else {
+				usage();
+				ok = false;
+			}
+		}
+		catch (IOException ex) {
+			System.err.println("Error: " + ex.getMessage());
+			ok = false;
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static void usage() {
+		System.err.println("Usage: java -jar MGLib.jar <command> <arguments>");
+		System.err.println("  list <journal|directory>...           list arenas with pending changes");
+		System.err.println("  chunks <journal|directory>...         dump pending change counts per chunk");
+		System.err.println("  validate <journal|directory>...       check journals for corrupt or torn records");
+		System.err.println("  compact <journal> [output]            drop superseded records from a journal");
+		System.err.println("  merge <output> <journal|directory>... combine journals into a single compacted one");
+		System.err.println("Directories are searched for *.journal files, including their rollback subdirectory.");
+		System.err.println("Journals must not be compacted or merged while the server is running.");
+	}
+
+	/**
+	 * Resolves the given paths to journal files, expanding directories to
+	 * the journals they and their <code>rollback</code> subdirectory contain.
+	 */
+	private static List<File> expand(String[] args, int from) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (int i = from; i < args.length; i++) {
+			File file = new File(args[i]);
+			if (file.isDirectory()) {
+				addJournals(file, files);
+				addJournals(new File(file, "rollback"), files);
+			}
+			else if (file.isFile()) {
+				files.add(file);
+			}
+			else {
+				throw new IOException("No such file or directory: " + file.getPath());
+			}
+		}
+		return files;
+	}
+
+	private static void addJournals(File dir, List<File> files) {
+		File[] children = dir.listFiles();
+		if (children != null) {
+			Arrays.sort(children);
+			for (File child : children) {
+				if (child.isFile() && child.getName().endsWith(".journal")) {
+					files.add(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the given journal is replayed in order rather than
+	 * first-wins, as is the case for the journal of deferred changes.
+	 */
+	private static boolean isOrdered(File file) {
+		return file.getName().equals(DEFERRED);
+	}
+
+	private static boolean list(List<File> files) throws IOException {
+		for (File file : files) {
+			Map<String, Map<String, Map<Long, int[]>>> tally = tally(file);
+			System.out.println(file.getPath() + (isOrdered(file) ? " (deferred)" : "") + ":");
+			if (tally.isEmpty()) {
+				System.out.println("  no pending changes");
+			}
+			for (Map.Entry<String, Map<String, Map<Long, int[]>>> arena : tally.entrySet()) {
+				int[] total = new int[3];
+				int chunks = 0;
+				for (Map<Long, int[]> world : arena.getValue().values()) {
+					for (int[] counts : world.values()) {
+						for (int i = 0; i < total.length; i++) {
+							total[i] += counts[i];
+						}
+						chunks++;
+					}
+				}
+				System.out.println("  " + arena.getKey() + ": " + total[BLOCKS] + " block, " + total[INVENTORIES] +
+						" inventory and " + total[HANGINGS] + " hanging change(s) in " + chunks + " chunk(s)");
+			}
+		}
+		return true;
+	}
+
+	private static boolean chunks(List<File> files) throws IOException {
+		System.out.println("journal\tarena\tworld\tchunkX\tchunkZ\tblocks\tinventories\thangings");
+		for (File file : files) {
+			for (Map.Entry<String, Map<String, Map<Long, int[]>>> arena : tally(file).entrySet()) {
+				for (Map.Entry<String, Map<Long, int[]>> world : arena.getValue().entrySet()) {
+					for (Map.Entry<Long, int[]> chunk : world.getValue().entrySet()) {
+						int[] counts = chunk.getValue();
+						System.out.println(file.getName() + "\t" + arena.getKey() + "\t" + world.getKey() + "\t" +
+								(int)(chunk.getKey() >> 32) + "\t" + (int)(long)chunk.getKey() + "\t" + counts[BLOCKS] +
+								"\t" + counts[INVENTORIES] + "\t" + counts[HANGINGS]);
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Counts the records still pending in the given journal by arena, world
+	 * and chunk. Records in the journal of deferred changes which precede the
+	 * restoration of their chunk are not counted.
+	 * Repeated changes to the same block are counted individually.
+	 */
+	private static Map<String, Map<String, Map<Long, int[]>>> tally(File file) throws IOException {
+		Map<String, Map<String, Map<Long, int[]>>> tally = new TreeMap<String, Map<String, Map<Long, int[]>>>();
+		RollbackJournal.Reader reader = new RollbackJournal.Reader(file);
+		try {
+			JournalRecord record;
+			while ((record = reader.next()) != null) {
+				int index = kindIndex(record.getKind());
+				if (index >= 0) {
+					Map<String, Map<Long, int[]>> worlds = tally.get(record.getArena());
+					if (worlds == null) {
+						worlds = new TreeMap<String, Map<Long, int[]>>();
+						tally.put(record.getArena(), worlds);
+					}
+					Map<Long, int[]> chunks = worlds.get(record.getWorld());
+					if (chunks == null) {
+						chunks = new TreeMap<Long, int[]>();
+						worlds.put(record.getWorld(), chunks);
+					}
+					long key = chunkKey(record.getX() >> 4, record.getZ() >> 4);
+					int[] counts = chunks.get(key);
+					if (counts == null) {
+						counts = new int[3];
+						chunks.put(key, counts);
+					}
+					counts[index]++;
+				}
+				else if (record.getKind() == JournalRecord.RESTORED) {
+					for (Map<String, Map<Long, int[]>> worlds : tally.values()) {
+						Map<Long, int[]> chunks = worlds.get(record.getWorld());
+						if (chunks != null) {
+							chunks.remove(chunkKey(record.getX(), record.getZ()));
+						}
+					}
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		// drop arenas and worlds left empty by restored chunks
+		for (Map<String, Map<Long, int[]>> worlds : tally.values()) {
+			worlds.values().removeAll(Arrays.asList(new TreeMap<Long, int[]>()));
+		}
+		tally.values().removeAll(Arrays.asList(new TreeMap<String, Map<Long, int[]>>()));
+		return tally;
+	}
+
+	private static boolean validate(List<File> files) {
+		boolean ok = true;
+		for (File file : files) {
+			int records = 0;
+			int undefined = 0;
+			long valid;
+			try {
+				RollbackJournal.Reader reader = new RollbackJournal.Reader(file);
+				try {
+					JournalRecord record;
+					while ((record = reader.next()) != null) {
+						records++;
+						// every record interns its arena, and all but item definitions their world
+						if (record.getArena() == null ||
+								record.getWorld() == null && record.getKind() != JournalRecord.ITEM) {
+							undefined++;
+						}
+					}
+					valid = reader.getValidLength();
+				}
+				finally {
+					reader.close();
+				}
+			}
+			catch (IOException ex) {
+				System.out.println(file.getPath() + ": INVALID (" + ex.getMessage() + ")");
+				ok = false;
+				continue;
+			}
+			long length = file.length();
+			if (valid < RollbackJournal.FILE_HEADER_SIZE) {
+				System.out.println(file.getPath() + ": INVALID (incomplete file header)");
+				ok = false;
+			}
+			else if (valid < length || undefined > 0) {
+				System.out.println(file.getPath() + ": CORRUPT (" + records + " valid record(s) in " + valid + " of " +
+						length + " bytes, " + (length - valid) + " byte(s) torn or corrupt, " + undefined +
+						" record(s) referencing undefined arenas or worlds)");
+				ok = false;
+			}
+			else {
+				System.out.println(file.getPath() + ": OK (" + records + " record(s) in " + length + " bytes)");
+			}
+		}
+		return ok;
+	}
+
+	/**
+	 * Rewrites the given journal without the records its replay would
+	 * discard, i.e. repeated changes to the same block or, in the journal of
+	 * deferred changes, changes within chunks which have since been restored.
+	 * A torn tail is dropped as well.
+	 *
+	 * <p>The journal of deferred changes is streamed twice: once to find the
+	 * last restoration of each chunk, and once to write the surviving records
+	 * to a temporary file which then replaces the output. Other journals are
+	 * only streamed the second time.</p>
+	 */
+	static void compact(File in, File out, boolean ordered) throws IOException {
+		HashMap<String, HashMap<Long, Integer>> lastRestored = new HashMap<String, HashMap<Long, Integer>>();
+		RollbackJournal.Reader reader;
+		if (ordered) {
+			reader = new RollbackJournal.Reader(in);
+			int index = 0;
+			try {
+				JournalRecord record;
+				while ((record = reader.next()) != null) {
+					if (record.getKind() == JournalRecord.RESTORED) {
+						HashMap<Long, Integer> chunks = lastRestored.get(record.getWorld());
+						if (chunks == null) {
+							chunks = new HashMap<Long, Integer>();
+							lastRestored.put(record.getWorld(), chunks);
+						}
+						chunks.put(chunkKey(record.getX(), record.getZ()), index);
+					}
+					index++;
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+
+		File temp = new File(out.getPath() + ".tmp");
+		if (temp.exists() && !temp.delete()) {
+			throw new IOException("Cannot delete " + temp.getPath());
+		}
+		HashMap<String, PositionIndex> logged = new HashMap<String, PositionIndex>();
+		RollbackJournal journal = new RollbackJournal(temp, Integer.MAX_VALUE);
+		reader = new RollbackJournal.Reader(in);
+		int records = 0;
+		int kept = 0;
+		try {
+			journal.open(null);
+			JournalRecord record;
+			while ((record = reader.next()) != null) {
+				if (keep(record, records++, ordered, lastRestored, logged)) {
+					journal.append(record);
+					kept++;
+				}
+			}
+		}
+		finally {
+			reader.close();
+			journal.close();
+		}
+		long before = in.length();
+		if (out.exists() && !out.delete() || !temp.renameTo(out)) {
+			throw new IOException("Cannot replace " + out.getPath() + " with " + temp.getPath());
+		}
+		System.out.println("Compacted " + in.getPath() + " into " + out.getPath() + ": " + records + " -> " + kept +
+				" record(s), " + before + " -> " + out.length() + " bytes");
+	}
+
+	private static boolean keep(JournalRecord record, int index, boolean ordered,
+	                            HashMap<String, HashMap<Long, Integer>> lastRestored,
+	                            HashMap<String, PositionIndex> logged) {
+		// nothing logged before a restoration survives it, so it needn't survive compaction either
+		if (record.getKind() == JournalRecord.RESTORED) {
+			return false;
+		}
+		int kind = kindIndex(record.getKind());
+		if (kind < 0) {
+			return true; // item definitions and anything unknown
+		}
+		if (ordered) {
+			HashMap<Long, Integer> chunks = lastRestored.get(record.getWorld());
+			Integer restored = chunks != null ? chunks.get(chunkKey(record.getX() >> 4, record.getZ() >> 4)) : null;
+			return restored == null || index > restored;
+		}
+		String key = record.getKind() + "\0" + record.getArena() + "\0" + record.getWorld();
+		if (record.getKind() == JournalRecord.HANGING) {
+			key += "\0" + record.getData(); // hanging entities sharing a block are told apart by facing
+		}
+		PositionIndex positions = logged.get(key);
+		if (positions == null) {
+			positions = new PositionIndex(64);
+			logged.put(key, positions);
+		}
+		return positions.putIfAbsent(ChangeSet.pack(record.getX(), record.getY(), record.getZ()), 0) < 0;
+	}
+
+	/**
+	 * Appends the records of the given journals to a temporary journal in
+	 * order and compacts the result into the output.
+	 */
+	private static boolean merge(File out, List<File> files) throws IOException {
+		if (files.isEmpty()) {
+			System.err.println("No journals to merge");
+			return false;
+		}
+		boolean ordered = isOrdered(files.get(0));
+		for (File file : files) {
+			if (isOrdered(file) != ordered) {
+				System.err.println("The journal of deferred changes cannot be merged with arena journals");
+				return false;
+			}
+			if (file.getAbsoluteFile().equals(out.getAbsoluteFile())) {
+				System.err.println("The output must not be one of the merged journals");
+				return false;
+			}
+		}
+		File temp = new File(out.getPath() + ".merge");
+		if (temp.exists() && !temp.delete()) {
+			throw new IOException("Cannot delete " + temp.getPath());
+		}
+		RollbackJournal journal = new RollbackJournal(temp, Integer.MAX_VALUE);
+		try {
+			journal.open(null);
+			for (File file : files) {
+				RollbackJournal.Reader reader = new RollbackJournal.Reader(file);
+				try {
+					JournalRecord record;
+					while ((record = reader.next()) != null) {
+						journal.append(record);
+					}
+				}
+				finally {
+					reader.close();
+				}
+			}
+		}
+		finally {
+			journal.close();
+		}
+		try {
+			compact(temp, out, ordered);
+		}
+		finally {
+			temp.delete();
+		}
+		System.out.println("Merged " + files.size() + " journal(s) into " + out.getPath());
+		return true;
+	}
+
+	private static int kindIndex(byte kind) {
+		switch (kind) {
+			case JournalRecord.BLOCK:
+				return BLOCKS;
+			case JournalRecord.INVENTORY:
+				return INVENTORIES;
+			case JournalRecord.HANGING:
+				return HANGINGS;
+			default:
+				return -1;
+		}
+	}
+
+	private static long chunkKey(int chunkX, int chunkZ) {
+		return (long)chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+	}
+
+}
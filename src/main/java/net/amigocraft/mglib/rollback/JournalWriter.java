@@ -0,0 +1,500 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists records to {@link RollbackJournal}s from a dedicated thread.
+ *
+ * <p>Records are written to one of several journal files ("shards") in a
+ * directory, either a fixed one or one per arena. Shards are opened when
+ * they are first written to and deleted entirely once
+ * {@link #discard(String) discarded}, so that clearing one arena's changes
+ * never rewrites another's.</p>
+ *
+ * <p>Records are handed to the writer through a bounded queue and written in
+ * batches. When coalescing is enabled, a batch drops changes to positions
+ * which were already logged earlier in the same batch, mirroring how the
+ * journal is replayed. Changes to a shard which is discarded later in the
+ * same batch are dropped regardless. Buffered records are forced to disk by
+ * the journals' own sync interval or once every <code>syncMillis</code>
+ * milliseconds, whichever comes first.</p>
+ *
+ * <p>If the queue is full, {@link #write(JournalRecord)} blocks until the
+ * writer catches up; such stalls are counted so that they may be
+ * reported.</p>
+ *
+ * <p>Failures on the writer thread are rethrown by the next call to any of
+ * this writer's methods.</p>
+ *
+ * @since 0.4.3
+ */
+public class JournalWriter implements Runnable {
+
+	private static final int MAX_BATCH = 1024;
+
+	private final File directory;
+	private final String shard;
+	private final int syncInterval;
+	private final BlockingQueue<Object> queue;
+	private final long syncMillis;
+	private final boolean coalesce;
+
+	// only accessed by the writer thread once it has been started
+	private final HashMap<String, RollbackJournal> journals = new HashMap<String, RollbackJournal>();
+
+	private Thread thread;
+	private volatile IOException error;
+
+	private volatile long written = 0;
+	private volatile long coalesced = 0;
+	private volatile long stalls = 0;
+	private volatile long syncs = 0;
+
+	/**
+	 * Creates a new writer for journals in the given directory.
+	 *
+	 * @param directory    the directory containing the journals
+	 * @param shard        the shard to write all records to, or
+	 *                     <code>null</code> to write each arena's records to
+	 *                     a shard of its own
+	 * @param syncInterval the number of records each journal buffers before
+	 *                     forcing them to disk
+	 * @param capacity     the maximum number of records which may be queued
+	 *                     before writing blocks
+	 * @param syncMillis   the maximum time in milliseconds records may remain
+	 *                     buffered before being forced to disk
+	 * @param coalesce     whether redundant records should be dropped before
+	 *                     being written
+	 * @since 0.4.3
+	 */
+	public JournalWriter(File directory, String shard, int syncInterval, int capacity, long syncMillis,
+	                     boolean coalesce) {
+		this.directory = directory;
+		this.shard = shard;
+		this.syncInterval = syncInterval;
+		this.queue = new ArrayBlockingQueue<Object>(Math.max(capacity, 1));
+		this.syncMillis = Math.max(syncMillis, 1);
+		this.coalesce = coalesce;
+	}
+
+	/**
+	 * Starts this writer's thread.
+	 *
+	 * @since 0.4.3
+	 */
+	public void start() {
+		thread = new Thread(this, "MGLib journal writer (" + directory.getName() + (shard != null ? "/" + shard : "") + ")");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a record to be written.
+	 *
+	 * @param record the record to write
+	 * @throws IOException if a previous write failed
+	 * @since 0.4.3
+	 */
+	public void write(JournalRecord record) throws IOException {
+		enqueue(record);
+		checkError();
+	}
+
+	/**
+	 * Queues multiple records to be written.
+	 *
+	 * @param records the records to write
+	 * @throws IOException if a previous write failed
+	 * @since 0.4.3
+	 */
+	public void writeAll(Collection<JournalRecord> records) throws IOException {
+		for (JournalRecord record : records) {
+			enqueue(record);
+		}
+		checkError();
+	}
+
+	/**
+	 * Waits until all records queued so far have been written and forced to
+	 * disk.
+	 *
+	 * @throws IOException if the records could not be written
+	 * @since 0.4.3
+	 */
+	public void flush() throws IOException {
+		Command command = new Command(Command.SYNC);
+		enqueue(command);
+		await(command);
+		checkError();
+	}
+
+	/**
+	 * Queues the given shard to be deleted once all records queued so far
+	 * have been handled. Records written to the shard afterwards start a new
+	 * journal.
+	 *
+	 * @param shard the shard to discard
+	 * @throws IOException if a previous write failed
+	 * @since 0.4.3
+	 */
+	public void discard(String shard) throws IOException {
+		Command command = new Command(Command.DISCARD);
+		command.shard = shard;
+		enqueue(command);
+		checkError();
+	}
+
+	/**
+	 * Retrieves the file backing the given shard.
+	 *
+	 * @param shard the shard to retrieve the file of
+	 * @return the file backing the given shard
+	 * @since 0.4.3
+	 */
+	public File getFile(String shard) {
+		try {
+			return new File(directory, URLEncoder.encode(shard, "UTF-8") + ".journal");
+		}
+		catch (UnsupportedEncodingException ex) { // every JVM supports UTF-8
+			throw new AssertionError(ex);
+		}
+	}
+
+	/**
+	 * Writes all queued records, closes all journals and stops this writer's
+	 * thread.
+	 *
+	 * @throws IOException if the records could not be written
+	 * @since 0.4.3
+	 */
+	public void close() throws IOException {
+		Command command = new Command(Command.CLOSE);
+		enqueue(command);
+		await(command);
+		checkError();
+	}
+
+	/**
+	 * Retrieves the number of records currently waiting to be written.
+	 *
+	 * @return the number of records currently waiting to be written
+	 * @since 0.4.3
+	 */
+	public int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * Retrieves the number of records written to the journal so far.
+	 *
+	 * @return the number of records written to the journal so far
+	 * @since 0.4.3
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Retrieves the number of records dropped by coalescing so far.
+	 *
+	 * @return the number of records dropped by coalescing so far
+	 * @since 0.4.3
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Retrieves the number of times writing a record blocked because the
+	 * queue was full.
+	 *
+	 * @return the number of times writing a record blocked
+	 * @since 0.4.3
+	 */
+	public long getStalls() {
+		return stalls;
+	}
+
+	/**
+	 * Retrieves the number of times the journal was forced to disk by this
+	 * writer.
+	 *
+	 * @return the number of times the journal was forced to disk
+	 * @since 0.4.3
+	 */
+	public long getSyncs() {
+		return syncs;
+	}
+
+	private void enqueue(Object element) {
+		if (thread == null || !thread.isAlive()) {
+			process(element); // not running (anymore), so write synchronously
+			return;
+		}
+		if (!queue.offer(element)) {
+			stalls++;
+			boolean interrupted = false;
+			while (true) {
+				try {
+					queue.put(element);
+					break;
+				}
+				catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void await(Command command) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				command.done.await();
+				break;
+			}
+			catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Rethrows the most recent failure on the writer thread, if any.
+	 *
+	 * @throws IOException if a previous write failed
+	 * @since 0.4.3
+	 */
+	public void checkError() throws IOException {
+		IOException ex = error;
+		if (ex != null) {
+			error = null;
+			throw ex;
+		}
+	}
+
+	/**
+	 * Runs this writer's loop. This method <strong>should not</strong> be
+	 * called directly; use {@link #start()} instead.
+	 *
+	 * @since 0.4.3
+	 */
+	public void run() {
+		List<Object> batch = new ArrayList<Object>();
+		long lastSync = System.currentTimeMillis();
+		while (true) {
+			try {
+				Object first = queue.poll(syncMillis, TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					queue.drainTo(batch, MAX_BATCH - 1);
+				}
+			}
+			catch (InterruptedException ex) {
+				continue; // only a close command may stop the writer
+			}
+			boolean closed = false;
+			int start = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				if (batch.get(i) instanceof Command) {
+					Command command = (Command)batch.get(i);
+					if (command.op == Command.DISCARD) {
+						// don't bother writing changes which are about to be deleted
+						for (Iterator<Object> it = batch.subList(start, i).iterator(); it.hasNext(); ) {
+							if (command.shard.equals(getShard((JournalRecord)it.next()))) {
+								it.remove();
+								coalesced++;
+								i--;
+							}
+						}
+					}
+					writeRecords(batch, start, i);
+					start = i + 1;
+					process(command);
+					if (command.op == Command.SYNC || command.op == Command.CLOSE) {
+						lastSync = System.currentTimeMillis();
+					}
+					closed |= command.op == Command.CLOSE;
+				}
+			}
+			writeRecords(batch, start, batch.size());
+			batch.clear();
+			if (closed) {
+				return;
+			}
+			if (System.currentTimeMillis() - lastSync >= syncMillis) {
+				sync();
+				lastSync = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private void process(Object element) {
+		if (element instanceof Command) {
+			Command command = (Command)element;
+			try {
+				switch (command.op) {
+					case Command.SYNC:
+						sync();
+						break;
+					case Command.DISCARD:
+						RollbackJournal journal = journals.remove(command.shard);
+						if (journal != null) {
+							journal.close();
+						}
+						File file = getFile(command.shard);
+						if (file.exists() && !file.delete()) {
+							throw new IOException("Failed to delete " + file.getName());
+						}
+						break;
+					case Command.CLOSE:
+						for (RollbackJournal j : journals.values()) {
+							j.close();
+						}
+						journals.clear();
+						break;
+					default:
+						break;
+				}
+			}
+			catch (IOException ex) {
+				fail(ex);
+			}
+			command.done.countDown();
+		}
+		else {
+			JournalRecord record = (JournalRecord)element;
+			try {
+				String shard = getShard(record);
+				RollbackJournal journal = journals.get(shard);
+				if (journal == null) {
+					journal = new RollbackJournal(getFile(shard), syncInterval);
+					journal.open(null);
+					journals.put(shard, journal);
+				}
+				journal.append(record);
+				written++;
+			}
+			catch (IOException ex) {
+				fail(ex);
+			}
+		}
+	}
+
+	private String getShard(JournalRecord record) {
+		return shard != null ? shard : record.getArena();
+	}
+
+	private void sync() {
+		for (RollbackJournal journal : journals.values()) {
+			try {
+				journal.sync();
+			}
+			catch (IOException ex) {
+				fail(ex);
+			}
+		}
+		syncs++;
+	}
+
+	private void writeRecords(List<Object> batch, int start, int end) {
+		if (start >= end) {
+			return;
+		}
+		List<Object> records = coalesce ? coalesce(batch.subList(start, end)) : batch.subList(start, end);
+		for (Object record : records) {
+			process(record);
+		}
+	}
+
+	/**
+	 * Drops the records of a batch which change a position already changed
+	 * earlier in the batch, since only the first change gets restored.
+	 */
+	List<Object> coalesce(List<Object> records) {
+		List<Object> result = new ArrayList<Object>(records.size());
+		// positions already logged in this batch, by kind and arena
+		HashMap<String, ChangeSet> seen = new HashMap<String, ChangeSet>();
+		for (Object element : records) {
+			JournalRecord record = (JournalRecord)element;
+			if (record.getKind() == JournalRecord.BLOCK || record.getKind() == JournalRecord.INVENTORY ||
+					record.getKind() == JournalRecord.HANGING) {
+				String key = record.getKind() + record.getArena();
+				ChangeSet positions = seen.get(key);
+				if (positions == null) {
+					positions = ChangeSet.forKind(record.getKind());
+					seen.put(key, positions);
+				}
+				if (!positions.add(record.getWorld(), record.getX(), record.getY(), record.getZ(), 0, record.getData(), null)) {
+					coalesced++; // the first change to a position is the one which gets restored
+					continue;
+				}
+			}
+			result.add(record);
+		}
+		return result;
+	}
+
+	private void fail(IOException ex) {
+		ex.printStackTrace();
+		error = ex;
+	}
+
+	private static class Command {
+
+		private static final int SYNC = 0;
+		private static final int DISCARD = 1;
+		private static final int CLOSE = 2;
+
+		private final int op;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private String shard;
+
+		private Command(int op) {
+			this.op = op;
+		}
+
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.util.Arrays;
+
+/**
+ * A primitive open-addressing hash map from packed block positions to
+ * <code>int</code> values.
+ *
+ * <p>Keys are produced by {@link ChangeSet#pack(int, int, int)}. Lookups and
+ * insertions do not allocate.</p>
+ *
+ * @since 0.4.3
+ */
+class PositionIndex {
+
+	private static final int EMPTY = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size = 0;
+
+	PositionIndex(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * Retrieves the value mapped to the given key.
+	 *
+	 * @param key the key to look up
+	 * @return the value mapped to the key, or <code>-1</code> if there is none
+	 */
+	int get(long key) {
+		int i = slot(key);
+		while (values[i] != EMPTY) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * Maps the given key to the given value if the key is not already
+	 * present.
+	 *
+	 * @param key   the key to insert
+	 * @param value the value to map the key to (must not be negative)
+	 * @return the existing value mapped to the key, or <code>-1</code> if the
+	 * new mapping was inserted
+	 */
+	int putIfAbsent(long key, int value) {
+		int i = slot(key);
+		while (values[i] != EMPTY) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > (mask + 1) >> 1) { // keep the load factor at or below 0.5
+			rehash();
+		}
+		return EMPTY;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long getMemoryUsage() {
+		return keys.length * 12L; // a long key and an int value per slot
+	}
+
+	private int slot(long key) {
+		// MurmurHash3 finalizer, so that neighbouring positions spread evenly
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int)key & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, EMPTY);
+		mask = capacity - 1;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length << 1);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != EMPTY) {
+				int j = slot(oldKeys[i]);
+				while (values[j] != EMPTY) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+}
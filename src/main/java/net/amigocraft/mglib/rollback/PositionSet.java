@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A set of block positions per world, which retains only enough of each
+ * logged change to tell whether its block has been logged before.
+ *
+ * <p>Each position costs roughly 24 to 48 bytes, depending on how full its
+ * world's index is, compared to 64 bytes plus the payload for a change in a
+ * {@link ChangeSet}. Like change sets, sets of hanging entity positions are
+ * additionally keyed by data value, i.e. by the facing of the entity.</p>
+ *
+ * @since 0.4.3
+ */
+public class PositionSet {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// position indices per world, by data value if keyed by it
+	private final HashMap<String, PositionIndex[]> indices = new HashMap<String, PositionIndex[]>();
+	private final boolean keyedByData;
+	private int size = 0;
+
+	/**
+	 * Constructs an empty set which, if <code>keyedByData</code> is
+	 * <code>true</code>, distinguishes positions by data value.
+	 *
+	 * @param keyedByData whether positions with differing data values are
+	 *                    distinct
+	 * @since 0.4.3
+	 */
+	public PositionSet(boolean keyedByData) {
+		this.keyedByData = keyedByData;
+	}
+
+	/**
+	 * Constructs an empty set suitable for positions of changes of the given
+	 * kind, i.e. one keyed by data value for hanging entity changes.
+	 *
+	 * @param kind the kind of changes the set will hold positions of, as
+	 *             defined by {@link JournalRecord}
+	 * @return the new set
+	 * @since 0.4.3
+	 */
+	public static PositionSet forKind(byte kind) {
+		return new PositionSet(kind == JournalRecord.HANGING);
+	}
+
+	/**
+	 * Adds the given position if it is not present yet.
+	 *
+	 * @param world the name of the world containing the block
+	 * @param x     the x-coordinate of the block
+	 * @param y     the y-coordinate of the block
+	 * @param z     the z-coordinate of the block
+	 * @param data  the data value of the change, which is ignored unless
+	 *              this set is keyed by it
+	 * @return whether the position was added
+	 * @since 0.4.3
+	 */
+	public boolean add(String world, int x, int y, int z, byte data) {
+		if (getIndex(world, data, true).putIfAbsent(ChangeSet.pack(x, y, z), 0) >= 0) {
+			return false;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds the positions of all changes in the given set.
+	 *
+	 * @param changes the set to add the positions of
+	 * @since 0.4.3
+	 */
+	public void addAll(ChangeSet changes) {
+		for (int i = 0; i < changes.size(); i++) {
+			long pos = changes.getPosition(i);
+			add(changes.getWorld(i), ChangeSet.unpackX(pos), ChangeSet.unpackY(pos), ChangeSet.unpackZ(pos),
+					changes.getData(i));
+		}
+	}
+
+	/**
+	 * Checks whether the given position is present.
+	 *
+	 * @param world the name of the world containing the block
+	 * @param x     the x-coordinate of the block
+	 * @param y     the y-coordinate of the block
+	 * @param z     the z-coordinate of the block
+	 * @param data  the data value of the change, which is ignored unless
+	 *              this set is keyed by it
+	 * @return whether the position is present
+	 * @since 0.4.3
+	 */
+	public boolean contains(String world, int x, int y, int z, byte data) {
+		PositionIndex index = getIndex(world, data, false);
+		return index != null && index.get(ChangeSet.pack(x, y, z)) >= 0;
+	}
+
+	/**
+	 * Retrieves the number of positions in this set.
+	 *
+	 * @return the number of positions in this set
+	 * @since 0.4.3
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Estimates the number of bytes of memory occupied by this set.
+	 *
+	 * @return the approximate memory usage of this set in bytes
+	 * @since 0.4.3
+	 */
+	public long getMemoryUsage() {
+		long usage = 0;
+		for (PositionIndex[] slots : indices.values()) {
+			for (PositionIndex index : slots) {
+				usage += index != null ? index.getMemoryUsage() : 0;
+			}
+		}
+		return usage;
+	}
+
+	private PositionIndex getIndex(String world, byte data, boolean create) {
+		PositionIndex[] slots = indices.get(world);
+		int slot = keyedByData ? data & 0xFF : 0;
+		if (slots == null || slot >= slots.length) {
+			if (!create) {
+				return null;
+			}
+			slots = slots == null ? new PositionIndex[slot + 1] : Arrays.copyOf(slots, slot + 1);
+			indices.put(world, slots);
+		}
+		if (slots[slot] == null && create) {
+			slots[slot] = new PositionIndex(INITIAL_CAPACITY);
+		}
+		return slots[slot];
+	}
+
+}
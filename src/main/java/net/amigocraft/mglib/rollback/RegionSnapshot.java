@@ -0,0 +1,564 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A palette-encoded copy of the blocks within a cuboid region of a world.
+ *
+ * <p>Each block is stored as an index into a palette of the distinct
+ * type/data combinations present in the region, packed into as few bits as
+ * the palette size allows. Block states which cannot be expressed through
+ * type and data alone (e.g. sign text and container contents) are stored
+ * separately as {@link ChangeSet}s.</p>
+ *
+ * <p>A snapshot need not cover every chunk spanned by its region, since
+ * chunks which aren't loaded when it is taken are left out rather than
+ * loaded. Blocks within such chunks are neither stored nor diffed.</p>
+ *
+ * @since 0.4.3
+ */
+public class RegionSnapshot {
+
+	private static final int MAGIC = 0x4D474C53; // "MGLS"
+	private static final short VERSION = 2;
+
+	private final String world;
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int maxX;
+	private final int maxY;
+	private final int maxZ;
+	private final boolean baseline;
+	// whether each chunk spanned by the region is covered, in x-major order, or null if all of them are
+	private final boolean[] covered;
+
+	private final int[] palette;
+	private final int bits;
+	private final int perWord;
+	private final long mask;
+	private final long[] data;
+
+	private final ChangeSet tiles;
+	private final ChangeSet inventories;
+
+	/**
+	 * Creates a new snapshot of the given region.
+	 *
+	 * @param world       the name of the world containing the region
+	 * @param minX        the minimum x-coordinate of the region
+	 * @param minY        the minimum y-coordinate of the region
+	 * @param minZ        the minimum z-coordinate of the region
+	 * @param maxX        the maximum x-coordinate of the region
+	 * @param maxY        the maximum y-coordinate of the region
+	 * @param maxZ        the maximum z-coordinate of the region
+	 * @param baseline    whether the snapshot is a permanent baseline rather
+	 *                    than a copy taken for a single round
+	 * @param source      the source to read the blocks within the region
+	 *                    from
+	 * @param tiles       the blocks within the region whose state includes
+	 *                    additional serialized data
+	 * @param inventories the inventories within the region
+	 * @since 0.4.3
+	 */
+	public RegionSnapshot(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean baseline,
+	                      BlockSource source, ChangeSet tiles, ChangeSet inventories) {
+		this(world, minX, minY, minZ, maxX, maxY, maxZ, baseline, source, null, tiles, inventories);
+	}
+
+	/**
+	 * Creates a new snapshot of the given chunks within the given region.
+	 *
+	 * @param world       the name of the world containing the region
+	 * @param minX        the minimum x-coordinate of the region
+	 * @param minY        the minimum y-coordinate of the region
+	 * @param minZ        the minimum z-coordinate of the region
+	 * @param maxX        the maximum x-coordinate of the region
+	 * @param maxY        the maximum y-coordinate of the region
+	 * @param maxZ        the maximum z-coordinate of the region
+	 * @param baseline    whether the snapshot is a permanent baseline rather
+	 *                    than a copy taken for a single round
+	 * @param source      the source to read the blocks within the covered
+	 *                    chunks from
+	 * @param chunks      the chunks to cover, packed by
+	 *                    {@link ChangeSet#pack(int, int, int)} with a
+	 *                    y-coordinate of <code>0</code>, or
+	 *                    <code>null</code> to cover all of them
+	 * @param tiles       the blocks within the region whose state includes
+	 *                    additional serialized data
+	 * @param inventories the inventories within the region
+	 * @since 0.4.3
+	 */
+	public RegionSnapshot(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean baseline,
+	                      BlockSource source, Set<Long> chunks, ChangeSet tiles, ChangeSet inventories) {
+		this.world = world;
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		this.baseline = baseline;
+		this.tiles = tiles;
+		this.inventories = inventories;
+		if (chunks != null) {
+			covered = new boolean[((maxX >> 4) - (minX >> 4) + 1) * ((maxZ >> 4) - (minZ >> 4) + 1)];
+			for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+				for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+					covered[chunkIndex(cx, cz)] = chunks.contains(ChangeSet.pack(cx, 0, cz));
+				}
+			}
+		}
+		else {
+			covered = null;
+		}
+		int[] states = new int[volume()];
+		int i = 0;
+		for (int y = minY; y <= maxY; y++) {
+			for (int z = minZ; z <= maxZ; z++) {
+				for (int x = minX; x <= maxX; x++) {
+					// blocks of chunks which aren't covered are stored as air, but never read back
+					states[i++] = covers(x >> 4, z >> 4) ? source.getState(x, y, z) : 0;
+				}
+			}
+		}
+		// states are at most 16 bits wide, so a flat lookup table beats a hash map here
+		int[] lookup = new int[1 << 16];
+		Arrays.fill(lookup, -1);
+		int[] pal = new int[16];
+		int size = 0;
+		for (int state : states) {
+			if (lookup[state] == -1) {
+				if (size == pal.length) {
+					pal = Arrays.copyOf(pal, size << 1);
+				}
+				lookup[state] = size;
+				pal[size++] = state;
+			}
+		}
+		this.palette = Arrays.copyOf(pal, size);
+		this.bits = bitsFor(size);
+		this.perWord = 64 / bits;
+		this.mask = (1L << bits) - 1;
+		this.data = new long[(states.length + perWord - 1) / perWord];
+		for (i = 0; i < states.length; i++) {
+			data[i / perWord] |= (long)lookup[states[i]] << (i % perWord) * bits;
+		}
+	}
+
+	private RegionSnapshot(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean baseline,
+	                       boolean[] covered, int[] palette, long[] data, ChangeSet tiles, ChangeSet inventories) {
+		this.world = world;
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		this.baseline = baseline;
+		this.covered = covered;
+		this.palette = palette;
+		this.bits = bitsFor(palette.length);
+		this.perWord = 64 / bits;
+		this.mask = (1L << bits) - 1;
+		this.data = data;
+		this.tiles = tiles;
+		this.inventories = inventories;
+	}
+
+	private static int bitsFor(int paletteSize) {
+		return Math.max(32 - Integer.numberOfLeadingZeros(paletteSize - 1), 1);
+	}
+
+	/**
+	 * Combines a block type and data value into a single state value.
+	 *
+	 * @param type the type id of the block
+	 * @param data the data value of the block
+	 * @return the combined state
+	 * @since 0.4.3
+	 */
+	public static int state(int type, int data) {
+		return (type & 0xFFF) << 4 | data & 0xF;
+	}
+
+	private int index(int x, int y, int z) {
+		return ((y - minY) * (maxZ - minZ + 1) + (z - minZ)) * (maxX - minX + 1) + (x - minX);
+	}
+
+	private int chunkIndex(int chunkX, int chunkZ) {
+		return (chunkX - (minX >> 4)) * ((maxZ >> 4) - (minZ >> 4) + 1) + (chunkZ - (minZ >> 4));
+	}
+
+	/**
+	 * Retrieves whether the given chunk is spanned by the region and was
+	 * captured by this snapshot.
+	 *
+	 * @param chunkX the x-coordinate of the chunk
+	 * @param chunkZ the z-coordinate of the chunk
+	 * @return whether the given chunk is covered by this snapshot
+	 * @since 0.4.3
+	 */
+	public boolean covers(int chunkX, int chunkZ) {
+		if (chunkX < minX >> 4 || chunkX > maxX >> 4 || chunkZ < minZ >> 4 || chunkZ > maxZ >> 4) {
+			return false;
+		}
+		return covered == null || covered[chunkIndex(chunkX, chunkZ)];
+	}
+
+	/**
+	 * Retrieves the number of blocks within the region.
+	 *
+	 * @return the number of blocks within the region
+	 * @since 0.4.3
+	 */
+	public int volume() {
+		return (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+	}
+
+	/**
+	 * Retrieves the stored state of the given block.
+	 *
+	 * @param x the x-coordinate of the block
+	 * @param y the y-coordinate of the block
+	 * @param z the z-coordinate of the block
+	 * @return the stored state of the block, or <code>-1</code> if it lies
+	 * outside the region or within a chunk which isn't covered
+	 * @since 0.4.3
+	 */
+	public int get(int x, int y, int z) {
+		if (!contains(x, y, z) || !covers(x >> 4, z >> 4)) {
+			return -1;
+		}
+		int i = index(x, y, z);
+		return palette[(int)(data[i / perWord] >>> (i % perWord) * bits & mask)];
+	}
+
+	/**
+	 * Compares the part of the region within the given chunk against the
+	 * given source and adds the stored state of each differing block to the
+	 * given change set. Chunks which aren't covered by this snapshot have no
+	 * differing blocks.
+	 *
+	 * @param live   the source to read the current blocks from
+	 * @param chunkX the x-coordinate of the chunk
+	 * @param chunkZ the z-coordinate of the chunk
+	 * @param out    the change set to add differing blocks to
+	 * @return the number of differing blocks
+	 * @since 0.4.3
+	 */
+	public int diff(BlockSource live, int chunkX, int chunkZ, ChangeSet out) {
+		if (!covers(chunkX, chunkZ)) {
+			return 0;
+		}
+		int fromX = Math.max(chunkX << 4, minX);
+		int toX = Math.min((chunkX << 4) + 15, maxX);
+		int fromZ = Math.max(chunkZ << 4, minZ);
+		int toZ = Math.min((chunkZ << 4) + 15, maxZ);
+		int count = 0;
+		for (int y = minY; y <= maxY; y++) {
+			for (int z = fromZ; z <= toZ; z++) {
+				for (int x = fromX; x <= toX; x++) {
+					int i = index(x, y, z);
+					int stored = palette[(int)(data[i / perWord] >>> (i % perWord) * bits & mask)];
+					if (live.getState(x, y, z) != stored) {
+						out.add(world, x, y, z, stored >> 4, (byte)(stored & 0xF), null);
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Retrieves whether the given block lies within the region.
+	 *
+	 * @param x the x-coordinate of the block
+	 * @param y the y-coordinate of the block
+	 * @param z the z-coordinate of the block
+	 * @return whether the block lies within the region
+	 * @since 0.4.3
+	 */
+	public boolean contains(int x, int y, int z) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+	}
+
+	/**
+	 * Retrieves the name of the world containing the region.
+	 *
+	 * @return the name of the world containing the region
+	 * @since 0.4.3
+	 */
+	public String getWorld() {
+		return world;
+	}
+
+	/**
+	 * Retrieves the minimum x-coordinate of the region.
+	 *
+	 * @return the minimum x-coordinate of the region
+	 * @since 0.4.3
+	 */
+	public int getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Retrieves the minimum y-coordinate of the region.
+	 *
+	 * @return the minimum y-coordinate of the region
+	 * @since 0.4.3
+	 */
+	public int getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Retrieves the minimum z-coordinate of the region.
+	 *
+	 * @return the minimum z-coordinate of the region
+	 * @since 0.4.3
+	 */
+	public int getMinZ() {
+		return minZ;
+	}
+
+	/**
+	 * Retrieves the maximum x-coordinate of the region.
+	 *
+	 * @return the maximum x-coordinate of the region
+	 * @since 0.4.3
+	 */
+	public int getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Retrieves the maximum y-coordinate of the region.
+	 *
+	 * @return the maximum y-coordinate of the region
+	 * @since 0.4.3
+	 */
+	public int getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Retrieves the maximum z-coordinate of the region.
+	 *
+	 * @return the maximum z-coordinate of the region
+	 * @since 0.4.3
+	 */
+	public int getMaxZ() {
+		return maxZ;
+	}
+
+	/**
+	 * Retrieves whether this snapshot is a permanent baseline rather than a
+	 * copy taken for a single round.
+	 *
+	 * @return whether this snapshot is a permanent baseline
+	 * @since 0.4.3
+	 */
+	public boolean isBaseline() {
+		return baseline;
+	}
+
+	/**
+	 * Retrieves the number of distinct block states within the region.
+	 *
+	 * @return the number of distinct block states within the region
+	 * @since 0.4.3
+	 */
+	public int getPaletteSize() {
+		return palette.length;
+	}
+
+	/**
+	 * Retrieves the blocks within the region whose state includes additional
+	 * serialized data.
+	 *
+	 * @return the blocks within the region whose state includes additional
+	 * serialized data
+	 * @since 0.4.3
+	 */
+	public ChangeSet getTiles() {
+		return tiles;
+	}
+
+	/**
+	 * Retrieves the inventories within the region.
+	 *
+	 * @return the inventories within the region
+	 * @since 0.4.3
+	 */
+	public ChangeSet getInventories() {
+		return inventories;
+	}
+
+	/**
+	 * Writes this snapshot to the given stream.
+	 *
+	 * @param stream the stream to write to
+	 * @throws IOException if the snapshot cannot be written
+	 * @since 0.4.3
+	 */
+	public void write(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeUTF(world);
+		out.writeInt(minX);
+		out.writeInt(minY);
+		out.writeInt(minZ);
+		out.writeInt(maxX);
+		out.writeInt(maxY);
+		out.writeInt(maxZ);
+		out.writeBoolean(baseline);
+		out.writeBoolean(covered != null);
+		if (covered != null) {
+			out.writeInt(covered.length);
+			for (boolean chunk : covered) {
+				out.writeBoolean(chunk);
+			}
+		}
+		out.writeInt(palette.length);
+		for (int state : palette) {
+			out.writeInt(state);
+		}
+		out.writeInt(data.length);
+		for (long word : data) {
+			out.writeLong(word);
+		}
+		writeChanges(out, tiles);
+		writeChanges(out, inventories);
+		out.flush();
+	}
+
+	/**
+	 * Reads a snapshot from the given stream.
+	 *
+	 * @param stream the stream to read from
+	 * @return the snapshot which was read
+	 * @throws IOException if the snapshot cannot be read
+	 * @since 0.4.3
+	 */
+	public static RegionSnapshot read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a region snapshot");
+		}
+		short version = in.readShort();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported region snapshot version " + version);
+		}
+		String world = in.readUTF();
+		int minX = in.readInt();
+		int minY = in.readInt();
+		int minZ = in.readInt();
+		int maxX = in.readInt();
+		int maxY = in.readInt();
+		int maxZ = in.readInt();
+		boolean baseline = in.readBoolean();
+		boolean[] covered = null;
+		if (version >= 2 && in.readBoolean()) { // snapshots of the first version cover every chunk
+			covered = new boolean[in.readInt()];
+			for (int i = 0; i < covered.length; i++) {
+				covered[i] = in.readBoolean();
+			}
+		}
+		int[] palette = new int[in.readInt()];
+		for (int i = 0; i < palette.length; i++) {
+			palette[i] = in.readInt();
+		}
+		long[] data = new long[in.readInt()];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = in.readLong();
+		}
+		ChangeSet tiles = readChanges(in, world);
+		ChangeSet inventories = readChanges(in, world);
+		return new RegionSnapshot(world, minX, minY, minZ, maxX, maxY, maxZ, baseline, covered, palette, data, tiles,
+				inventories);
+	}
+
+	private static void writeChanges(DataOutputStream out, ChangeSet changes) throws IOException {
+		out.writeInt(changes.size());
+		for (int i = 0; i < changes.size(); i++) {
+			out.writeLong(changes.getPosition(i));
+			out.writeShort(changes.getType(i));
+			out.writeByte(changes.getData(i));
+			byte[] payload = changes.getPayload(i);
+			out.writeInt(payload != null ? payload.length : 0);
+			if (payload != null) {
+				out.write(payload);
+			}
+		}
+	}
+
+	private static ChangeSet readChanges(DataInputStream in, String world) throws IOException {
+		ChangeSet changes = new ChangeSet();
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			long pos = in.readLong();
+			int type = in.readShort() & 0xFFFF;
+			byte data = in.readByte();
+			byte[] payload = new byte[in.readInt()];
+			in.readFully(payload);
+			changes.add(world, ChangeSet.unpackX(pos), ChangeSet.unpackY(pos), ChangeSet.unpackZ(pos), type, data,
+					payload);
+		}
+		return changes;
+	}
+
+	/**
+	 * Provides the states of blocks to a snapshot.
+	 *
+	 * @since 0.4.3
+	 */
+	public interface BlockSource {
+
+		/**
+		 * Retrieves the state of the given block as returned by
+		 * {@link RegionSnapshot#state(int, int)}.
+		 *
+		 * @param x the x-coordinate of the block
+		 * @param y the y-coordinate of the block
+		 * @param z the z-coordinate of the block
+		 * @return the state of the block
+		 * @since 0.4.3
+		 */
+		int getState(int x, int y, int z);
+
+	}
+
+}
@@ -0,0 +1,425 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only binary journal of rollback records.
+ *
+ * <p>Each record consists of a fixed-size header of
+ * {@link #RECORD_HEADER_SIZE} bytes followed by an optional variable-length
+ * payload, so records as a whole vary in size and can only be read in
+ * sequence. The header stores the record kind, interned arena and world ids,
+ * the block position, the original type and data, the payload length and a
+ * CRC32 checksum covering both header and payload. A record whose checksum
+ * does not match (e.g. because the server crashed mid-write) marks the end of
+ * the usable journal.</p>
+ *
+ * <p>Writes are buffered and only forced to disk every
+ * <code>syncInterval</code> records or when {@link #sync()} is called.</p>
+ *
+ * @since 0.4.3
+ */
+public class RollbackJournal {
+
+	/**
+	 * The magic number identifying a rollback journal ("MGLJ").
+	 */
+	public static final int MAGIC = 0x4D474C4A;
+
+	/**
+	 * The current version of the journal format.
+	 */
+	public static final short VERSION = 1;
+
+	/**
+	 * The size in bytes of the journal's file header.
+	 */
+	public static final int FILE_HEADER_SIZE = 6;
+
+	/**
+	 * The size in bytes of a record's fixed header.
+	 */
+	public static final int RECORD_HEADER_SIZE = 28;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final int syncInterval;
+
+	private FileOutputStream fos;
+	private BufferedOutputStream out;
+	private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+	private final CRC32 crc = new CRC32();
+	private int unsynced = 0;
+
+	private HashMap<String, Short> arenaIds = new HashMap<String, Short>();
+	private HashMap<String, Short> worldIds = new HashMap<String, Short>();
+
+	/**
+	 * Creates a new journal backed by the given file. The journal must be
+	 * {@link #open(RecordHandler) opened} before records may be appended.
+	 *
+	 * @param file         the file backing the journal
+	 * @param syncInterval the number of records to buffer before forcing them
+	 *                     to disk
+	 * @since 0.4.3
+	 */
+	public RollbackJournal(File file, int syncInterval) {
+		this.file = file;
+		this.syncInterval = Math.max(syncInterval, 1);
+	}
+
+	/**
+	 * Retrieves the file backing this journal.
+	 *
+	 * @return the file backing this journal
+	 * @since 0.4.3
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Replays any existing records to the given handler, discards a torn tail
+	 * left behind by an unclean shutdown, and opens the journal for appending.
+	 *
+	 * @param handler the handler to pass existing records to, or
+	 *                <code>null</code> to skip them
+	 * @throws IOException if the journal cannot be read or opened
+	 * @since 0.4.3
+	 */
+	public synchronized void open(RecordHandler handler) throws IOException {
+		if (!file.exists()) {
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+		}
+		long valid = file.length() >= FILE_HEADER_SIZE ? replay(file, handler, arenaIds, worldIds) : 0;
+		if (valid < file.length()) {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(valid);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		fos = new FileOutputStream(file, true);
+		out = new BufferedOutputStream(fos, 8192);
+		if (valid == 0) {
+			writeFileHeader();
+		}
+	}
+
+	/**
+	 * Appends a record to the journal.
+	 *
+	 * @param record the record to append
+	 * @throws IOException if the record cannot be written
+	 * @since 0.4.3
+	 */
+	public synchronized void append(JournalRecord record) throws IOException {
+		short arena = intern(arenaIds, record.getArena(), JournalRecord.DEFINE_ARENA);
+		short world = record.getWorld() != null ?
+		              intern(worldIds, record.getWorld(), JournalRecord.DEFINE_WORLD) :
+		              -1;
+		write(record.getKind(), record.getData(), arena, world, (short)record.getType(),
+				record.getX(), record.getY(), record.getZ(), record.getPayload());
+	}
+
+	/**
+	 * Flushes buffered records and forces them to disk.
+	 *
+	 * @throws IOException if the records cannot be written
+	 * @since 0.4.3
+	 */
+	public synchronized void sync() throws IOException {
+		if (out != null && unsynced > 0) {
+			out.flush();
+			fos.getFD().sync();
+			unsynced = 0;
+		}
+	}
+
+	/**
+	 * Syncs and closes the journal.
+	 *
+	 * @throws IOException if buffered records cannot be written
+	 * @since 0.4.3
+	 */
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			try {
+				sync();
+			}
+			finally {
+				out.close();
+				out = null;
+				fos = null;
+			}
+		}
+	}
+
+	private void writeFileHeader() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(FILE_HEADER_SIZE);
+		buf.putInt(MAGIC).putShort(VERSION);
+		out.write(buf.array());
+		unsynced++;
+		sync();
+	}
+
+	private short intern(HashMap<String, Short> ids, String name, byte kind) throws IOException {
+		Short existing = ids.get(name);
+		if (existing != null) {
+			return existing;
+		}
+		short id = (short)ids.size();
+		ids.put(name, id);
+		write(kind, (byte)0, kind == JournalRecord.DEFINE_ARENA ? id : (short)-1,
+				kind == JournalRecord.DEFINE_WORLD ? id : (short)-1, (short)0, 0, 0, 0, name.getBytes(UTF8));
+		return id;
+	}
+
+	private void write(byte kind, byte data, short arena, short world, short type, int x, int y, int z,
+	                   byte[] payload) throws IOException {
+		header.clear();
+		header.put(kind).put(data).putShort(arena).putShort(world).putShort(type)
+				.putInt(x).putInt(y).putInt(z).putInt(payload.length);
+		crc.reset();
+		crc.update(header.array(), 0, RECORD_HEADER_SIZE - 4);
+		crc.update(payload);
+		header.putInt((int)crc.getValue());
+		out.write(header.array());
+		out.write(payload);
+		if (++unsynced >= syncInterval) {
+			sync();
+		}
+	}
+
+	/**
+	 * Reads all valid records from the given journal file and passes them to
+	 * the given handler. Reading stops at the first truncated or corrupt
+	 * record.
+	 *
+	 * @param file    the journal file to read
+	 * @param handler the handler to pass records to, or <code>null</code>
+	 * @return the length in bytes of the valid portion of the journal
+	 * @throws IOException if the file cannot be read or is not a journal
+	 * @since 0.4.3
+	 */
+	public static long replay(File file, RecordHandler handler) throws IOException {
+		return replay(file, handler, new HashMap<String, Short>(), new HashMap<String, Short>());
+	}
+
+	private static long replay(File file, RecordHandler handler, HashMap<String, Short> arenaIds,
+	                           HashMap<String, Short> worldIds) throws IOException {
+		Reader reader = new Reader(file, arenaIds, worldIds);
+		try {
+			JournalRecord record;
+			while ((record = reader.next()) != null) {
+				if (handler != null) {
+					handler.handle(record);
+				}
+			}
+			return reader.getValidLength();
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads the valid records of a journal file one at a time, so that large
+	 * journals can be streamed rather than read into memory at once.
+	 * Reading stops at the first truncated or corrupt record.
+	 *
+	 * @since 0.4.3
+	 */
+	public static class Reader implements Closeable {
+
+		private final File file;
+		private final DataInputStream in;
+		private final HashMap<String, Short> arenaIds;
+		private final HashMap<String, Short> worldIds;
+		private final HashMap<Short, String> arenas = new HashMap<Short, String>();
+		private final HashMap<Short, String> worlds = new HashMap<Short, String>();
+		private final byte[] head = new byte[RECORD_HEADER_SIZE];
+		private final CRC32 crc = new CRC32();
+		private long valid = 0;
+		private boolean done = false;
+
+		/**
+		 * Opens the given journal file for reading.
+		 *
+		 * @param file the journal file to read
+		 * @throws IOException if the file cannot be read or is not a journal
+		 * @since 0.4.3
+		 */
+		public Reader(File file) throws IOException {
+			this(file, new HashMap<String, Short>(), new HashMap<String, Short>());
+		}
+
+		private Reader(File file, HashMap<String, Short> arenaIds, HashMap<String, Short> worldIds)
+				throws IOException {
+			this.file = file;
+			this.arenaIds = arenaIds;
+			this.worldIds = worldIds;
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new IOException("Not a rollback journal: " + file.getName());
+				}
+				short version = in.readShort();
+				if (version != VERSION) {
+					throw new IOException("Unsupported rollback journal version " + version + ": " + file.getName());
+				}
+				valid = FILE_HEADER_SIZE;
+			}
+			catch (EOFException ex) { // file header is incomplete
+				done = true;
+			}
+			catch (IOException ex) {
+				in.close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * Reads the next record from the journal.
+		 *
+		 * @return the next record, or <code>null</code> if the end of the
+		 * valid portion of the journal has been reached
+		 * @throws IOException if the file cannot be read
+		 * @since 0.4.3
+		 */
+		public JournalRecord next() throws IOException {
+			while (!done) {
+				try {
+					in.readFully(head);
+				}
+				catch (EOFException ex) {
+					break;
+				}
+				ByteBuffer buf = ByteBuffer.wrap(head);
+				byte kind = buf.get();
+				byte data = buf.get();
+				short arena = buf.getShort();
+				short world = buf.getShort();
+				short type = buf.getShort();
+				int x = buf.getInt();
+				int y = buf.getInt();
+				int z = buf.getInt();
+				int length = buf.getInt();
+				int checksum = buf.getInt();
+				if (length < 0 || length > file.length() - valid - RECORD_HEADER_SIZE) {
+					break; // torn or corrupt record
+				}
+				byte[] payload = new byte[length];
+				try {
+					in.readFully(payload);
+				}
+				catch (EOFException ex) {
+					break;
+				}
+				crc.reset();
+				crc.update(head, 0, RECORD_HEADER_SIZE - 4);
+				crc.update(payload);
+				if ((int)crc.getValue() != checksum) {
+					break;
+				}
+				valid += RECORD_HEADER_SIZE + length;
+				if (kind == JournalRecord.DEFINE_ARENA) {
+					String name = new String(payload, UTF8);
+					arenas.put(arena, name);
+					arenaIds.put(name, arena);
+				}
+				else if (kind == JournalRecord.DEFINE_WORLD) {
+					String name = new String(payload, UTF8);
+					worlds.put(world, name);
+					worldIds.put(name, world);
+				}
+				else {
+					return new JournalRecord(kind, arenas.get(arena), worlds.get(world), x, y, z, type & 0xFFFF, data,
+							payload);
+				}
+			}
+			done = true;
+			return null;
+		}
+
+		/**
+		 * Retrieves the length in bytes of the valid portion of the journal
+		 * read so far.
+		 *
+		 * @return the length of the valid portion of the journal read so far
+		 * @since 0.4.3
+		 */
+		public long getValidLength() {
+			return valid;
+		}
+
+		/**
+		 * Closes the underlying file.
+		 *
+		 * @throws IOException if the file cannot be closed
+		 * @since 0.4.3
+		 */
+		public void close() throws IOException {
+			in.close();
+		}
+
+	}
+
+	/**
+	 * Receives records read back from a journal.
+	 *
+	 * @since 0.4.3
+	 */
+	public interface RecordHandler {
+
+		/**
+		 * Handles a single record read from a journal.
+		 *
+		 * @param record the record which was read
+		 * @since 0.4.3
+		 */
+		void handle(JournalRecord record);
+
+	}
+
+}
@@ -0,0 +1,249 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Checksums of the blocks within each 16x16x16 chunk section of a cuboid
+ * region of a world, used to verify that the region has been restored
+ * without comparing it block by block against a full copy.
+ *
+ * <p>Sections on the region's edges only cover the blocks within the
+ * region.</p>
+ *
+ * @since 0.4.3
+ */
+public class SectionChecksums {
+
+	private static final int MAGIC = 0x4D474C43; // "MGLC"
+	private static final short VERSION = 1;
+
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private final String world;
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int maxX;
+	private final int maxY;
+	private final int maxZ;
+
+	private final int sectionsX;
+	private final int sectionsY;
+	private final int sectionsZ;
+	private final long[] sums;
+
+	/**
+	 * Computes the checksums of the given region.
+	 *
+	 * @param world  the name of the world containing the region
+	 * @param minX   the minimum x-coordinate of the region
+	 * @param minY   the minimum y-coordinate of the region
+	 * @param minZ   the minimum z-coordinate of the region
+	 * @param maxX   the maximum x-coordinate of the region
+	 * @param maxY   the maximum y-coordinate of the region
+	 * @param maxZ   the maximum z-coordinate of the region
+	 * @param source the source to read the blocks within the region from
+	 * @since 0.4.3
+	 */
+	public SectionChecksums(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+	                        RegionSnapshot.BlockSource source) {
+		this(world, minX, minY, minZ, maxX, maxY, maxZ);
+		for (int sx = 0; sx < sectionsX; sx++) {
+			for (int sz = 0; sz < sectionsZ; sz++) {
+				for (int sy = 0; sy < sectionsY; sy++) {
+					sums[index(sx, sy, sz)] = checksum(source, (minX >> 4) + sx, (minY >> 4) + sy, (minZ >> 4) + sz);
+				}
+			}
+		}
+	}
+
+	private SectionChecksums(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		this.world = world;
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		this.sectionsX = (maxX >> 4) - (minX >> 4) + 1;
+		this.sectionsY = (maxY >> 4) - (minY >> 4) + 1;
+		this.sectionsZ = (maxZ >> 4) - (minZ >> 4) + 1;
+		this.sums = new long[sectionsX * sectionsY * sectionsZ];
+	}
+
+	private int index(int sx, int sy, int sz) {
+		return (sx * sectionsZ + sz) * sectionsY + sy;
+	}
+
+	private long checksum(RegionSnapshot.BlockSource source, int sectionX, int sectionY, int sectionZ) {
+		int fromX = Math.max(sectionX << 4, minX);
+		int toX = Math.min((sectionX << 4) + 15, maxX);
+		int fromY = Math.max(sectionY << 4, minY);
+		int toY = Math.min((sectionY << 4) + 15, maxY);
+		int fromZ = Math.max(sectionZ << 4, minZ);
+		int toZ = Math.min((sectionZ << 4) + 15, maxZ);
+		// 64-bit FNV-1a over the two bytes of each state
+		long hash = FNV_OFFSET;
+		for (int y = fromY; y <= toY; y++) {
+			for (int z = fromZ; z <= toZ; z++) {
+				for (int x = fromX; x <= toX; x++) {
+					int state = source.getState(x, y, z);
+					hash = (hash ^ (state & 0xFF)) * FNV_PRIME;
+					hash = (hash ^ (state >> 8 & 0xFF)) * FNV_PRIME;
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Recomputes the checksums of the sections of the region within the
+	 * given chunk and compares them against the stored checksums.
+	 *
+	 * @param live   the source to read the current blocks from
+	 * @param chunkX the x-coordinate of the chunk
+	 * @param chunkZ the z-coordinate of the chunk
+	 * @return the y-coordinates of the sections whose checksums differ, in
+	 * ascending order
+	 * @since 0.4.3
+	 */
+	public int[] verify(RegionSnapshot.BlockSource live, int chunkX, int chunkZ) {
+		int sx = chunkX - (minX >> 4);
+		int sz = chunkZ - (minZ >> 4);
+		if (sx < 0 || sx >= sectionsX || sz < 0 || sz >= sectionsZ) {
+			return new int[0];
+		}
+		int[] mismatches = new int[sectionsY];
+		int count = 0;
+		for (int sy = 0; sy < sectionsY; sy++) {
+			if (checksum(live, chunkX, (minY >> 4) + sy, chunkZ) != sums[index(sx, sy, sz)]) {
+				mismatches[count++] = (minY >> 4) + sy;
+			}
+		}
+		int[] result = new int[count];
+		System.arraycopy(mismatches, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Retrieves whether these checksums cover exactly the given region.
+	 *
+	 * @param world the name of the world containing the region
+	 * @param minX  the minimum x-coordinate of the region
+	 * @param minY  the minimum y-coordinate of the region
+	 * @param minZ  the minimum z-coordinate of the region
+	 * @param maxX  the maximum x-coordinate of the region
+	 * @param maxY  the maximum y-coordinate of the region
+	 * @param maxZ  the maximum z-coordinate of the region
+	 * @return whether these checksums cover the given region
+	 * @since 0.4.3
+	 */
+	public boolean covers(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		return this.world.equals(world) && this.minX == minX && this.minY == minY && this.minZ == minZ &&
+				this.maxX == maxX && this.maxY == maxY && this.maxZ == maxZ;
+	}
+
+	/**
+	 * Retrieves the name of the world containing the region.
+	 *
+	 * @return the name of the world containing the region
+	 * @since 0.4.3
+	 */
+	public String getWorld() {
+		return world;
+	}
+
+	/**
+	 * Retrieves the number of sections within the region.
+	 *
+	 * @return the number of sections within the region
+	 * @since 0.4.3
+	 */
+	public int getSectionCount() {
+		return sums.length;
+	}
+
+	/**
+	 * Writes these checksums to the given stream.
+	 *
+	 * @param stream the stream to write to
+	 * @throws IOException if the checksums cannot be written
+	 * @since 0.4.3
+	 */
+	public void write(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeUTF(world);
+		out.writeInt(minX);
+		out.writeInt(minY);
+		out.writeInt(minZ);
+		out.writeInt(maxX);
+		out.writeInt(maxY);
+		out.writeInt(maxZ);
+		for (long sum : sums) {
+			out.writeLong(sum);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads checksums from the given stream.
+	 *
+	 * @param stream the stream to read from
+	 * @return the checksums which were read
+	 * @throws IOException if the checksums cannot be read
+	 * @since 0.4.3
+	 */
+	public static SectionChecksums read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a section checksum file");
+		}
+		short version = in.readShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported section checksum version " + version);
+		}
+		String world = in.readUTF();
+		int minX = in.readInt();
+		int minY = in.readInt();
+		int minZ = in.readInt();
+		int maxX = in.readInt();
+		int maxY = in.readInt();
+		int maxZ = in.readInt();
+		SectionChecksums checksums = new SectionChecksums(world, minX, minY, minZ, maxX, maxY, maxZ);
+		for (int i = 0; i < checksums.sums.length; i++) {
+			checksums.sums[i] = in.readLong();
+		}
+		return checksums;
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+
+public class ChangeSetTest {
+
+	@Test
+	public void testPackRoundTrip() {
+		int[] horizontal = {0, 1, -1, 15, -16, 29999999, -30000000, 33554431, -33554432};
+		int[] vertical = {0, 1, 63, 255, 4095};
+		for (int x : horizontal) {
+			for (int y : vertical) {
+				for (int z : horizontal) {
+					long packed = ChangeSet.pack(x, y, z);
+					assertEquals(x, ChangeSet.unpackX(packed));
+					assertEquals(y, ChangeSet.unpackY(packed));
+					assertEquals(z, ChangeSet.unpackZ(packed));
+				}
+			}
+		}
+		assertFalse(ChangeSet.pack(0, 0, -1) == ChangeSet.pack(-1, 0, 0));
+		assertFalse(ChangeSet.pack(0, 1, 0) == ChangeSet.pack(0, 0, 1));
+	}
+
+	@Test
+	public void testSortByChunk() {
+		ChangeSet changes = new ChangeSet();
+		changes.add("world", 20, 64, 0, 0, (byte)0, null); // chunk 1, 0
+		changes.add("world", -1, 64, -1, 0, (byte)0, null); // chunk -1, -1
+		changes.add("world_nether", 0, 64, 0, 0, (byte)0, null); // chunk 0, 0 in another world
+		changes.add("world", 16, 64, 15, 0, (byte)0, null); // chunk 1, 0
+		changes.add("world", 0, 64, 0, 0, (byte)0, null); // chunk 0, 0
+		changes.add("world", 31, 10, 1, 0, (byte)0, null); // chunk 1, 0
+		changes.add("world", -16, 64, -16, 0, (byte)0, null); // chunk -1, -1
+		int[] order = changes.sortByChunk();
+		assertEquals(changes.size(), order.length);
+
+		// each chunk is contiguous and retains the order in which its changes were logged
+		boolean[] seen = new boolean[order.length];
+		String lastChunk = null;
+		HashSet<String> finished = new HashSet<String>();
+		int lastIndex = -1;
+		for (int index : order) {
+			assertFalse(seen[index]);
+			seen[index] = true;
+			long pos = changes.getPosition(index);
+			String chunk = changes.getWorld(index) + " " + (ChangeSet.unpackX(pos) >> 4) + " " +
+					(ChangeSet.unpackZ(pos) >> 4);
+			if (!chunk.equals(lastChunk)) {
+				assertTrue(finished.add(chunk));
+				lastChunk = chunk;
+			}
+			else {
+				assertTrue(index > lastIndex);
+			}
+			lastIndex = index;
+		}
+		assertEquals(4, finished.size());
+	}
+
+	@Test
+	public void testManyChanges() {
+		ChangeSet changes = new ChangeSet();
+		long before = changes.getMemoryUsage();
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(changes.add("world", i % 100 - 50, i / 100 % 256, i / 25600, i, (byte)0, null));
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertFalse(changes.add("world", i % 100 - 50, i / 100 % 256, i / 25600, -1, (byte)0, null));
+			assertEquals(i, changes.getType(i));
+		}
+		assertEquals(10000, changes.size());
+		assertTrue(changes.getMemoryUsage() > before);
+		assertEquals(10000, changes.sortByChunk().length);
+	}
+
+	@Test
+	public void testOnlyFirstChangeRetained() {
+		ChangeSet changes = new ChangeSet();
+		assertTrue(changes.add("world", 1, 64, -1, 1, (byte)0, null));
+		assertFalse(changes.add("world", 1, 64, -1, 2, (byte)3, null));
+		assertTrue(changes.add("world_nether", 1, 64, -1, 3, (byte)0, null));
+		assertEquals(2, changes.size());
+		assertEquals(1, changes.getType(0));
+		assertTrue(changes.contains("world", 1, 64, -1));
+		assertTrue(changes.contains("world", 1, 64, -1, (byte)5)); // data is ignored unless keyed by it
+		assertFalse(changes.contains("world", 1, 65, -1));
+	}
+
+	@Test
+	public void testSeveralHangingsOnOneBlock() {
+		ChangeSet changes = ChangeSet.forKind(JournalRecord.HANGING);
+		// e.g. item frames on three walls around the same air block
+		assertTrue(changes.add("world", 10, 70, 10, 2, (byte)1, new byte[]{1}));
+		assertTrue(changes.add("world", 10, 70, 10, 2, (byte)2, new byte[]{2}));
+		assertTrue(changes.add("world", 10, 70, 10, 1, (byte)3, new byte[]{3}));
+		assertFalse(changes.add("world", 10, 70, 10, 0, (byte)2, null)); // later change to the second frame
+		assertEquals(3, changes.size());
+		for (byte facing = 1; facing <= 3; facing++) {
+			assertTrue(changes.contains("world", 10, 70, 10, facing));
+			assertEquals(facing, changes.getData(facing - 1));
+			assertEquals(facing, changes.getPayload(facing - 1)[0]);
+		}
+		assertFalse(changes.contains("world", 10, 70, 10, (byte)4));
+		assertFalse(changes.contains("world", 10, 70, 10));
+
+		JournalRecord record = changes.toRecord(1, JournalRecord.HANGING, "arena");
+		assertEquals(2, record.getData());
+		ChangeSet copy = ChangeSet.forKind(JournalRecord.HANGING);
+		copy.addAll(changes);
+		assertEquals(3, copy.size());
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class JournalToolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JournalRecord block(String arena, String world, int x, int z, int type) {
+		return new JournalRecord(JournalRecord.BLOCK, arena, world, x, 64, z, type, (byte)0, null);
+	}
+
+	private static JournalRecord hanging(String arena, int x, int z, byte facing) {
+		return new JournalRecord(JournalRecord.HANGING, arena, "world", x, 64, z, 0, facing, null);
+	}
+
+	private static void write(File file, List<JournalRecord> records) throws IOException {
+		RollbackJournal journal = new RollbackJournal(file, Integer.MAX_VALUE);
+		journal.open(null);
+		try {
+			for (JournalRecord record : records) {
+				journal.append(record);
+			}
+		}
+		finally {
+			journal.close();
+		}
+	}
+
+	private static List<JournalRecord> readAll(File file) throws IOException {
+		final List<JournalRecord> records = new ArrayList<JournalRecord>();
+		RollbackJournal.replay(file, new RollbackJournal.RecordHandler() {
+			public void handle(JournalRecord record) {
+				records.add(record);
+			}
+		});
+		return records;
+	}
+
+	private static void assertKept(List<JournalRecord> records, List<JournalRecord> compacted, int... kept) {
+		assertEquals(kept.length, compacted.size());
+		for (int i = 0; i < kept.length; i++) {
+			JournalRecord expected = records.get(kept[i]);
+			JournalRecord actual = compacted.get(i);
+			assertEquals("record " + kept[i], expected.getKind(), actual.getKind());
+			assertEquals("record " + kept[i], expected.getArena(), actual.getArena());
+			assertEquals("record " + kept[i], expected.getWorld(), actual.getWorld());
+			assertEquals("record " + kept[i], expected.getX(), actual.getX());
+			assertEquals("record " + kept[i], expected.getZ(), actual.getZ());
+			assertEquals("record " + kept[i], expected.getType(), actual.getType());
+			assertEquals("record " + kept[i], expected.getData(), actual.getData());
+		}
+	}
+
+	@Test
+	public void testCompact() throws IOException {
+		List<JournalRecord> records = Arrays.asList(
+				block("arena", "world", 0, 0, 1),
+				block("arena", "world", 0, 0, 2), // repeated change
+				JournalRecord.item("arena", 0, new byte[]{1}),
+				hanging("arena", 2, 2, (byte)1),
+				hanging("arena", 2, 2, (byte)2),
+				hanging("arena", 2, 2, (byte)1), // repeated change
+				block("other", "world", 0, 0, 3),
+				block("arena", "world_nether", 0, 0, 4),
+				JournalRecord.restored("world", 0, 0) // only applies to the journal of deferred changes
+		);
+		File in = folder.newFile("arena.journal");
+		write(in, records);
+		// a torn tail is dropped as well
+		FileOutputStream out = new FileOutputStream(in, true);
+		try {
+			out.write(new byte[]{JournalRecord.BLOCK, 0, 0});
+		}
+		finally {
+			out.close();
+		}
+		long length = in.length();
+
+		File compacted = new File(folder.getRoot(), "compacted.journal");
+		JournalTool.compact(in, compacted, false);
+		assertKept(records, readAll(compacted), 0, 2, 3, 4, 6, 7);
+		assertEquals(length, in.length());
+
+		JournalTool.compact(in, in, false);
+		assertKept(records, readAll(in), 0, 2, 3, 4, 6, 7);
+		assertFalse(new File(in.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void testCompactOrdered() throws IOException {
+		List<JournalRecord> records = Arrays.asList(
+				block("arena", "world", 0, 0, 1), // within a chunk restored below
+				block("arena", "world", 15, 15, 2), // ditto
+				block("arena", "world", 16, 0, 3),
+				JournalRecord.restored("world", 0, 0),
+				block("arena", "world", 1, 1, 4),
+				block("arena", "world_nether", 0, 0, 5),
+				block("arena", "world", 1, 1, 6) // repeated changes are applied in order
+		);
+		File file = folder.newFile("deferred.journal");
+		write(file, records);
+		JournalTool.compact(file, file, true);
+		assertKept(records, readAll(file), 2, 4, 5, 6);
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class JournalWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JournalRecord block(String arena, String world, int x, int y, int z) {
+		return new JournalRecord(JournalRecord.BLOCK, arena, world, x, y, z, 1, (byte)0, null);
+	}
+
+	private static List<JournalRecord> readAll(File file) throws IOException {
+		final List<JournalRecord> records = new ArrayList<JournalRecord>();
+		RollbackJournal.replay(file, new RollbackJournal.RecordHandler() {
+			public void handle(JournalRecord record) {
+				records.add(record);
+			}
+		});
+		return records;
+	}
+
+	@Test
+	public void testShardPerArena() throws IOException {
+		JournalWriter writer = new JournalWriter(folder.getRoot(), null, 16, 64, 1000, false);
+		writer.write(block("arena one", "world", 0, 64, 0));
+		writer.writeAll(Arrays.asList(block("two", "world", 1, 64, 0), block("arena one", "world", 2, 64, 0)));
+		writer.close();
+		assertEquals(new File(folder.getRoot(), "arena+one.journal"), writer.getFile("arena one"));
+		List<JournalRecord> one = readAll(writer.getFile("arena one"));
+		assertEquals(2, one.size());
+		assertEquals(0, one.get(0).getX());
+		assertEquals(2, one.get(1).getX());
+		assertEquals(1, readAll(writer.getFile("two")).size());
+		assertEquals(3, writer.getWritten());
+	}
+
+	@Test
+	public void testSingleShard() throws IOException {
+		JournalWriter writer = new JournalWriter(folder.getRoot(), "deferred", 16, 64, 1000, false);
+		writer.start();
+		writer.write(block("one", "world", 0, 64, 0));
+		writer.write(block("two", "world", 0, 64, 0));
+		writer.close();
+		List<JournalRecord> records = readAll(writer.getFile("deferred"));
+		assertEquals(2, records.size());
+		assertEquals("one", records.get(0).getArena());
+		assertEquals("two", records.get(1).getArena());
+		assertFalse(writer.getFile("one").exists());
+	}
+
+	@Test
+	public void testDiscard() throws IOException {
+		JournalWriter writer = new JournalWriter(folder.getRoot(), null, 16, 64, 1000, true);
+		writer.start();
+		writer.write(block("arena", "world", 0, 64, 0));
+		writer.write(block("other", "world", 0, 64, 0));
+		writer.flush();
+		assertTrue(writer.getFile("arena").exists());
+		assertTrue(writer.getSyncs() > 0);
+
+		writer.discard("arena");
+		writer.flush();
+		assertFalse(writer.getFile("arena").exists());
+		assertTrue(writer.getFile("other").exists());
+
+		// records written after the discard start a new journal
+		writer.write(block("arena", "world", 5, 64, 5));
+		writer.close();
+		List<JournalRecord> records = readAll(writer.getFile("arena"));
+		assertEquals(1, records.size());
+		assertEquals(5, records.get(0).getX());
+		assertEquals(1, readAll(writer.getFile("other")).size());
+	}
+
+	@Test
+	public void testCoalesce() {
+		JournalWriter writer = new JournalWriter(folder.getRoot(), null, 16, 64, 1000, true);
+		List<Object> batch = new ArrayList<Object>();
+		batch.add(block("arena", "world", 0, 64, 0));
+		batch.add(block("arena", "world", 0, 64, 0)); // superseded by the first change
+		batch.add(block("arena", "world_nether", 0, 64, 0));
+		batch.add(block("other", "world", 0, 64, 0));
+		batch.add(new JournalRecord(JournalRecord.INVENTORY, "arena", "world", 0, 64, 0, 54, (byte)0, null));
+		batch.add(new JournalRecord(JournalRecord.HANGING, "arena", "world", 0, 64, 0, 0, (byte)1, null));
+		batch.add(new JournalRecord(JournalRecord.HANGING, "arena", "world", 0, 64, 0, 0, (byte)2, null));
+		batch.add(new JournalRecord(JournalRecord.HANGING, "arena", "world", 0, 64, 0, 0, (byte)1, null)); // superseded
+		batch.add(JournalRecord.item("arena", 0, new byte[]{1}));
+		batch.add(JournalRecord.item("arena", 0, new byte[]{1}));
+		batch.add(block("other", "world", 0, 64, 0)); // superseded
+
+		List<Object> result = writer.coalesce(batch);
+		assertEquals(batch.size() - 3, result.size());
+		assertEquals(3, writer.getCoalesced());
+		assertSame(batch.get(0), result.get(0));
+		assertSame(batch.get(2), result.get(1));
+		assertSame(batch.get(6), result.get(5));
+		assertSame(batch.get(8), result.get(6));
+		assertSame(batch.get(9), result.get(7));
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PositionIndexTest {
+
+	@Test
+	public void testPutIfAbsent() {
+		PositionIndex index = new PositionIndex(4);
+		long origin = ChangeSet.pack(0, 0, 0);
+		long negative = ChangeSet.pack(-1, 0, -1);
+		assertEquals(-1, index.putIfAbsent(origin, 0));
+		assertEquals(-1, index.putIfAbsent(negative, 1));
+		assertEquals(0, index.putIfAbsent(origin, 2));
+		assertEquals(0, index.get(origin));
+		assertEquals(1, index.get(negative));
+		assertEquals(-1, index.get(ChangeSet.pack(0, 1, 0)));
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	public void testGrowth() {
+		PositionIndex index = new PositionIndex(1);
+		long usage = index.getMemoryUsage();
+		int value = 0;
+		for (int x = -20; x < 20; x++) {
+			for (int z = -20; z < 20; z++) {
+				assertEquals(-1, index.putIfAbsent(ChangeSet.pack(x * 1000, 64, z), value++));
+			}
+		}
+		assertEquals(value, index.size());
+		assertTrue(index.getMemoryUsage() > usage);
+		value = 0;
+		for (int x = -20; x < 20; x++) {
+			for (int z = -20; z < 20; z++) {
+				assertEquals(value++, index.get(ChangeSet.pack(x * 1000, 64, z)));
+			}
+		}
+		assertEquals(-1, index.get(ChangeSet.pack(0, 65, 0)));
+	}
+
+}
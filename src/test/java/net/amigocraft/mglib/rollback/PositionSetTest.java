@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PositionSetTest {
+
+	@Test
+	public void testAddAndContains() {
+		PositionSet positions = PositionSet.forKind(JournalRecord.BLOCK);
+		assertTrue(positions.add("world", -5, 0, 30000000, (byte)0));
+		assertFalse(positions.add("world", -5, 0, 30000000, (byte)7)); // data is ignored unless keyed by it
+		assertTrue(positions.add("world_the_end", -5, 0, 30000000, (byte)0));
+		assertTrue(positions.contains("world", -5, 0, 30000000, (byte)3));
+		assertFalse(positions.contains("world", -5, 1, 30000000, (byte)0));
+		assertFalse(positions.contains("world_nether", -5, 0, 30000000, (byte)0));
+		assertEquals(2, positions.size());
+	}
+
+	@Test
+	public void testAddAllRetainsPositionsOfSpilledChanges() {
+		ChangeSet changes = ChangeSet.forKind(JournalRecord.HANGING);
+		for (int i = 0; i < 1000; i++) {
+			changes.add("world", i, 64, -i, 2, (byte)(i % 4 + 1), new byte[16]);
+		}
+		PositionSet positions = PositionSet.forKind(JournalRecord.HANGING);
+		positions.addAll(changes);
+		assertEquals(1000, positions.size());
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(positions.contains("world", i, 64, -i, (byte)(i % 4 + 1)));
+			assertFalse(positions.contains("world", i, 64, -i, (byte)((i + 1) % 4 + 1)));
+		}
+		assertTrue(positions.getMemoryUsage() < changes.getMemoryUsage());
+	}
+
+}
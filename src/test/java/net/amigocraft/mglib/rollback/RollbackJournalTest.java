@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Maxim Roncacé
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.amigocraft.mglib.rollback;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RollbackJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<JournalRecord> createRecords() {
+		return Arrays.asList(
+				new JournalRecord(JournalRecord.BLOCK, "arena", "world", 1, 64, -1, 63, (byte)2,
+						"sign text".getBytes(RollbackJournal.UTF8)),
+				new JournalRecord(JournalRecord.INVENTORY, "arena", "world_nether", -30000000, 0, 29999999, 54,
+						(byte)0, new byte[]{0, 0, 0, 0, 1, -1, -1, -1, -1}),
+				new JournalRecord(JournalRecord.HANGING, "other", "world", 5, 255, 5, 0, (byte)3, null),
+				new JournalRecord(JournalRecord.BLOCK, "other", "world", 5, 4095, 5, 65535, (byte)-1, null),
+				JournalRecord.item("other", 7, new byte[]{1, 2, 3}),
+				JournalRecord.restored("world", -2, 3)
+		);
+	}
+
+	private static List<JournalRecord> readAll(File file) throws IOException {
+		final List<JournalRecord> records = new ArrayList<JournalRecord>();
+		RollbackJournal.replay(file, new RollbackJournal.RecordHandler() {
+			public void handle(JournalRecord record) {
+				records.add(record);
+			}
+		});
+		return records;
+	}
+
+	private static void assertRecordsEqual(List<JournalRecord> expected, List<JournalRecord> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			JournalRecord e = expected.get(i);
+			JournalRecord a = actual.get(i);
+			assertEquals(e.getKind(), a.getKind());
+			assertEquals(e.getArena(), a.getArena());
+			assertEquals(e.getWorld(), a.getWorld());
+			assertEquals(e.getX(), a.getX());
+			assertEquals(e.getY(), a.getY());
+			assertEquals(e.getZ(), a.getZ());
+			assertEquals(e.getType(), a.getType());
+			assertEquals(e.getData(), a.getData());
+			assertArrayEquals(e.getPayload(), a.getPayload());
+		}
+	}
+
+	private static void write(File file, List<JournalRecord> records) throws IOException {
+		RollbackJournal journal = new RollbackJournal(file, 4);
+		journal.open(null);
+		try {
+			for (JournalRecord record : records) {
+				journal.append(record);
+			}
+		}
+		finally {
+			journal.close();
+		}
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = new File(folder.getRoot(), "rollback/arena.journal");
+		List<JournalRecord> records = createRecords();
+		write(file, records);
+		assertRecordsEqual(records, readAll(file));
+
+		RollbackJournal.Reader reader = new RollbackJournal.Reader(file);
+		try {
+			for (int i = 0; i < records.size(); i++) {
+				reader.next();
+			}
+			assertNull(reader.next());
+			assertEquals(file.length(), reader.getValidLength());
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testAppendAfterReopen() throws IOException {
+		File file = folder.newFile("arena.journal");
+		List<JournalRecord> records = createRecords();
+		write(file, records.subList(0, 3));
+
+		final List<JournalRecord> replayed = new ArrayList<JournalRecord>();
+		RollbackJournal journal = new RollbackJournal(file, 4);
+		journal.open(new RollbackJournal.RecordHandler() {
+			public void handle(JournalRecord record) {
+				replayed.add(record);
+			}
+		});
+		try {
+			for (JournalRecord record : records.subList(3, records.size())) {
+				journal.append(record);
+			}
+		}
+		finally {
+			journal.close();
+		}
+		assertRecordsEqual(records.subList(0, 3), replayed);
+		// arenas and worlds interned before reopening are not defined again
+		assertRecordsEqual(records, readAll(file));
+	}
+
+	@Test
+	public void testTornTailIsDropped() throws IOException {
+		File file = folder.newFile("arena.journal");
+		List<JournalRecord> records = createRecords();
+		write(file, records);
+		long length = file.length();
+		// the last record is a restoration with no payload
+		long lastRecord = length - RollbackJournal.RECORD_HEADER_SIZE;
+
+		truncate(file, length - 1);
+		assertRecordsEqual(records.subList(0, records.size() - 1), readAll(file));
+		assertEquals(lastRecord, RollbackJournal.replay(file, null));
+
+		truncate(file, lastRecord + 3);
+		assertEquals(lastRecord, RollbackJournal.replay(file, null));
+
+		// reopening truncates the torn tail so that new records follow the last valid one
+		RollbackJournal journal = new RollbackJournal(file, 4);
+		journal.open(null);
+		try {
+			assertEquals(lastRecord, file.length());
+			journal.append(records.get(records.size() - 1));
+		}
+		finally {
+			journal.close();
+		}
+		assertRecordsEqual(records, readAll(file));
+	}
+
+	@Test
+	public void testCorruptRecordEndsJournal() throws IOException {
+		File file = folder.newFile("arena.journal");
+		List<JournalRecord> records = createRecords();
+		write(file, records);
+		long length = file.length();
+
+		// flip a byte of the item's payload, which is followed by the definition of the restoration's
+		// empty arena name and the restoration itself
+		long itemPayload = length - 2 * RollbackJournal.RECORD_HEADER_SIZE - 3;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(itemPayload);
+			raf.write(42);
+		}
+		finally {
+			raf.close();
+		}
+		assertRecordsEqual(records.subList(0, records.size() - 2), readAll(file));
+		assertEquals(itemPayload - RollbackJournal.RECORD_HEADER_SIZE, RollbackJournal.replay(file, null));
+	}
+
+	@Test
+	public void testIncompleteFileHeader() throws IOException {
+		File file = folder.newFile("arena.journal");
+		write(file, createRecords());
+		truncate(file, RollbackJournal.FILE_HEADER_SIZE - 1);
+		assertEquals(0, RollbackJournal.replay(file, null));
+
+		List<JournalRecord> records = createRecords().subList(0, 1);
+		write(file, records);
+		assertRecordsEqual(records, readAll(file));
+	}
+
+}